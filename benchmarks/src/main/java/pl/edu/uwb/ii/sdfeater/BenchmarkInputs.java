@@ -0,0 +1,147 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Inputs of the benchmarks: files from the examples directory and a
+ * synthetic file generated once per benchmark process
+ */
+final class BenchmarkInputs {
+
+    /**
+     * Name of the synthetic input
+     */
+    static final String SYNTHETIC = "synthetic";
+
+    private static Path synthetic;
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * Finds input file. Examples are looked for in the directory given in
+     * the sdfeater.examples system property, ../examples or examples. Size of
+     * the synthetic input is set by sdfeater.synthetic.records and
+     * sdfeater.synthetic.atoms system properties
+     *
+     * @param input example file name or "synthetic"
+     * @return input file path
+     */
+    static synchronized Path path(String input) {
+        if (SYNTHETIC.equals(input)) {
+            if (synthetic == null) {
+                try {
+                    synthetic = Files.createTempFile("sdfeater-synthetic", ".sdf");
+                    synthetic.toFile().deleteOnExit();
+                    new SyntheticSdf(Integer.getInteger("sdfeater.synthetic.records", 1000),
+                            Integer.getInteger("sdfeater.synthetic.atoms", 40), 42).write(synthetic);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return synthetic;
+        }
+        String examples = System.getProperty("sdfeater.examples");
+        Path dir = examples != null ? Paths.get(examples) : Files.isDirectory(Paths.get("../examples")) ? Paths.get("../examples") : Paths.get("examples");
+        return dir.resolve(input);
+    }
+
+    /**
+     * Reads the whole input file
+     *
+     * @param input example file name or "synthetic"
+     * @return input bytes
+     */
+    static ByteBuffer read(String input) {
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(path(input)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads data used by the output formats: property mapping and periodic
+     * table
+     */
+    static synchronized void init() {
+        try {
+            if (SDFEater.propertyMapping == null) {
+                SDFEater.propertyMapping = PropertyMapping.load(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (SDFEater.periodic_table_data == null) {
+            SDFEater.loadPeriodicTableData();
+        }
+    }
+
+    /**
+     * Parses the first record of the input into the molecule and leaves it
+     * there, so it can be printed many times
+     *
+     * @param input    input bytes
+     * @param molecule molecule
+     */
+    static void parseFirstRecord(ByteBuffer input, Molecule molecule) {
+        byte[] end = "\n$$$$".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer record = input.duplicate();
+        for (int i = 0; i + end.length <= input.limit(); i++) {
+            int j = 0;
+            while (j < end.length && input.get(i + j) == end[j]) {
+                j++;
+            }
+            if (j == end.length) {
+                record.limit(i + 1);
+                break;
+            }
+        }
+        // without the $$$$ line the molecule is neither printed nor cleared
+        new RecordParser(molecule, ' ', false, false).parse(record, 0);
+    }
+
+    /**
+     * Output that discards everything, so only printing is measured
+     */
+    static class NullSink extends OutputSink {
+
+        NullSink() {
+            super(DEFAULT_BUFFER_SIZE);
+        }
+
+        @Override
+        protected void drain(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of the whole input file to every output format, from reading
+ * the file to the last byte of the output
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"chebi_test.sdf", "chebi_special_char_test.sdf", "drugbank_test.sdf", "drugbank_test2.sdf", BenchmarkInputs.SYNTHETIC})
+    public String input;
+
+    @Param({"cypher", "cypher-batch", "neo4jcsv", "cvme", "smiles", "inchi", "turtle", "ntriples", "rdfxml", "rdfthrift", "jsonldhtml", "jsonld", "rdfa", "microdata"})
+    public String format;
+
+    private Path path;
+    private Path csvDirectory;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkInputs.init();
+        path = BenchmarkInputs.path(input);
+        csvDirectory = Files.createTempDirectory("sdfeater-neo4jcsv");
+        csvDirectory.toFile().deleteOnExit();
+    }
+
+    @Benchmark
+    public void convert() throws IOException {
+        OutputSink out = new BenchmarkInputs.NullSink();
+        Molecule molecule = new Molecule(out, MoleculeId.Strategy.RANDOM.create());
+        File file = new File(path.toString(), 1, MoleculeId.Strategy.RANDOM);
+        switch (format) {
+            case "cypher":
+                file.parse(molecule, 'c', false, false);
+                break;
+            case "cypher-batch":
+                molecule.cypherBatch = new CypherBatch(CypherBatch.DEFAULT_BATCH_SIZE, CypherBatch.DEFAULT_COMMIT_SIZE);
+                file.parse(molecule, 'q', false, false);
+                break;
+            case "neo4jcsv":
+                molecule.csv = Neo4jCsvOutput.open(csvDirectory.toString(), OutputSink.DEFAULT_BUFFER_SIZE, false);
+                file.parse(molecule, 'b', false, false);
+                break;
+            case "cvme":
+                file.parse(molecule, 'r', true, false);
+                break;
+            case "smiles":
+                file.parse(molecule, 's', false, false);
+                break;
+            case "inchi":
+                file.parse(molecule, 'i', false, false);
+                break;
+            case "turtle":
+                file.parse(molecule, 't', false, false);
+                break;
+            case "ntriples":
+                file.parse(molecule, 'n', false, false);
+                break;
+            case "rdfxml":
+                molecule.model = SDFEater.createJenaModel();
+                file.parse(molecule, 'x', false, false);
+                break;
+            case "rdfthrift":
+                file.parse(molecule, 'h', false, false);
+                break;
+            case "jsonldhtml":
+                molecule.model = SDFEater.createJenaModel();
+                file.parse(molecule, 'd', false, false);
+                break;
+            case "jsonld":
+                molecule.model = SDFEater.createJenaModel();
+                file.parse(molecule, 'j', false, false);
+                break;
+            case "rdfa":
+                file.parse(molecule, 'a', false, false);
+                break;
+            case "microdata":
+                file.parse(molecule, 'm', false, false);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+}
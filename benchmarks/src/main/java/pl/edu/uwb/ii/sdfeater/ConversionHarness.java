@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.apache.commons.cli.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs SDFEater in a separate process for every input file and output format
+ * and reports records/s, MB/s, peak resident memory and output size. Input is
+ * a synthetic SDF file (see SyntheticSdf) or files given by the user
+ */
+public class ConversionHarness {
+
+    /**
+     * All output formats
+     */
+    static final String[] FORMATS = {"cypher", "cypher-batch", "neo4jcsv", "cvme", "smiles", "inchi", "turtle", "ntriples",
+            "rdfxml", "rdfthrift", "jsonldhtml", "jsonld", "rdfa", "microdata"};
+
+    /**
+     * How often peak memory of the process is read
+     */
+    private static final long SAMPLING_MILLIS = 10;
+
+    private final List<String> command;
+    private final Path work;
+    private final String threads;
+
+    /**
+     * Output and error files written by the harness
+     */
+    final List<Path> created = new ArrayList<>();
+
+    /**
+     * ConversionHarness class constructor
+     *
+     * @param jar     SDFEater JAR to run, null for SDFEater from the class path
+     * @param jvmArgs additional JVM options of SDFEater processes
+     * @param threads value of SDFEater -t option
+     * @param work    directory of output files
+     */
+    ConversionHarness(String jar, List<String> jvmArgs, int threads, Path work) {
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        if (jar != null) {
+            command.add("-jar");
+            command.add(jar);
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SDFEater.class.getName());
+        }
+        this.threads = String.valueOf(threads);
+        this.work = work;
+    }
+
+    /**
+     * Result of one conversion
+     */
+    static final class Result {
+        final String input;
+        final String format;
+        final long records;
+        final long inputBytes;
+        final long nanos;
+        final long peakRss;
+        final long outputBytes;
+        final int exitCode;
+        final long errorLines;
+
+        Result(String input, String format, long records, long inputBytes, long nanos, long peakRss, long outputBytes, int exitCode, long errorLines) {
+            this.input = input;
+            this.format = format;
+            this.records = records;
+            this.inputBytes = inputBytes;
+            this.nanos = nanos;
+            this.peakRss = peakRss;
+            this.outputBytes = outputBytes;
+            this.exitCode = exitCode;
+            this.errorLines = errorLines;
+        }
+
+        /**
+         * @return tab separated values in the order of HEADER
+         */
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format(Locale.ROOT, "%s\t%s\t%d\t%.3f\t%.0f\t%.2f\t%s\t%d\t%s",
+                    input, format, records, seconds, records / seconds, inputBytes / 1e6 / seconds,
+                    peakRss >= 0 ? String.format(Locale.ROOT, "%.1f", peakRss / 1048576.0) : "n/a",
+                    outputBytes, exitCode != 0 ? "exit " + exitCode : errorLines > 0 ? errorLines + " lines" : "");
+        }
+    }
+
+    /**
+     * Header of the report
+     */
+    static final String HEADER = "input\tformat\trecords\tseconds\trecords/s\tMB/s\tpeak RSS MiB\toutput bytes\tstderr";
+
+    /**
+     * Converts input file to the format
+     *
+     * @param input  SDF file
+     * @param format output format
+     * @return conversion result
+     * @throws IOException          if the process could not be started
+     * @throws InterruptedException if interrupted while waiting for the process
+     */
+    Result run(Path input, String format) throws IOException, InterruptedException {
+        long records = countRecords(input);
+        Path output = work.resolve(input.getFileName() + "." + format);
+        Path errors = work.resolve(input.getFileName() + "." + format + ".err");
+        delete(output);
+        created.add(output);
+        created.add(errors);
+        List<String> args = new ArrayList<>(command);
+        args.addAll(Arrays.asList("-i", input.toString(), "-f", format, "-t", threads, "-o", output.toString()));
+        ProcessBuilder builder = new ProcessBuilder(args)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(errors.toFile());
+        long start = System.nanoTime();
+        Process process = builder.start();
+        long peakRss = -1;
+        while (!process.waitFor(SAMPLING_MILLIS, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+            peakRss = Math.max(peakRss, peakRss(process.pid()));
+        }
+        long nanos = System.nanoTime() - start;
+        long errorLines;
+        try (Stream<String> lines = Files.lines(errors)) {
+            errorLines = lines.count();
+        }
+        return new Result(input.getFileName().toString(), format, records, Files.size(input), nanos, peakRss,
+                size(output), process.exitValue(), errorLines);
+    }
+
+    /**
+     * Peak resident set size of the process (VmHWM from /proc, Linux only)
+     *
+     * @param pid process id
+     * @return peak resident set size in bytes, -1 if not known
+     */
+    static long peakRss(long pid) {
+        try (BufferedReader status = Files.newBufferedReader(Paths.get("/proc", String.valueOf(pid), "status"), StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = status.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // process ended or /proc is not available
+        }
+        return -1;
+    }
+
+    /**
+     * Counts $$$$ lines of the input, gzip files are decompressed
+     *
+     * @param input SDF file
+     * @return number of records
+     * @throws IOException if the file could not be read
+     */
+    static long countRecords(Path input) throws IOException {
+        InputStream in = Files.newInputStream(input);
+        if (input.toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        long records = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("$$$$")) {
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Size of the output file or of all files in the output directory
+     */
+    private static long size(Path output) throws IOException {
+        if (!Files.exists(output)) {
+            return 0;
+        }
+        if (!Files.isDirectory(output)) {
+            return Files.size(output);
+        }
+        long size = 0;
+        try (Stream<Path> files = Files.walk(output)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    private static void delete(Path output) throws IOException {
+        if (Files.exists(output)) {
+            try (Stream<Path> files = Files.walk(output)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Runs conversions and prints the report as tab separated values
+     *
+     * @param args harness options, see help
+     * @throws Exception if a conversion could not be run
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("i").longOpt("input").hasArgs().desc("input SDF files (synthetic file is generated if not set)").build());
+        options.addOption(new Option("f", "formats", true, "comma separated output formats (default all)"));
+        Option threads = new Option("t", "threads", true, "value of SDFEater -t option (default 1)");
+        threads.setType(Number.class);
+        options.addOption(threads);
+        options.addOption(new Option("j", "jar", true, "SDFEater JAR to run (default SDFEater from the class path)"));
+        options.addOption(new Option(null, "jvm-args", true, "JVM options of SDFEater processes, separated by spaces"));
+        options.addOption(new Option("w", "work", true, "directory of generated and output files (default temporary directory)"));
+        options.addOption(new Option("k", "keep", false, "keep generated and output files"));
+        SyntheticSdf.addOptions(options);
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine cmd;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            formatter.printHelp("ConversionHarness", options);
+            return;
+        }
+
+        Path work = cmd.hasOption("work") ? Files.createDirectories(Paths.get(cmd.getOptionValue("work")))
+                : Files.createTempDirectory("sdfeater-harness");
+        List<Path> inputs = new ArrayList<>();
+        if (cmd.hasOption("input")) {
+            for (String input : cmd.getOptionValues("input")) {
+                inputs.add(Paths.get(input));
+            }
+        } else {
+            Path synthetic = work.resolve("synthetic.sdf");
+            try {
+                SyntheticSdf.of(cmd).write(synthetic);
+            } catch (ParseException e) {
+                System.out.println(e.getMessage());
+                formatter.printHelp("ConversionHarness", options);
+                return;
+            }
+            inputs.add(synthetic);
+        }
+        String[] formats = cmd.hasOption("formats") ? cmd.getOptionValue("formats").split(",") : FORMATS;
+        List<String> jvmArgs = cmd.hasOption("jvm-args") ? Arrays.asList(cmd.getOptionValue("jvm-args").trim().split("\\s+")) : new ArrayList<>();
+        int threadsparam = cmd.hasOption("threads") ? ((Number) cmd.getParsedOptionValue("threads")).intValue() : 1;
+        ConversionHarness harness = new ConversionHarness(cmd.getOptionValue("jar"), jvmArgs, threadsparam, work);
+
+        System.out.println(HEADER);
+        for (Path input : inputs) {
+            for (String format : formats) {
+                System.out.println(harness.run(input, format.trim()));
+            }
+        }
+        if (!cmd.hasOption("keep")) {
+            for (Path file : harness.created) {
+                delete(file);
+            }
+            if (!cmd.hasOption("input")) {
+                delete(inputs.get(0));
+            }
+            if (!cmd.hasOption("work")) {
+                Files.deleteIfExists(work);
+            }
+        } else {
+            System.err.println("Files are kept in " + work);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing without output: line classification, counts line, atom and bond
+ * blocks and property values
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"chebi_test.sdf", "chebi_special_char_test.sdf", "drugbank_test.sdf", "drugbank_test2.sdf", BenchmarkInputs.SYNTHETIC})
+    public String input;
+
+    private ByteBuffer bytes;
+    private RecordParser parser;
+    private Molecule molecule;
+
+    /**
+     * Start and end of every atom line of the input
+     */
+    private int[] atomLines;
+
+    private final CTFileParser ctFileParser = new CTFileParser();
+
+    @Setup
+    public void setup() {
+        bytes = BenchmarkInputs.read(input);
+        molecule = new Molecule(new BenchmarkInputs.NullSink(), MoleculeId.Strategy.SEQUENTIAL.create());
+        // no output format, molecules are only parsed
+        parser = new RecordParser(molecule, ' ', false, false);
+        atomLines = findAtomLines(bytes);
+    }
+
+    /**
+     * Parses all records of the input
+     */
+    @Benchmark
+    public Molecule parseRecords() {
+        parser.parse(bytes.duplicate(), 0);
+        return molecule;
+    }
+
+    /**
+     * Parses all atom lines of the input
+     */
+    @Benchmark
+    public Molecule parseAtoms() {
+        molecule.atoms.clear();
+        for (int i = 0; i < atomLines.length; i += 2) {
+            ctFileParser.parseAtom(bytes, atomLines[i], atomLines[i + 1], molecule);
+        }
+        return molecule;
+    }
+
+    private int[] findAtomLines(ByteBuffer buf) {
+        List<Integer> lines = new ArrayList<>();
+        int limit = buf.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = Bytes.lineEnd(buf, start, limit);
+            // atom lines have the symbol after three 10 character coordinates
+            if (end - start >= 34 && buf.get(start + 5) == '.' && buf.get(start + 15) == '.' && buf.get(start + 25) == '.') {
+                lines.add(start);
+                lines.add(end);
+            }
+            start = Bytes.nextLine(buf, end, limit);
+        }
+        return lines.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.apache.jena.rdf.model.Model;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output formats of a single parsed molecule (the first record of the input)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RendererBenchmark {
+
+    @Param({"chebi_test.sdf", "chebi_special_char_test.sdf", "drugbank_test.sdf", "drugbank_test2.sdf", BenchmarkInputs.SYNTHETIC})
+    public String input;
+
+    private BenchmarkInputs.NullSink out;
+    private Molecule molecule;
+
+    @Setup
+    public void setup() {
+        BenchmarkInputs.init();
+        out = new BenchmarkInputs.NullSink();
+        molecule = new Molecule(out, MoleculeId.Strategy.SEQUENTIAL.create());
+        BenchmarkInputs.parseFirstRecord(BenchmarkInputs.read(input), molecule);
+    }
+
+    /**
+     * Jena model, replaced before every call, so it does not grow
+     */
+    @State(Scope.Thread)
+    public static class JenaModel {
+
+        Model model;
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            model = SDFEater.createJenaModel();
+        }
+    }
+
+    @Benchmark
+    public void printCypherMolecule() {
+        molecule.printCypherMolecule();
+    }
+
+    @Benchmark
+    public void printCypherAtomsWithPeriodicTableData() {
+        molecule.printCypherAtomsWithPeriodicTableData();
+    }
+
+    @Benchmark
+    public void printChemSKOSAtomsAndBonds() {
+        molecule.printChemSKOSAtomsAndBonds();
+    }
+
+    @Benchmark
+    public void addToJenaModel(JenaModel model) {
+        molecule.model = model.model;
+        molecule.addToJenaModel();
+    }
+
+    @Benchmark
+    public void printRDFaMolecule() {
+        molecule.printRDFaMolecule();
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.apache.commons.cli.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates SDF files of any size with V2000 molfiles and ChEBI or DrugBank
+ * properties. Some records may be malformed on purpose, the same way as
+ * records broken in real exports
+ */
+class SyntheticSdf {
+
+    /**
+     * Properties of the generated records
+     */
+    enum Mix {
+        /**
+         * ChEBI properties with database links
+         */
+        CHEBI,
+        /**
+         * DrugBank open structures properties
+         */
+        DRUGBANK,
+        /**
+         * ChEBI and DrugBank records in random order
+         */
+        MIXED;
+
+        /**
+         * @param name mix name, case insensitive
+         * @return mix
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        static Mix of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Atom symbols, the most common ones repeated
+     */
+    private static final String[] SYMBOLS = {"C", "C", "C", "C", "C", "C", "H", "H", "H", "O", "O", "N", "N", "S", "Cl", "F", "P", "Br"};
+
+    /**
+     * Kinds of malformed records
+     */
+    private static final int WELL_FORMED = 0;
+    private static final int BAD_COORDINATE = 1;
+    private static final int SHORT_ATOM_BLOCK = 2;
+    private static final int BAD_BOND = 3;
+    private static final int BAD_PROPERTY = 4;
+
+    private final int records;
+    private final int minAtoms;
+    private final int maxAtoms;
+    private final long seed;
+    private final Mix mix;
+    private final double malformed;
+
+    /**
+     * SyntheticSdf class constructor for well formed ChEBI records
+     *
+     * @param records number of records
+     * @param atoms   number of atoms in every molecule
+     * @param seed    random seed, the same seed gives the same file
+     */
+    SyntheticSdf(int records, int atoms, long seed) {
+        this(records, atoms, atoms, seed, Mix.CHEBI, 0);
+    }
+
+    /**
+     * SyntheticSdf class constructor
+     *
+     * @param records   number of records
+     * @param minAtoms  minimal number of atoms in a molecule
+     * @param maxAtoms  maximal number of atoms in a molecule
+     * @param seed      random seed, the same seed gives the same file
+     * @param mix       properties of the records
+     * @param malformed fraction of malformed records, from 0 to 1
+     */
+    SyntheticSdf(int records, int minAtoms, int maxAtoms, long seed, Mix mix, double malformed) {
+        if (records < 0 || minAtoms < 0 || maxAtoms < minAtoms || maxAtoms > 999) {
+            throw new IllegalArgumentException("Number of records must not be negative and number of atoms must be from 0 to 999");
+        }
+        if (malformed < 0 || malformed > 1) {
+            throw new IllegalArgumentException("Fraction of malformed records must be from 0 to 1");
+        }
+        this.records = records;
+        this.minAtoms = minAtoms;
+        this.maxAtoms = maxAtoms;
+        this.seed = seed;
+        this.mix = mix;
+        this.malformed = malformed;
+    }
+
+    /**
+     * Adds generator options: -n,--records, -a,--atoms, -x,--mix,
+     * -e,--malformed and -s,--seed
+     *
+     * @param options command line options
+     */
+    static void addOptions(Options options) {
+        Option records = new Option("n", "records", true, "number of generated records (default 10000)");
+        records.setType(Number.class);
+        options.addOption(records);
+        options.addOption(new Option("a", "atoms", true, "atoms in a generated molecule, a number or a range like 20-60 (default 40)"));
+        options.addOption(new Option("x", "mix", true, "properties of generated records (chebi, drugbank, mixed; default chebi)"));
+        Option malformed = new Option("e", "malformed", true, "fraction of malformed generated records, from 0 to 1 (default 0)");
+        malformed.setType(Number.class);
+        options.addOption(malformed);
+        Option seed = new Option("s", "seed", true, "random seed of the generator (default 42)");
+        seed.setType(Number.class);
+        options.addOption(seed);
+    }
+
+    /**
+     * Creates generator from the options added by addOptions()
+     *
+     * @param cmd parsed command line
+     * @return generator
+     * @throws ParseException if an option value is not valid
+     */
+    static SyntheticSdf of(CommandLine cmd) throws ParseException {
+        int records = cmd.hasOption("records") ? ((Number) cmd.getParsedOptionValue("records")).intValue() : 10000;
+        String atoms = cmd.getOptionValue("atoms", "40");
+        long seed = cmd.hasOption("seed") ? ((Number) cmd.getParsedOptionValue("seed")).longValue() : 42;
+        double malformed = cmd.hasOption("malformed") ? ((Number) cmd.getParsedOptionValue("malformed")).doubleValue() : 0;
+        try {
+            int dash = atoms.indexOf('-', 1);
+            int minAtoms = Integer.parseInt(dash < 0 ? atoms : atoms.substring(0, dash));
+            int maxAtoms = dash < 0 ? minAtoms : Integer.parseInt(atoms.substring(dash + 1));
+            return new SyntheticSdf(records, minAtoms, maxAtoms, seed, Mix.of(cmd.getOptionValue("mix", "chebi")), malformed);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid generator option: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes records to the file
+     *
+     * @param file output file
+     * @throws IOException if the file could not be written
+     */
+    void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes records
+     *
+     * @param out output
+     * @throws IOException if output could not be written
+     */
+    void write(Writer out) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 1; i <= records; i++) {
+            int atoms = minAtoms == maxAtoms ? minAtoms : random.nextInt(minAtoms, maxAtoms + 1);
+            int fault = malformed > 0 && random.nextDouble() < malformed ? 1 + random.nextInt(4) : WELL_FORMED;
+            writeMolfile(out, random, atoms, fault);
+            if (fault == BAD_PROPERTY) {
+                // header without closing bracket and value without the blank line
+                out.write("> <ChEBI ID\nCHEBI:" + i + "\n");
+            }
+            boolean drugbank = mix == Mix.DRUGBANK || mix == Mix.MIXED && random.nextBoolean();
+            if (drugbank) {
+                writeDrugBankProperties(out, random, i, atoms);
+            } else {
+                writeProperties(out, random, i, atoms);
+            }
+            out.write("$$$$\n");
+        }
+    }
+
+    private void writeMolfile(Writer out, SplittableRandom random, int atoms, int fault) throws IOException {
+        // chain of atoms with a ring closure every 6 atoms
+        int bonds = Math.max(atoms - 1, 0) + Math.max(atoms / 6, 0);
+        out.write("\n  SDFEater  0101200000\n\n");
+        out.write(String.format(Locale.ROOT, "%3d%3d  0  0  0  0            999 V2000\n", atoms, bonds));
+        int written = fault == SHORT_ATOM_BLOCK ? atoms / 2 : atoms;
+        int badAtom = fault == BAD_COORDINATE ? random.nextInt(Math.max(atoms, 1)) : -1;
+        for (int a = 0; a < written; a++) {
+            if (a == badAtom) {
+                out.write("   -0.8.250    1.4125    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n");
+                continue;
+            }
+            out.write(String.format(Locale.ROOT, "%10.4f%10.4f%10.4f %-3s 0  0  0  0  0  0  0  0  0  0  0  0\n",
+                    random.nextDouble(-10, 10), random.nextDouble(-10, 10), random.nextDouble(-10, 10),
+                    SYMBOLS[random.nextInt(SYMBOLS.length)]));
+        }
+        for (int a = 1; a < atoms; a++) {
+            int type = random.nextInt(4) == 0 ? 2 : 1;
+            int stereo = type == 1 && random.nextInt(8) == 0 ? 1 : 0;
+            if (fault == BAD_BOND && a == 1) {
+                // bond type and stereo out of byte range
+                out.write(String.format(Locale.ROOT, "%3d%3d%3d%3d  0  0  0\n", a, a + 1, 999, 999));
+                continue;
+            }
+            out.write(String.format(Locale.ROOT, "%3d%3d%3d%3d  0  0  0\n", a, a + 1, type, stereo));
+        }
+        for (int ring = 1; ring <= atoms / 6; ring++) {
+            out.write(String.format(Locale.ROOT, "%3d%3d  1  0  0  0  0\n", ring * 6, ring * 6 - 5));
+        }
+        out.write("M  END\n");
+    }
+
+    /**
+     * Writes ChEBI properties of the record, including the database links
+     * that can be written as URLs
+     *
+     * @param out    output
+     * @param random random generator
+     * @param record record number, starting from 1
+     * @param atoms  number of atoms in the molecule
+     * @throws IOException if output could not be written
+     */
+    void writeProperties(Writer out, SplittableRandom random, int record, int atoms) throws IOException {
+        String formula = "C" + atoms + "H" + (atoms * 2) + "O" + (record % 7);
+        writeProperty(out, "ChEBI ID", "CHEBI:" + record);
+        writeProperty(out, "ChEBI Name", "synthetic compound " + record);
+        writeProperty(out, "Star", String.valueOf(2 + random.nextInt(2)));
+        writeProperty(out, "Definition", "A synthetic molecule with " + atoms + " atoms generated for benchmarks.");
+        writeProperty(out, "SMILES", smiles(random, atoms));
+        writeProperty(out, "InChIKey", inchiKey(random));
+        writeProperty(out, "InChI", "InChI=1S/" + formula);
+        writeProperty(out, "Formulae", formula);
+        writeProperty(out, "Charge", String.valueOf(random.nextInt(3) - 1));
+        writeProperty(out, "Mass", String.format(Locale.ROOT, "%.5f", 12.011 * atoms + random.nextDouble(0, 100)));
+        writeProperty(out, "Monoisotopic Mass", String.format(Locale.ROOT, "%.3f", 12.0 * atoms + random.nextDouble(0, 100)));
+        writeProperty(out, "IUPAC Names", "synthetic-" + record + "-ol");
+        writeProperty(out, "Synonyms", "compound-" + record, "synthetic-" + record, "molecule " + record);
+        writeProperty(out, "CAS Registry Numbers", casNumber(random));
+        if (random.nextInt(2) == 0) {
+            writeProperty(out, "KEGG COMPOUND Database Links", String.format(Locale.ROOT, "C%05d", random.nextInt(100000)));
+        }
+        if (random.nextInt(3) == 0) {
+            writeProperty(out, "KNApSAcK Database Links", String.format(Locale.ROOT, "C%08d", random.nextInt(100000000)));
+        }
+        if (random.nextInt(4) == 0) {
+            writeProperty(out, "LIPID MAPS instance Database Links", String.format(Locale.ROOT, "LMPK%08d", random.nextInt(100000000)));
+        }
+        if (random.nextInt(4) == 0) {
+            writeProperty(out, "Rhea Database Links", String.valueOf(10000 + random.nextInt(90000)));
+        }
+        if (random.nextInt(4) == 0) {
+            writeProperty(out, "UniProt Database Links", "Q" + (10000 + random.nextInt(90000)));
+        }
+        if (random.nextInt(8) == 0) {
+            writeProperty(out, "Wikipedia Database Links", "Synthetic_compound_" + record);
+        }
+        writeProperty(out, "PubChem Database Links", "CID: " + (1000 + record), "SID: " + (100000000 + random.nextInt(100000000)));
+        writeProperty(out, "PubMed Citation Links", String.valueOf(10000000 + record), String.valueOf(10000000 + random.nextInt(10000000)));
+        writeProperty(out, "Last Modified", (1 + random.nextInt(28)) + " Feb 2016");
+    }
+
+    /**
+     * Writes DrugBank open structures properties of the record
+     *
+     * @param out    output
+     * @param random random generator
+     * @param record record number, starting from 1
+     * @param atoms  number of atoms in the molecule
+     * @throws IOException if output could not be written
+     */
+    void writeDrugBankProperties(Writer out, SplittableRandom random, int record, int atoms) throws IOException {
+        String formula = "C" + atoms + "H" + (atoms * 2) + "O" + (record % 7);
+        writeProperty(out, "DRUGBANK_ID", String.format(Locale.ROOT, "DB%05d", record % 100000));
+        writeProperty(out, "SECONDARY_ACCESSION_NUMBERS", String.format(Locale.ROOT, "APRD%05d; DB%05d", random.nextInt(100000), random.nextInt(100000)));
+        writeProperty(out, "COMMON_NAME", "Synthetic drug " + record);
+        writeProperty(out, "GENERIC_NAME", "Syntheticin " + record);
+        writeProperty(out, "CAS_NUMBER", casNumber(random));
+        writeProperty(out, "UNII", unii(random));
+        writeProperty(out, "SMILES", smiles(random, atoms));
+        writeProperty(out, "INCHI_IDENTIFIER", "InChI=1S/" + formula);
+        writeProperty(out, "INCHI_KEY", inchiKey(random));
+        writeProperty(out, "FORMULA", formula);
+        writeProperty(out, "MOLECULAR_WEIGHT", String.format(Locale.ROOT, "%.4f", 12.011 * atoms + random.nextDouble(0, 100)));
+        writeProperty(out, "JCHEM_IUPAC", "synthetic-" + record + "-amine");
+        writeProperty(out, "SYNONYMS", "Synthetic drug " + record + "; Syntheticin; Synthetica " + record);
+    }
+
+    /**
+     * Writes property with its values
+     *
+     * @param out    output
+     * @param name   property name
+     * @param values property values, one per line
+     * @throws IOException if output could not be written
+     */
+    static void writeProperty(Writer out, String name, String... values) throws IOException {
+        out.write("> <");
+        out.write(name);
+        out.write(">\n");
+        for (String value : values) {
+            out.write(value);
+            out.write('\n');
+        }
+        out.write('\n');
+    }
+
+    private static String smiles(SplittableRandom random, int atoms) {
+        StringBuilder smiles = new StringBuilder(atoms);
+        for (int a = 0; a < atoms; a++) {
+            smiles.append(random.nextInt(5) == 0 ? 'O' : 'C');
+        }
+        return smiles.toString();
+    }
+
+    private static String inchiKey(SplittableRandom random) {
+        StringBuilder key = new StringBuilder(27);
+        for (int i = 0; i < 14; i++) {
+            key.append((char) ('A' + random.nextInt(26)));
+        }
+        key.append('-');
+        for (int i = 0; i < 8; i++) {
+            key.append((char) ('A' + random.nextInt(26)));
+        }
+        return key.append("SA-N").toString();
+    }
+
+    private static String casNumber(SplittableRandom random) {
+        return (50 + random.nextInt(1000000)) + "-" + String.format(Locale.ROOT, "%02d", random.nextInt(100)) + "-" + random.nextInt(10);
+    }
+
+    private static String unii(SplittableRandom random) {
+        StringBuilder unii = new StringBuilder(10);
+        for (int i = 0; i < 10; i++) {
+            int c = random.nextInt(36);
+            unii.append((char) (c < 10 ? '0' + c : 'A' + c - 10));
+        }
+        return unii.toString();
+    }
+
+    /**
+     * Writes synthetic SDF file
+     *
+     * @param args generator options and -o,--output file path
+     * @throws IOException if the file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        addOptions(options);
+        Option output = new Option("o", "output", true, "output SDF file path");
+        output.setRequired(true);
+        options.addOption(output);
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            of(cmd).write(Paths.get(cmd.getOptionValue("output")));
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("SyntheticSdf", options);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output decoded from UTF-8 and appended to an Appendable (StringBuilder,
+ * Writer). Bytes of a character cut at the end of the buffer are kept until
+ * the next drain
+ */
+class AppendableOutputSink extends OutputSink {
+
+    private final Appendable target;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Bytes of the last, incomplete character
+     */
+    private final ByteBuffer rest = ByteBuffer.allocate(8);
+
+    private CharBuffer chars = CharBuffer.allocate(8192);
+
+    /**
+     * AppendableOutputSink class constructor
+     *
+     * @param target     text output
+     * @param bufferSize buffer size in bytes
+     */
+    AppendableOutputSink(Appendable target, int bufferSize) {
+        super(bufferSize);
+        this.target = target;
+    }
+
+    @Override
+    protected void drain(byte[] b, int off, int len) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+        if (rest.position() > 0) {
+            rest.flip();
+            ByteBuffer joined = ByteBuffer.allocate(rest.remaining() + len);
+            joined.put(rest).put(bytes).flip();
+            rest.clear();
+            bytes = joined;
+        }
+        decode(bytes);
+        rest.put(bytes);
+    }
+
+    /**
+     * Decodes complete characters and appends them to the target
+     */
+    private void decode(ByteBuffer bytes) throws IOException {
+        if (chars.capacity() < bytes.remaining()) {
+            chars = CharBuffer.allocate(bytes.remaining());
+        }
+        chars.clear();
+        decoder.decode(bytes, chars, false);
+        chars.flip();
+        target.append(chars);
+    }
+}
@@ -1,58 +0,0 @@
-/*
- * The MIT License
- *
- * Copyright 2017 Łukasz Szeremeta.
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in
- * all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
- * THE SOFTWARE.
- */
-package pl.edu.uwb.ii.sdfeater;
-
-/**
- * Atoms data
- *
- * @author Łukasz Szeremeta 2017
- */
-class Atom {
-
-    final String symbol;
-    final float x;
-    final float y;
-    final float z;
-    
-    /**
-     * Atom class constructor
-     *
-     * @param symbol atom symbol
-     * @param x atom x position
-     * @param y atom y position
-     * @param z atom z position
-     *
-     */
-    Atom(String symbol, float x, float y, float z) {
-        this.symbol = symbol;
-        this.x = x;
-        this.y = y;
-        this.z = z;
-    }
-
-    @Override
-    public String toString() {
-        return symbol + " (" + x + "," + y + "," + z + ")";
-    }
-}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.util.Arrays;
+
+/**
+ * Atoms data stored in columns. Arrays grow when needed and are reused for
+ * next molecules, so parsing atoms does not create objects
+ */
+class Atoms {
+
+    /**
+     * Atom positions
+     */
+    private float[] x = new float[16];
+    private float[] y = new float[16];
+    private float[] z = new float[16];
+
+    /**
+     * Atom symbols as ordinals of Elements
+     */
+    private short[] elements = new short[16];
+
+    private int size;
+
+    /**
+     * Add atom
+     *
+     * @param element atom symbol ordinal
+     * @param x       atom x position
+     * @param y       atom y position
+     * @param z       atom z position
+     */
+    void add(short element, float x, float y, float z) {
+        if (size == elements.length) {
+            int capacity = size * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            elements = Arrays.copyOf(elements, capacity);
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        elements[size] = element;
+        size++;
+    }
+
+    /**
+     * @return number of atoms
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Atom data, atoms are counted from 0
+     */
+    float x(int atom) {
+        return x[atom];
+    }
+
+    float y(int atom) {
+        return y[atom];
+    }
+
+    float z(int atom) {
+        return z[atom];
+    }
+
+    short element(int atom) {
+        return elements[atom];
+    }
+
+    String symbol(int atom) {
+        return Elements.symbol(elements[atom]);
+    }
+
+    /**
+     * Remove all atoms, arrays are kept for the next molecule
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param atom atom counted from 0
+     * @return atom symbol and position
+     */
+    String toString(int atom) {
+        return symbol(atom) + " (" + x[atom] + "," + y[atom] + "," + z[atom] + ")";
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Blocked gzip (BGZF) format. The file is a series of gzip members of at most
+ * 64 KiB, each one with its compressed size stored in the BC extra field, so
+ * block boundaries are known without decompressing and blocks can be
+ * compressed and decompressed independently. Files are readable by any gzip
+ * tool
+ */
+final class BlockGzip {
+
+    /**
+     * Size of the gzip header with the BC extra field only
+     */
+    static final int HEADER_SIZE = 18;
+
+    /**
+     * Size of CRC32 and ISIZE after compressed data
+     */
+    static final int TRAILER_SIZE = 8;
+
+    /**
+     * Maximum size of a block, compressed or not
+     */
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Size of uncompressed data in one block, leaves room for deflate
+     * overhead of incompressible data
+     */
+    static final int BLOCK_DATA_SIZE = 0xff00;
+
+    /**
+     * Empty block marking the end of file
+     */
+    static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+            0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private BlockGzip() {
+    }
+
+    /**
+     * Checks gzip magic bytes
+     *
+     * @param header file start
+     * @return true if the file is gzip compressed
+     */
+    static boolean isGzip(ByteBuffer header) {
+        return header.remaining() >= 2 && (header.get(0) & 0xff) == 0x1f && (header.get(1) & 0xff) == 0x8b;
+    }
+
+    /**
+     * Checks if the file starts with a BGZF block
+     *
+     * @param header file start
+     * @return true if the file is blocked gzip
+     */
+    static boolean isBlockGzip(ByteBuffer header) {
+        return isGzip(header) && blockSize(header, 0, header.limit()) > 0;
+    }
+
+    /**
+     * Reads block size from BGZF block header
+     *
+     * @param buf   input bytes
+     * @param pos   block start
+     * @param limit end of bytes available
+     * @return size of the whole block, 0 if the header is not complete or -1
+     *         if it is not a BGZF block
+     */
+    static int blockSize(ByteBuffer buf, int pos, int limit) {
+        if (limit - pos < 12) {
+            return 0;
+        }
+        if ((buf.get(pos) & 0xff) != 0x1f || (buf.get(pos + 1) & 0xff) != 0x8b || buf.get(pos + 2) != 8
+                || (buf.get(pos + 3) & 4) == 0) {
+            return -1;
+        }
+        int xlen = unsignedShort(buf, pos + 10);
+        if (limit - pos < 12 + xlen) {
+            return 0;
+        }
+        // look for the BC subfield among extra subfields
+        int field = pos + 12;
+        int extraEnd = field + xlen;
+        while (field + 4 <= extraEnd) {
+            int length = unsignedShort(buf, field + 2);
+            if (buf.get(field) == 'B' && buf.get(field + 1) == 'C' && length == 2) {
+                return unsignedShort(buf, field + 4) + 1;
+            }
+            field += 4 + length;
+        }
+        return -1;
+    }
+
+    /**
+     * Decompresses BGZF blocks
+     *
+     * @param raw   whole blocks
+     * @param start first block start
+     * @param end   last block end
+     * @return uncompressed data of all blocks
+     * @throws ZipException if a block is corrupted
+     */
+    static byte[] decompress(byte[] raw, int start, int end) throws ZipException {
+        ByteBuffer buf = ByteBuffer.wrap(raw);
+        long total = 0;
+        for (int pos = start; pos < end; ) {
+            int size = blockSize(buf, pos, end);
+            if (size < HEADER_SIZE + TRAILER_SIZE || pos + size > end) {
+                throw new ZipException("Not a blocked gzip member at byte " + pos);
+            }
+            // ISIZE is checked before it is used to allocate the output
+            int length = intLE(buf, pos + size - 4);
+            if (length < 0 || length > MAX_BLOCK_SIZE) {
+                throw new ZipException("Invalid block size " + Integer.toUnsignedString(length) + " at byte " + pos);
+            }
+            total += length;
+            pos += size;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Blocks too large to decompress at once");
+        }
+        byte[] data = new byte[(int) total];
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        try {
+            int offset = 0;
+            for (int pos = start; pos < end; ) {
+                int size = blockSize(buf, pos, end);
+                int dataStart = pos + 12 + unsignedShort(buf, pos + 10);
+                int trailer = pos + size - TRAILER_SIZE;
+                int length = intLE(buf, trailer + 4);
+                inflater.reset();
+                inflater.setInput(raw, dataStart, trailer - dataStart);
+                int inflated = 0;
+                while (inflated < length && !inflater.finished()) {
+                    int n = inflater.inflate(data, offset + inflated, length - inflated);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                crc.reset();
+                crc.update(data, offset, length);
+                if (inflated != length || (int) crc.getValue() != intLE(buf, trailer)) {
+                    throw new ZipException("Corrupted gzip block");
+                }
+                offset += length;
+                pos += size;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * Compresses data into BGZF blocks
+     *
+     * @param data  uncompressed data
+     * @param level deflate compression level
+     * @return compressed blocks
+     */
+    static byte[] compress(byte[] data, int level) {
+        int blocks = (data.length + BLOCK_DATA_SIZE - 1) / BLOCK_DATA_SIZE;
+        byte[] out = new byte[blocks * MAX_BLOCK_SIZE];
+        ByteBuffer buf = ByteBuffer.wrap(out);
+        Deflater deflater = new Deflater(level, true);
+        CRC32 crc = new CRC32();
+        int pos = 0;
+        try {
+            for (int offset = 0; offset < data.length; offset += BLOCK_DATA_SIZE) {
+                int length = Math.min(BLOCK_DATA_SIZE, data.length - offset);
+                int limit = pos + MAX_BLOCK_SIZE - TRAILER_SIZE;
+                int compressed = deflate(deflater, data, offset, length, out, pos + HEADER_SIZE, limit);
+                if (compressed < 0) {
+                    // incompressible data, stored blocks always fit
+                    deflater.setLevel(Deflater.NO_COMPRESSION);
+                    compressed = deflate(deflater, data, offset, length, out, pos + HEADER_SIZE, limit);
+                    deflater.setLevel(level);
+                }
+                int size = HEADER_SIZE + compressed + TRAILER_SIZE;
+                System.arraycopy(EOF_BLOCK, 0, out, pos, HEADER_SIZE);
+                out[pos + 16] = (byte) (size - 1);
+                out[pos + 17] = (byte) ((size - 1) >> 8);
+                crc.reset();
+                crc.update(data, offset, length);
+                int trailer = pos + HEADER_SIZE + compressed;
+                putIntLE(buf, trailer, (int) crc.getValue());
+                putIntLE(buf, trailer + 4, length);
+                pos += size;
+            }
+        } finally {
+            deflater.end();
+        }
+        return pos == out.length ? out : Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Deflates one block
+     *
+     * @return compressed size or -1 if it does not fit before the limit
+     */
+    private static int deflate(Deflater deflater, byte[] data, int offset, int length, byte[] out, int start, int limit) {
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int pos = start;
+        while (!deflater.finished()) {
+            if (pos == limit) {
+                return -1;
+            }
+            pos += deflater.deflate(out, pos, limit - pos);
+        }
+        return pos - start;
+    }
+
+    private static int unsignedShort(ByteBuffer buf, int pos) {
+        return (buf.get(pos) & 0xff) | (buf.get(pos + 1) & 0xff) << 8;
+    }
+
+    private static int intLE(ByteBuffer buf, int pos) {
+        return (buf.get(pos) & 0xff) | (buf.get(pos + 1) & 0xff) << 8 | (buf.get(pos + 2) & 0xff) << 16
+                | (buf.get(pos + 3) & 0xff) << 24;
+    }
+
+    private static void putIntLE(ByteBuffer buf, int pos, int value) {
+        buf.put(pos, (byte) value);
+        buf.put(pos + 1, (byte) (value >> 8));
+        buf.put(pos + 2, (byte) (value >> 16));
+        buf.put(pos + 3, (byte) (value >> 24));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses blocked gzip (BGZF) file on many threads. Compressed blocks
+ * are read in chunks of whole blocks, each chunk is decompressed by a worker
+ * and chunks are returned in file order
+ */
+class BlockGzipInputStream extends InputStream {
+
+    /**
+     * Compressed bytes read at once
+     */
+    static final int CHUNK = 1 << 20;
+
+    private final FileChannel channel;
+
+    private final ExecutorService workers;
+
+    /**
+     * Maximum number of chunks being decompressed
+     */
+    private final int ahead;
+
+    /**
+     * Chunks being decompressed in file order
+     */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /**
+     * Compressed bytes read from the channel, a part of the last block may be
+     * left at the start for the next chunk
+     */
+    private ByteBuffer raw = ByteBuffer.allocate(CHUNK);
+
+    /**
+     * File offset of the raw buffer start
+     */
+    private long rawOffset;
+
+    private boolean eof;
+
+    /**
+     * Error found while reading ahead, thrown after blocks before it are
+     * returned
+     */
+    private IOException error;
+
+    /**
+     * Currently returned uncompressed chunk
+     */
+    private byte[] data = new byte[0];
+
+    private int dataPosition;
+
+    /**
+     * BlockGzipInputStream class constructor
+     *
+     * @param channel channel of input file positioned at the first block
+     * @param threads number of decompression threads
+     */
+    BlockGzipInputStream(FileChannel channel, int threads) {
+        this.channel = channel;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.ahead = threads * 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (dataPosition == data.length) {
+            submitChunks();
+            if (pending.isEmpty()) {
+                if (error != null) {
+                    throw error;
+                }
+                return -1;
+            }
+            try {
+                data = pending.poll().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            dataPosition = 0;
+        }
+        int n = Math.min(len, data.length - dataPosition);
+        System.arraycopy(data, dataPosition, b, off, n);
+        dataPosition += n;
+        return n;
+    }
+
+    /**
+     * Reads chunks of whole blocks and submits them to the workers until
+     * enough of them are pending
+     */
+    private void submitChunks() throws IOException {
+        while (!eof && error == null && pending.size() < ahead) {
+            while (raw.hasRemaining() && channel.read(raw) >= 0) {
+            }
+            eof = raw.hasRemaining();
+            int end = raw.position();
+            int pos = 0;
+            while (pos < end) {
+                int size = BlockGzip.blockSize(raw, pos, end);
+                if (size < 0) {
+                    error = new ZipException("Not a blocked gzip member at byte " + (rawOffset + pos));
+                    break;
+                }
+                if (size == 0 || pos + size > end) {
+                    break;
+                }
+                pos += size;
+            }
+            if (eof && pos < end && error == null) {
+                error = new EOFException("Unexpected end of blocked gzip file");
+            }
+            byte[] chunk = Arrays.copyOf(raw.array(), pos);
+            pending.add(workers.submit(() -> BlockGzip.decompress(chunk, 0, chunk.length)));
+            // keep the incomplete block for the next chunk
+            raw.flip().position(pos);
+            raw.compact();
+            rawOffset += pos;
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
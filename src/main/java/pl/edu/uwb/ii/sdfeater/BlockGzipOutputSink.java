@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Output compressed to blocked gzip (BGZF). Every full buffer is compressed
+ * by a worker into independent blocks and the blocks are written to the
+ * target in output order, so compression runs on many threads
+ */
+class BlockGzipOutputSink extends OutputSink {
+
+    private final OutputSink target;
+
+    private final ExecutorService workers;
+
+    /**
+     * Maximum number of buffers being compressed
+     */
+    private final int ahead;
+
+    /**
+     * Buffers being compressed in output order
+     */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /**
+     * BlockGzipOutputSink class constructor
+     *
+     * @param target     sink to which compressed blocks are written
+     * @param bufferSize buffer size in bytes
+     * @param threads    number of compression threads
+     */
+    BlockGzipOutputSink(OutputSink target, int bufferSize, int threads) {
+        super(bufferSize);
+        this.target = target;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.ahead = threads * 2;
+    }
+
+    @Override
+    protected void drain(byte[] b, int off, int len) throws IOException {
+        byte[] data = Arrays.copyOfRange(b, off, off + len);
+        pending.add(workers.submit(() -> BlockGzip.compress(data, Deflater.DEFAULT_COMPRESSION)));
+        writeCompressed(ahead);
+    }
+
+    /**
+     * Writes compressed buffers to the target in output order
+     *
+     * @param maxPending number of buffers that can be left pending, buffers
+     *                   that are already compressed are written anyway
+     */
+    private void writeCompressed(int maxPending) throws IOException {
+        try {
+            while (!pending.isEmpty() && (pending.size() >= maxPending || pending.peek().isDone())) {
+                byte[] blocks = pending.poll().get();
+                target.write(blocks, 0, blocks.length);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes buffers that are already compressed. Data left in the buffer is
+     * compressed when the buffer is full, so small batches do not end up in
+     * small blocks
+     */
+    @Override
+    void flush() {
+        try {
+            writeCompressed(Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        target.flush();
+    }
+
+    /**
+     * Compresses data left in the buffer and writes all blocks, so the file
+     * ends at a block boundary
+     */
+    @Override
+    long sync() throws IOException {
+        super.flush();
+        writeCompressed(0);
+        return target.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.flush();
+            writeCompressed(0);
+            target.write(BlockGzip.EOF_BLOCK, 0, BlockGzip.EOF_BLOCK.length);
+        } finally {
+            workers.shutdownNow();
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.util.Arrays;
+
+/**
+ * Bonds data stored in columns. Arrays grow when needed and are reused for
+ * next molecules, so parsing bonds does not create objects
+ */
+class Bonds {
+
+    /**
+     * First and second atom of the bond, atoms are counted from 1 as in the
+     * bond block
+     */
+    private int[] atom1 = new int[16];
+    private int[] atom2 = new int[16];
+
+    /**
+     * Bond types and stereo
+     */
+    private byte[] types = new byte[16];
+    private byte[] stereo = new byte[16];
+
+    private int size;
+
+    /**
+     * Add bond
+     *
+     * @param atom1  first atom id
+     * @param type   bond type
+     * @param atom2  second atom id
+     * @param stereo bond stereo
+     */
+    void add(int atom1, byte type, int atom2, byte stereo) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            this.atom1 = Arrays.copyOf(this.atom1, capacity);
+            this.atom2 = Arrays.copyOf(this.atom2, capacity);
+            types = Arrays.copyOf(types, capacity);
+            this.stereo = Arrays.copyOf(this.stereo, capacity);
+        }
+        this.atom1[size] = atom1;
+        this.atom2[size] = atom2;
+        types[size] = type;
+        this.stereo[size] = stereo;
+        size++;
+    }
+
+    /**
+     * @return number of bonds
+     */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Bond data, bonds are counted from 0
+     */
+    int atom1(int bond) {
+        return atom1[bond];
+    }
+
+    int atom2(int bond) {
+        return atom2[bond];
+    }
+
+    byte type(int bond) {
+        return types[bond];
+    }
+
+    byte stereo(int bond) {
+        return stereo[bond];
+    }
+
+    /**
+     * Remove all bonds, arrays are kept for the next molecule
+     */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for reading SDF lines directly from input bytes
+ */
+final class Bytes {
+
+    private Bytes() {
+    }
+
+    /**
+     * Detect if byte is removed by String.trim()
+     *
+     * @param b byte to check
+     * @return true if byte is a control character or space
+     */
+    static boolean isTrimmed(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    /**
+     * Detect if byte is whitespace as in \s regular expression
+     *
+     * @param b byte to check
+     * @return true if byte is whitespace
+     */
+    static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Detect if byte is word character as in \w regular expression
+     *
+     * @param b byte to check
+     * @return true if byte is letter, digit or underscore
+     */
+    static boolean isWord(byte b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '_';
+    }
+
+    /**
+     * Find end of the line
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param limit end of input
+     * @return index of line terminator or limit
+     */
+    static int lineEnd(ByteBuffer buf, int start, int limit) {
+        for (int i = start; i < limit; i++) {
+            byte b = buf.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Find start of the next line
+     *
+     * @param buf   input bytes
+     * @param end   end of the current line
+     * @param limit end of input
+     * @return index of next line start
+     */
+    static int nextLine(ByteBuffer buf, int end, int limit) {
+        if (end + 1 < limit && buf.get(end) == '\r' && buf.get(end + 1) == '\n') {
+            return end + 2;
+        }
+        return end + 1;
+    }
+
+    /**
+     * Skip leading characters removed by String.trim()
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return index of first not trimmed byte or end
+     */
+    static int trimStart(ByteBuffer buf, int start, int end) {
+        while (start < end && isTrimmed(buf.get(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Skip trailing characters removed by String.trim()
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return index after last not trimmed byte or start
+     */
+    static int trimEnd(ByteBuffer buf, int start, int end) {
+        while (end > start && isTrimmed(buf.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Check if bytes at given position match ASCII text
+     *
+     * @param buf    input bytes
+     * @param pos    position to check
+     * @param end    line end
+     * @param prefix ASCII text
+     * @return true if text is found at position
+     */
+    static boolean matches(ByteBuffer buf, int pos, int end, String prefix) {
+        if (pos < 0 || end - pos < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf.get(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find byte in the line
+     *
+     * @param buf   input bytes
+     * @param b     byte to find
+     * @param start search start
+     * @param end   line end
+     * @return index of byte or -1
+     */
+    static int indexOf(ByteBuffer buf, byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Detect if bytes are int as accepted by Integer.parseInt()
+     *
+     * @param buf   input bytes
+     * @param start text start
+     * @param end   text end
+     * @return true if text is int
+     */
+    static boolean isInt(ByteBuffer buf, int start, int end) {
+        boolean negative = false;
+        if (start < end && (buf.get(start) == '-' || buf.get(start) == '+')) {
+            negative = buf.get(start) == '-';
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b < '0' || b > '9') {
+                return false;
+            }
+            value = value * 10 + (b - '0');
+            if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse int from bytes without creating a String. Spaces around the
+     * number are skipped, so fixed width columns can be parsed directly
+     *
+     * @param buf   input bytes
+     * @param start column start
+     * @param end   column end
+     * @return parsed number
+     * @throws NumberFormatException if column is empty or not a number
+     */
+    static int parseInt(ByteBuffer buf, int start, int end) {
+        start = trimStart(buf, start, end);
+        end = trimEnd(buf, start, end);
+        if (!isInt(buf, start, end)) {
+            throw new NumberFormatException("For input string: \"" + decode(buf, start, end) + "\"");
+        }
+        boolean negative = buf.get(start) == '-';
+        if (negative || buf.get(start) == '+') {
+            start++;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (buf.get(i) - '0');
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Powers of ten exactly representable as float
+     */
+    private static final float[] FLOAT_POW_10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    /**
+     * Parse float from bytes without creating a String. Plain decimal
+     * numbers with up to 7 digits (all coordinates in the atom block) are
+     * divided once in float, which gives the same correctly rounded result as
+     * Float.parseFloat(), other numbers are passed to Float.parseFloat()
+     *
+     * @param buf   input bytes
+     * @param start column start
+     * @param end   column end
+     * @return parsed number
+     * @throws NumberFormatException if column is empty or not a number
+     */
+    static float parseFloat(ByteBuffer buf, int start, int end) {
+        start = trimStart(buf, start, end);
+        end = trimEnd(buf, start, end);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            negative = buf.get(i) == '-';
+            i++;
+        }
+        int mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        boolean number = false;
+        for (; i < end; i++) {
+            byte b = buf.get(i);
+            if (b >= '0' && b <= '9') {
+                number = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0 && ++digits > 7) {
+                    break;
+                }
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else if (b == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || !number || fraction >= FLOAT_POW_10.length) {
+            return Float.parseFloat(decode(buf, start, end));
+        }
+        float value = fraction > 0 ? mantissa / FLOAT_POW_10[fraction] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Decode UTF-8 bytes to String with backslashes and apostrophes escaped
+     * for the output formats
+     *
+     * @param buf   input bytes
+     * @param start text start
+     * @param end   text end
+     * @return decoded text
+     */
+    static String decode(ByteBuffer buf, int start, int end) {
+        int length = end - start;
+        byte[] bytes = new byte[length];
+        boolean escape = false;
+        for (int i = 0; i < length; i++) {
+            byte b = buf.get(start + i);
+            bytes[i] = b;
+            escape |= b == '\\' || b == '\'';
+        }
+        String s = new String(bytes, StandardCharsets.UTF_8);
+        return escape ? s.replace("\\", "\\\\").replace("'", "\\'") : s;
+    }
+
+    /**
+     * Decode UTF-8 bytes to String as they are, without escaping
+     *
+     * @param buf   input bytes
+     * @param start text start
+     * @param end   text end
+     * @return decoded text
+     */
+    static String decodeRaw(ByteBuffer buf, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parser of the V2000 CTfile counts line, atom block and bond block. Reads
+ * values from their fixed columns without splitting lines or creating
+ * substrings
+ */
+class CTFileParser {
+
+    /**
+     * Size of the atom symbols cache
+     */
+    private static final int SYMBOLS = 256;
+
+    /**
+     * Atom symbols cache keys (symbol bytes packed into int)
+     */
+    private final int[] symbolKeys = new int[SYMBOLS];
+
+    /**
+     * Atom symbols cache values (ordinals of Elements)
+     */
+    private final short[] symbolOrdinals = new short[SYMBOLS];
+
+    /**
+     * Detect counts line. Normally it is the fourth line of the record, but
+     * blank lines left between records move it down, so the line must have
+     * the V2000/V3000 version stamp or (in files without the stamp) numbers
+     * in the atom and bond count columns
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return true if line is the counts line
+     */
+    boolean isCountsLine(ByteBuffer buf, int start, int end) {
+        if (Bytes.matches(buf, column(start, end, 34), end, "V2000") || isV3000(buf, start, end)) {
+            return true;
+        }
+        return end - start >= 6 && Bytes.indexOf(buf, (byte) 'V', start, end) < 0
+                && isCount(buf, start, start + 3) && isCount(buf, start + 3, start + 6);
+    }
+
+    /**
+     * Detect right aligned number in 3 character column
+     */
+    private static boolean isCount(ByteBuffer buf, int start, int end) {
+        int s = Bytes.trimStart(buf, start, end);
+        return s < end && Bytes.isInt(buf, s, end);
+    }
+
+    /**
+     * Number of atoms from the counts line (aaa, columns 1-3)
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return number of atoms, 0 for V3000 counts line
+     */
+    int atomCount(ByteBuffer buf, int start, int end) {
+        return isV3000(buf, start, end) ? 0 : Bytes.parseInt(buf, start, column(start, end, 3));
+    }
+
+    /**
+     * Number of bonds from the counts line (bbb, columns 4-6)
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return number of bonds, 0 for V3000 counts line
+     */
+    int bondCount(ByteBuffer buf, int start, int end) {
+        return isV3000(buf, start, end) ? 0 : Bytes.parseInt(buf, column(start, end, 3), column(start, end, 6));
+    }
+
+    /**
+     * Parses atom line (xxxxx.xxxxyyyyy.yyyyzzzzz.zzzz aaa...) and adds atom
+     * to the molecule
+     *
+     * @param buf      input bytes
+     * @param start    line start
+     * @param end      line end
+     * @param molecule molecule to which atom is added
+     */
+    void parseAtom(ByteBuffer buf, int start, int end, Molecule molecule) {
+        float x = Bytes.parseFloat(buf, start, column(start, end, 10));
+        float y = Bytes.parseFloat(buf, column(start, end, 10), column(start, end, 20));
+        float z = Bytes.parseFloat(buf, column(start, end, 20), column(start, end, 30));
+        molecule.atoms.add(symbol(buf, column(start, end, 31), column(start, end, 34)), x, y, z);
+    }
+
+    /**
+     * Parses bond line (111222tttsss...) and adds bond to the molecule
+     *
+     * @param buf      input bytes
+     * @param start    line start
+     * @param end      line end
+     * @param molecule molecule to which bond is added
+     */
+    void parseBond(ByteBuffer buf, int start, int end, Molecule molecule) {
+        int atom1 = Bytes.parseInt(buf, start, column(start, end, 3));
+        int atom2 = Bytes.parseInt(buf, column(start, end, 3), column(start, end, 6));
+        int type = Bytes.parseInt(buf, column(start, end, 6), column(start, end, 9));
+        int stereoStart = column(start, end, 9);
+        int stereoEnd = column(start, end, 12);
+        int stereo = Bytes.trimStart(buf, stereoStart, stereoEnd) < stereoEnd ? Bytes.parseInt(buf, stereoStart, stereoEnd) : 0;
+        molecule.bonds.add(atom1, toByte(type), atom2, toByte(stereo));
+    }
+
+    /**
+     * Detect V3000 counts line (vvvvvv, columns 34-39)
+     */
+    private static boolean isV3000(ByteBuffer buf, int start, int end) {
+        return Bytes.matches(buf, column(start, end, 34), end, "V3000");
+    }
+
+    /**
+     * Position of column in the line, lines may be shorter than the full
+     * record
+     *
+     * @param start  line start
+     * @param end    line end
+     * @param column column index counted from 0
+     * @return position of the column or line end
+     */
+    private static int column(int start, int end, int column) {
+        return Math.min(start + column, end);
+    }
+
+    /**
+     * Check byte range as Byte.parseByte() does
+     */
+    private static byte toByte(int value) {
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range. Value:\"" + value + "\" Radix:10");
+        }
+        return (byte) value;
+    }
+
+    /**
+     * Atom symbol from cache, decoded only the first time it is found
+     *
+     * @param buf   input bytes
+     * @param start symbol column start
+     * @param end   symbol column end
+     * @return atom symbol ordinal
+     */
+    private short symbol(ByteBuffer buf, int start, int end) {
+        start = Bytes.trimStart(buf, start, end);
+        end = Bytes.trimEnd(buf, start, end);
+        int key = 1;
+        for (int i = start; i < end; i++) {
+            key = key << 8 | buf.get(i) & 0xff;
+        }
+        int slot = (key ^ key >>> 8 ^ key >>> 16) & (SYMBOLS - 1);
+        if (symbolKeys[slot] != key) {
+            // cached only when the symbol got its ordinal
+            symbolOrdinals[slot] = Elements.ordinal(Bytes.decode(buf, start, end));
+            symbolKeys[slot] = key;
+        }
+        return symbolOrdinals[slot];
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output written to a file or standard output through a channel
+ */
+class ChannelOutputSink extends OutputSink {
+
+    private final WritableByteChannel channel;
+
+    /**
+     * Number of bytes in the channel
+     */
+    private long length;
+
+    /**
+     * ChannelOutputSink class constructor
+     *
+     * @param channel    output channel
+     * @param bufferSize buffer size in bytes
+     */
+    ChannelOutputSink(WritableByteChannel channel, int bufferSize) {
+        super(bufferSize);
+        this.channel = channel;
+    }
+
+    /**
+     * Opens output file, the file is truncated if it exists
+     *
+     * @param filename   output file path
+     * @param bufferSize buffer size in bytes
+     * @return sink writing to the file
+     * @throws IOException if the file could not be opened
+     */
+    static ChannelOutputSink open(String filename, int bufferSize) throws IOException {
+        return new ChannelOutputSink(FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), bufferSize);
+    }
+
+    /**
+     * Opens output file of a resumed conversion, the file is truncated to
+     * the given length and written after it
+     *
+     * @param filename   output file path
+     * @param bufferSize buffer size in bytes
+     * @param length     number of bytes kept from the previous run
+     * @return sink writing to the file
+     * @throws IOException if the file could not be opened or is shorter than
+     *                     the length
+     */
+    static ChannelOutputSink open(String filename, int bufferSize, long length) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < length) {
+                throw new IOException("Output file is shorter than its checkpoint: " + filename);
+            }
+            channel.truncate(length);
+            channel.position(length);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        ChannelOutputSink sink = new ChannelOutputSink(channel, bufferSize);
+        sink.length = length;
+        return sink;
+    }
+
+    /**
+     * Opens standard output
+     *
+     * @param bufferSize buffer size in bytes
+     * @return sink writing to standard output
+     */
+    static ChannelOutputSink stdout(int bufferSize) {
+        return new ChannelOutputSink(new FileOutputStream(FileDescriptor.out).getChannel(), bufferSize);
+    }
+
+    @Override
+    protected void drain(byte[] b, int off, int len) throws IOException {
+        RunStats stats = SDFEater.stats;
+        long start = stats != null ? System.nanoTime() : 0;
+        ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        length += len;
+        if (stats != null) {
+            stats.write(System.nanoTime() - start, len);
+        }
+    }
+
+    @Override
+    long sync() throws IOException {
+        flush();
+        if (channel instanceof FileChannel) {
+            ((FileChannel) channel).force(false);
+        }
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
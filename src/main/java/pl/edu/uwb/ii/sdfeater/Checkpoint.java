@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint of a long conversion, saved periodically after a batch is
+ * written. It holds the input offset after the last written record, the
+ * number of records before it, the next RDFa and Microdata identifier and
+ * the output length, so a killed conversion can be resumed: the output is
+ * truncated to its checkpointed length and records are read from the next
+ * $$$$ boundary
+ */
+class Checkpoint {
+
+    /**
+     * Default number of seconds between checkpoints
+     */
+    static final int DEFAULT_INTERVAL = 60;
+
+    /**
+     * Checkpoint file
+     */
+    private final Path path;
+
+    /**
+     * Input file and output format of the conversion
+     */
+    private final String input;
+    private final char format;
+
+    /**
+     * Nanoseconds between checkpoints
+     */
+    private final long interval;
+
+    /**
+     * Time of the last checkpoint
+     */
+    private long saved = System.nanoTime();
+
+    /**
+     * True if the conversion continues from the checkpoint file
+     */
+    final boolean resumed;
+
+    /**
+     * Input offset after the last written record, number of records before
+     * it, next RDFa and Microdata identifier and output length of the resumed
+     * conversion, zero for a new one
+     */
+    final long offset;
+    final long records;
+    final long ids;
+    final long length;
+
+    private Checkpoint(Path path, String input, char format, int interval, boolean resumed, long offset, long records,
+                       long ids, long length) {
+        this.path = path;
+        this.input = input;
+        this.format = format;
+        this.interval = TimeUnit.SECONDS.toNanos(interval);
+        this.resumed = resumed;
+        this.offset = offset;
+        this.records = records;
+        this.ids = ids;
+        this.length = length;
+    }
+
+    /**
+     * Starts checkpoints of a new conversion
+     *
+     * @param filename checkpoint file path
+     * @param input    input file
+     * @param format   output format
+     * @param interval seconds between checkpoints
+     * @return checkpoints
+     */
+    static Checkpoint start(String filename, String input, char format, int interval) {
+        return new Checkpoint(Paths.get(filename), input, format, interval, false, 0, 0, 0, 0);
+    }
+
+    /**
+     * Reads checkpoint of a killed conversion
+     *
+     * @param filename checkpoint file path
+     * @param input    input file
+     * @param format   output format
+     * @param interval seconds between checkpoints
+     * @return checkpoints, continued from the file
+     * @throws IOException if the file could not be read or is a checkpoint of
+     *                     another conversion
+     */
+    static Checkpoint resume(String filename, String input, char format, int interval) throws IOException {
+        Path path = Paths.get(filename);
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        if (!input.equals(properties.getProperty("input")) || !String.valueOf(format).equals(properties.getProperty("format"))) {
+            throw new IOException("Checkpoint " + filename + " is of another input file or format");
+        }
+        try {
+            return new Checkpoint(path, input, format, interval, true,
+                    Long.parseLong(properties.getProperty("offset")),
+                    Long.parseLong(properties.getProperty("records")),
+                    Long.parseLong(properties.getProperty("ids")),
+                    Long.parseLong(properties.getProperty("length")));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint " + filename, e);
+        }
+    }
+
+    /**
+     * @return true if the interval has passed since the last checkpoint
+     */
+    boolean isDue() {
+        return System.nanoTime() - saved >= interval;
+    }
+
+    /**
+     * Writes all output to the storage device and saves the checkpoint. The
+     * file is replaced at once, so a conversion killed while saving keeps
+     * the previous checkpoint
+     *
+     * @param offset  input offset after the last written record
+     * @param records number of records before the offset
+     * @param out     output of the conversion
+     * @throws IOException if the output or the checkpoint could not be
+     *                     written
+     */
+    void save(long offset, long records, OutputSink out) throws IOException {
+        long length = out.sync();
+        Properties properties = new Properties();
+        properties.setProperty("input", input);
+        properties.setProperty("format", String.valueOf(format));
+        properties.setProperty("offset", String.valueOf(offset));
+        properties.setProperty("records", String.valueOf(records));
+        properties.setProperty("ids", String.valueOf(Molecule.nextID()));
+        properties.setProperty("length", String.valueOf(length));
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            properties.store(stream, "SDFEater checkpoint");
+            stream.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        saved = System.nanoTime();
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Conversion of input files to one output or to one output per input file.
+ * Outputs per input are written by a work-stealing pool, one input file per
+ * thread, largest files started first
+ */
+class Conversion {
+
+    /**
+     * Output format
+     */
+    private final char format;
+
+    /**
+     * Try to generate full database URLs instead of IDs
+     */
+    private final boolean urls;
+
+    /**
+     * Add additional atoms data from periodic table
+     */
+    private final boolean periodic;
+
+    /**
+     * Molecule identifier strategy
+     */
+    private final MoleculeId.Strategy ids;
+
+    /**
+     * Output buffer size in bytes
+     */
+    private final int bufferSize;
+
+    /**
+     * Compress output to blocked gzip
+     */
+    private final boolean gzip;
+
+    /**
+     * Molecules in one UNWIND statement and in one transaction of
+     * cypher-batch
+     */
+    private final int batchSize;
+    private final int commitSize;
+
+    /**
+     * Conversion class constructor
+     *
+     * @param format     output format
+     * @param urls       try to generate full database URLs instead of IDs
+     * @param periodic   add additional atoms data from periodic table
+     * @param ids        molecule identifier strategy
+     * @param bufferSize output buffer size in bytes
+     * @param gzip       compress output to blocked gzip
+     * @param batchSize  molecules in one UNWIND statement of cypher-batch
+     * @param commitSize molecules in one transaction of cypher-batch
+     */
+    Conversion(char format, boolean urls, boolean periodic, MoleculeId.Strategy ids, int bufferSize, boolean gzip,
+               int batchSize, int commitSize) {
+        this.format = format;
+        this.urls = urls;
+        this.periodic = periodic;
+        this.ids = ids;
+        this.bufferSize = bufferSize;
+        this.gzip = gzip;
+        this.batchSize = batchSize;
+        this.commitSize = commitSize;
+    }
+
+    /**
+     * Finds output format by its name
+     *
+     * @param name format name (cypher, cypher-batch, neo4jcsv, cvme, smiles,
+     *             inchi, turtle, ntriples, rdfxml, rdfthrift, jsonldhtml,
+     *             jsonld, rdfa, microdata)
+     * @return format character, 0 if there is no such format
+     */
+    static char format(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "cypher":
+                return 'c';
+            case "cypher-batch":
+                return 'q';
+            case "neo4jcsv":
+                return 'b';
+            case "cvme":
+                return 'r';
+            case "smiles":
+                return 's';
+            case "inchi":
+                return 'i';
+            case "turtle":
+                return 't';
+            case "ntriples":
+                return 'n';
+            case "rdfxml":
+                return 'x';
+            case "rdfthrift":
+                return 'h';
+            case "jsonldhtml":
+                return 'd';
+            case "jsonld":
+                return 'j';
+            case "rdfa":
+                return 'a';
+            case "microdata":
+                return 'm';
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Converts all input files to one output
+     *
+     * @param inputs   input files
+     * @param output   output file path (standard output if null), output
+     *                 directory in neo4jcsv
+     * @param threads  number of threads
+     * @param index    index of the input file, null to convert all records;
+     *                 only for a single input file
+     * @param selected selected record numbers in input order
+     * @throws IOException if the output could not be written
+     */
+    void run(List<String> inputs, String output, int threads, RecordIndex index, long[] selected) throws IOException {
+        // neo4j-admin import files are written to the output directory
+        if (format == 'b') {
+            convert(inputs, 0, null, output != null ? output : ".", threads, index, selected);
+        } else {
+            convert(inputs, 0, output, null, threads, index, selected);
+        }
+    }
+
+    /**
+     * Converts every input file to its own output file in the directory,
+     * named after the input file (e.g. chunk1.sdf.gz to chunk1.ttl). In
+     * neo4jcsv every input gets its own directory with the import command in
+     * import.txt
+     *
+     * @param inputs    input files
+     * @param directory output directory
+     * @param threads   number of input files converted at once
+     * @throws IOException if an output could not be written
+     */
+    void runPerInput(List<String> inputs, String directory, int threads) throws IOException {
+        Files.createDirectories(Paths.get(directory));
+        List<String> outputs = outputNames(inputs, directory);
+        RunStats stats = SDFEater.stats;
+        if (stats != null) {
+            long size = 0;
+            for (String input : inputs) {
+                size += Files.size(Paths.get(input));
+            }
+            stats.start(size);
+        }
+        // formats collected in a Jena model keep a whole input in memory, so
+        // they are converted one by one, each with its own model; --dedup-by
+        // and --delta check records of all inputs in input order
+        if (threads == 1 || format == 'j' || format == 'd' || format == 'x'
+                || SDFEater.duplicates != null || SDFEater.delta != null) {
+            for (int i = 0; i < inputs.size(); i++) {
+                convertInput(inputs.get(i), i, outputs.get(i), threads);
+            }
+            return;
+        }
+        ExecutorService workers = Executors.newWorkStealingPool(threads);
+        List<Future<?>> pending = new ArrayList<>();
+        // largest files are started first, so that no thread is left with a
+        // large file at the end; input numbers stay in the order of the inputs
+        List<Integer> order = new ArrayList<>();
+        long[] sizes = new long[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            order.add(i);
+            sizes[i] = Files.size(Paths.get(inputs.get(i)));
+        }
+        order.sort((a, b) -> Long.compare(sizes[b], sizes[a]));
+        try {
+            for (int i : order) {
+                String input = inputs.get(i);
+                String output = outputs.get(i);
+                int inputNumber = i;
+                pending.add(workers.submit(() -> {
+                    convertInput(input, inputNumber, output, 1);
+                    return null;
+                }));
+            }
+            for (Future<?> conversion : pending) {
+                conversion.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void convertInput(String input, int inputNumber, String output, int threads) throws IOException {
+        if (format == 'b') {
+            Files.createDirectories(Paths.get(output));
+            convert(List.of(input), inputNumber, Paths.get(output, "import.txt").toString(), output, threads, null, null);
+        } else {
+            convert(List.of(input), inputNumber, output, null, threads, null, null);
+        }
+    }
+
+    /**
+     * Converts input files to one output
+     *
+     * @param inputs     input files
+     * @param firstInput number of the first input file in the list of all
+     *                   input files, used by molecule identifiers
+     * @param output     output file path, null for standard output
+     * @param csv        output directory of neo4jcsv
+     * @param threads    number of threads
+     * @param index      index of the input file, null to convert all records
+     * @param selected   selected record numbers in input order
+     * @throws IOException if the output could not be written
+     */
+    private void convert(List<String> inputs, int firstInput, String output, String csv, int threads,
+                         RecordIndex index, long[] selected) throws IOException {
+        Shards shards = SDFEater.shards;
+        if (shards != null && output != null) {
+            convertSharded(inputs, shards.names(output), Math.max(1, threads / shards.count), threads, index, selected);
+            return;
+        }
+        Checkpoint checkpoint = SDFEater.checkpoint;
+        long length = checkpoint != null && checkpoint.resumed ? checkpoint.length : -1;
+        try (OutputSink out = SDFEater.openOutput(output, gzip, bufferSize, threads, length)) {
+            write(inputs, firstInput, out, csv, threads, index, selected);
+        }
+    }
+
+    /**
+     * Converts input files to the output, which is left open
+     *
+     * @param inputs     input files
+     * @param firstInput number of the first input file in the list of all
+     *                   input files, used by molecule identifiers
+     * @param out        output
+     * @param csv        output directory of neo4jcsv
+     * @param threads    number of threads
+     * @param index      index of the input file, null to convert all records
+     * @param selected   selected record numbers in input order
+     * @throws IOException if the output could not be written
+     */
+    void write(List<String> inputs, int firstInput, OutputSink out, String csv, int threads, RecordIndex index,
+               long[] selected) throws IOException {
+        Molecule molecule = new Molecule(out, ids.create());
+        switch (format) {
+            case 'q':
+                molecule.cypherBatch = new CypherBatch(batchSize, commitSize);
+                break;
+            case 'b':
+                molecule.csv = Neo4jCsvOutput.open(csv, bufferSize, periodic);
+                break;
+            case 'd':
+            case 'j':
+            case 'x':
+                // every conversion has its own model, so conversions can run at once
+                molecule.model = SDFEater.createJenaModel();
+                break;
+            default:
+                break;
+        }
+        new File(inputs, firstInput, threads, ids, index, selected).parse(molecule, format, urls, periodic);
+    }
+
+    /**
+     * Converts input files to output shards. Every shard has its own output
+     * sink, cypher-batch state and Jena model
+     *
+     * @param inputs      input files
+     * @param outputs     shard file paths
+     * @param compression number of compression threads of every shard
+     * @param threads     number of threads
+     * @param index       index of the input file, null to convert all records
+     * @param selected    selected record numbers in input order
+     * @throws IOException if an output could not be written
+     */
+    private void convertSharded(List<String> inputs, List<String> outputs, int compression, int threads,
+                                RecordIndex index, long[] selected) throws IOException {
+        Molecule[] targets = new Molecule[outputs.size()];
+        IOException error = null;
+        try {
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new Molecule(SDFEater.openOutput(outputs.get(i), gzip, bufferSize, compression), null);
+                if (format == 'q') {
+                    targets[i].cypherBatch = new CypherBatch(batchSize, commitSize);
+                } else if (format == 'd' || format == 'j' || format == 'x') {
+                    targets[i].model = SDFEater.createJenaModel();
+                }
+            }
+            new File(inputs, 0, threads, ids, index, selected).parse(targets, format, urls, periodic);
+        } finally {
+            for (Molecule target : targets) {
+                if (target == null) {
+                    continue;
+                }
+                try {
+                    target.out.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Output file names of input files: input name without .gz, .sdf and .sd
+     * with the extension of the format. Inputs with the same name in
+     * different directories get their numbers added
+     */
+    private List<String> outputNames(List<String> inputs, String directory) {
+        List<String> outputs = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            String name = Paths.get(inputs.get(i)).getFileName().toString();
+            for (String extension : new String[]{".gz", ".sdf", ".sd"}) {
+                if (name.toLowerCase(Locale.ROOT).endsWith(extension)) {
+                    name = name.substring(0, name.length() - extension.length());
+                }
+            }
+            if (!names.add(name)) {
+                name = name + "-" + (i + 1);
+                names.add(name);
+            }
+            String extension = extension();
+            Path output = Paths.get(directory, extension.isEmpty() ? name : name + "." + extension + (gzip ? ".gz" : ""));
+            outputs.add(output.toString());
+        }
+        return outputs;
+    }
+
+    /**
+     * @return file name extension of the format, empty for neo4jcsv
+     * directories
+     */
+    private String extension() {
+        switch (format) {
+            case 'c':
+            case 'q':
+                return "cypher";
+            case 'r':
+                return "cvme";
+            case 's':
+                return "smi";
+            case 'i':
+                return "inchi";
+            case 't':
+                return "ttl";
+            case 'n':
+                return "nt";
+            case 'x':
+                return "rdf";
+            case 'h':
+                return "trdf";
+            case 'j':
+                return "jsonld";
+            case 'b':
+                return "";
+            // JSON-LD with HTML, RDFa and Microdata
+            default:
+                return "html";
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+/**
+ * State of the cypher-batch output. Molecules are written as rows of the
+ * $rows parameter and every parameter list is followed by the same UNWIND
+ * query, so the server compiles the query once. Statements are grouped in
+ * explicit transactions. Rows must be written in output order, so the format
+ * is printed by a single worker
+ */
+class CypherBatch {
+
+    /**
+     * Default number of molecules in one statement
+     */
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Default number of molecules in one transaction
+     */
+    static final int DEFAULT_COMMIT_SIZE = 10000;
+
+    /**
+     * Query creating molecules, atoms, their relations and bonds from the
+     * $rows parameter
+     */
+    static final String QUERY = "UNWIND $rows AS row\n" +
+            "CREATE (c:Molecule)\n" +
+            "SET c = row.properties\n" +
+            "WITH c, row\n" +
+            "UNWIND row.atoms AS atom\n" +
+            "CREATE (c)-[:RELATED]->(a:Atom)\n" +
+            "SET a = atom\n" +
+            "WITH c, row, collect(a) AS atoms\n" +
+            "UNWIND row.bonds AS bond\n" +
+            "WITH atoms[bond.from - 1] AS a1, atoms[bond.to - 1] AS a2, bond\n" +
+            "CREATE (a1)-[r:BOND_WITH]->(a2)\n" +
+            "SET r = bond.properties;";
+
+    /**
+     * Number of molecules in one statement
+     */
+    private final int batchSize;
+
+    /**
+     * Number of molecules in one transaction
+     */
+    private final int commitSize;
+
+    /**
+     * Number of rows in the current statement and transaction
+     */
+    private int statementRows = 0;
+    private int transactionRows = 0;
+
+    /**
+     * CypherBatch class constructor
+     *
+     * @param batchSize  number of molecules in one statement
+     * @param commitSize number of molecules in one transaction
+     */
+    CypherBatch(int batchSize, int commitSize) {
+        this.batchSize = batchSize;
+        this.commitSize = commitSize;
+    }
+
+    /**
+     * Print transaction and statement start or separator of rows
+     *
+     * @param out output
+     */
+    void beginRow(OutputSink out) {
+        if (transactionRows == 0) {
+            out.println(":begin");
+        }
+        if (statementRows == 0) {
+            out.print(":param rows => [");
+        } else {
+            out.print(", ");
+        }
+    }
+
+    /**
+     * Print statement and transaction end if they are full
+     *
+     * @param out output
+     */
+    void endRow(OutputSink out) {
+        statementRows++;
+        transactionRows++;
+        if (statementRows == batchSize || transactionRows == commitSize) {
+            endStatement(out);
+        }
+        if (transactionRows == commitSize) {
+            out.println(":commit");
+            transactionRows = 0;
+        }
+    }
+
+    /**
+     * Print end of the last statement and transaction
+     *
+     * @param out output
+     */
+    void finish(OutputSink out) {
+        if (statementRows > 0) {
+            endStatement(out);
+        }
+        if (transactionRows > 0) {
+            out.println(":commit");
+            transactionRows = 0;
+        }
+    }
+
+    private void endStatement(OutputSink out) {
+        out.println("]");
+        out.println(QUERY);
+        statementRows = 0;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Manifest of converted records and delta conversion against the manifest
+ * of a previous run. Manifest has a line with the key (first value of the
+ * key property, e.g. ChEBI ID) and the content hash of every record. With a
+ * previous manifest only new and changed records are written to the output
+ * and delete statements of changed and deleted records are written to the
+ * delete file, which is run before the output is loaded
+ */
+class Delta implements Closeable {
+
+    /**
+     * Formats with delete statements: Cypher for the graph formats, SPARQL
+     * Update for RDF
+     */
+    static final String CYPHER_FORMATS = "cq";
+    static final String RDF_FORMATS = "tnhjdx";
+
+    /**
+     * Key property name
+     */
+    final String property;
+
+    /**
+     * Content hashes of the previous run by key, removed when the record is
+     * seen again, so records left at the end were deleted; null without a
+     * previous manifest
+     */
+    private final Map<String, Long> previous;
+
+    /**
+     * Manifest of this run, null if not written
+     */
+    private final BufferedWriter manifest;
+
+    /**
+     * Delete statements, null without a previous manifest
+     */
+    private final BufferedWriter deletes;
+
+    private final char format;
+
+    private final LongAdder added = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private long deleted;
+
+    private Delta(String property, Map<String, Long> previous, BufferedWriter manifest, BufferedWriter deletes, char format) {
+        this.property = property;
+        this.previous = previous;
+        this.manifest = manifest;
+        this.deletes = deletes;
+        this.format = format;
+    }
+
+    /**
+     * Opens manifest of this run and reads manifest of the previous run
+     *
+     * @param property key property name
+     * @param manifest manifest file of this run, null if not written
+     * @param previous manifest file of the previous run, null to convert all
+     *                 records
+     * @param deletes  file of delete statements, used with the previous
+     *                 manifest
+     * @param format   output format
+     * @return delta conversion
+     * @throws IOException if a file could not be read or written
+     */
+    static Delta open(String property, String manifest, String previous, String deletes, char format) throws IOException {
+        Map<String, Long> hashes = previous != null ? read(previous) : null;
+        BufferedWriter manifestOut = null;
+        BufferedWriter deletesOut = null;
+        try {
+            if (manifest != null) {
+                manifestOut = Files.newBufferedWriter(Paths.get(manifest), StandardCharsets.UTF_8);
+                manifestOut.write("key\thash\n");
+            }
+            if (hashes != null) {
+                deletesOut = Files.newBufferedWriter(Paths.get(deletes), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            if (manifestOut != null) {
+                manifestOut.close();
+            }
+            throw e;
+        }
+        return new Delta(property, hashes, manifestOut, deletesOut, format);
+    }
+
+    /**
+     * Reads manifest
+     *
+     * @param filename manifest file path
+     * @return content hashes by key
+     * @throws IOException if the file could not be read or is not valid
+     */
+    private static Map<String, Long> read(String filename) throws IOException {
+        Map<String, Long> hashes = new ConcurrentHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!"key\thash".equals(line)) {
+                throw new IOException("Invalid manifest header: " + filename);
+            }
+            int number = 1;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                int tab = line.lastIndexOf('\t');
+                try {
+                    hashes.put(line.substring(0, tab), Long.parseUnsignedLong(line.substring(tab + 1), 16));
+                } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                    throw new IOException("Invalid manifest line " + number + ": " + filename);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Adds record to the manifest and compares it with the previous run.
+     * Safe to call from many threads. Records without the key property are
+     * always written and not added to the manifest
+     *
+     * @param key  first value of the key property, null if the record has
+     *             none
+     * @param hash content hash of the record
+     * @return true if the record is written to the output
+     */
+    boolean write(String key, long hash) {
+        if (key == null) {
+            return true;
+        }
+        key = key.replace('\t', ' ');
+        try {
+            if (manifest != null) {
+                synchronized (manifest) {
+                    manifest.write(key);
+                    manifest.write('\t');
+                    manifest.write(Long.toHexString(hash));
+                    manifest.write('\n');
+                }
+            }
+            if (previous == null) {
+                return true;
+            }
+            Long old = previous.remove(key);
+            if (old == null) {
+                added.increment();
+                return true;
+            }
+            if (old == hash) {
+                unchanged.increment();
+                return false;
+            }
+            changed.increment();
+            delete(key);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes delete statement of the molecule with the key
+     *
+     * @param key key property value, with backslashes and apostrophes escaped
+     *            as in the output
+     * @throws IOException if the statement could not be written
+     */
+    private void delete(String key) throws IOException {
+        PropertyMapping.Entry mapping = SDFEater.propertyMapping.get(property);
+        String statement;
+        if (CYPHER_FORMATS.indexOf(format) >= 0) {
+            String value = PropertyValues.isNumber(key) ? key : "'" + key + "'";
+            statement = "MATCH (c:Molecule {" + mapping.cypher + ": " + value + "})\n" +
+                    "OPTIONAL MATCH (c)-[:RELATED]->(a:Atom)\n" +
+                    "DETACH DELETE c, a;\n";
+        } else {
+            String value = key.replace("\\", "\\\\").replace("\"", "\\\"");
+            statement = "DELETE { ?m ?p ?o } WHERE { ?m <" + mapping.schema.getURI() + "> \"" + value + "\" ; ?p ?o } ;\n";
+        }
+        synchronized (deletes) {
+            deletes.write(statement);
+        }
+    }
+
+    /**
+     * Writes delete statements of records of the previous run that were not
+     * seen in this run and closes the files
+     *
+     * @throws IOException if a file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (deletes != null) {
+                for (String key : previous.keySet()) {
+                    delete(key);
+                    deleted++;
+                }
+                deletes.close();
+            }
+        } finally {
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
+    }
+
+    /**
+     * @return numbers of added, changed, deleted and unchanged records, empty
+     * without a previous manifest
+     */
+    String summary() {
+        if (previous == null) {
+            return "";
+        }
+        return "Delta records: " + added.sum() + " added, " + changed.sum() + " changed, " + deleted + " deleted, "
+                + unchanged.sum() + " unchanged";
+    }
+}
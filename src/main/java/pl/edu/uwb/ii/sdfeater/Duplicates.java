@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops duplicate records with the --dedup-by option. Key of a record is the
+ * first value of a property (e.g. InChIKey) or, with content-hash, all bytes
+ * of the record. Only 64-bit hashes of the keys are kept, so a record may be
+ * taken for a duplicate by mistake; with 100 million distinct keys the
+ * chance that it happens to any record is about 1 in 4000
+ */
+class Duplicates {
+
+    /**
+     * Name of the --dedup-by value that selects hashes of the whole record
+     */
+    static final String CONTENT_HASH = "content-hash";
+
+    /**
+     * Key property name, null for hashes of the whole record
+     */
+    final String property;
+
+    private final LongHashSet seen;
+
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Duplicates class constructor
+     *
+     * @param by      key property name or content-hash
+     * @param offHeap keep hashes outside the Java heap
+     */
+    Duplicates(String by, boolean offHeap) {
+        this.property = CONTENT_HASH.equals(by) ? null : by;
+        this.seen = new LongHashSet(offHeap);
+    }
+
+    /**
+     * Checks record key and counts duplicates. Keys are checked in input
+     * order, also by the workers of the record pipeline (see RecordKeys), so
+     * the first of the duplicate records is kept
+     *
+     * @param hash hash of the record key
+     * @return true if the key was not seen before
+     */
+    boolean first(long hash) {
+        if (seen.add(hash)) {
+            return true;
+        }
+        count.increment();
+        return false;
+    }
+
+    /**
+     * @return number of dropped duplicate records
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * 64-bit hash of input bytes (FNV-1a mixed with the MurmurHash3
+     * finalizer). Carriage returns are skipped, so files with CRLF and LF
+     * line ends give the same hashes
+     *
+     * @param buf   input bytes
+     * @param start key start
+     * @param end   key end
+     * @return hash of the key
+     */
+    static long hash(ByteBuffer buf, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            byte b = buf.get(i);
+            if (b != '\r') {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
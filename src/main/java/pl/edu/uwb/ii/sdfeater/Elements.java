@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Atom symbols by ordinal. Chemical elements have their atomic numbers as
+ * ordinals, other symbols of the atom block (R#, A, Q, *, ...) get next
+ * numbers when they are found for the first time
+ */
+class Elements {
+
+    /**
+     * Chemical elements in periodic table order
+     */
+    private static final String[] PERIODIC_TABLE = {
+            "H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al", "Si", "P", "S", "Cl", "Ar",
+            "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As", "Se", "Br", "Kr",
+            "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In", "Sn", "Sb", "Te", "I", "Xe",
+            "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm", "Yb", "Lu",
+            "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl", "Pb", "Bi", "Po", "At", "Rn",
+            "Fr", "Ra", "Ac", "Th", "Pa", "U", "Np", "Pu", "Am", "Cm", "Bk", "Cf", "Es", "Fm", "Md", "No", "Lr",
+            "Rf", "Db", "Sg", "Bh", "Hs", "Mt", "Ds", "Rg", "Cn", "Nh", "Fl", "Mc", "Lv", "Ts", "Og"
+    };
+
+    /**
+     * Ordinals by symbol
+     */
+    private static final Map<String, Short> ordinals = new ConcurrentHashMap<>();
+
+    /**
+     * Symbols by ordinal, ordinal 0 is the empty symbol. Replaced with a
+     * longer copy when a new symbol is added
+     */
+    private static volatile String[] symbols;
+
+    static {
+        String[] table = new String[PERIODIC_TABLE.length + 1];
+        table[0] = "";
+        System.arraycopy(PERIODIC_TABLE, 0, table, 1, PERIODIC_TABLE.length);
+        for (short i = 0; i < table.length; i++) {
+            ordinals.put(table[i], i);
+        }
+        symbols = table;
+    }
+
+    private Elements() {
+    }
+
+    /**
+     * Gets ordinal of atom symbol, adds the symbol if it is not known yet
+     *
+     * @param symbol atom symbol
+     * @return ordinal
+     * @throws IllegalArgumentException if there are too many different
+     *                                  symbols
+     */
+    static short ordinal(String symbol) {
+        Short ordinal = ordinals.get(symbol);
+        return ordinal != null ? ordinal : add(symbol);
+    }
+
+    /**
+     * Gets atom symbol
+     *
+     * @param ordinal ordinal returned by ordinal()
+     * @return atom symbol
+     */
+    static String symbol(short ordinal) {
+        return symbols[ordinal];
+    }
+
+    private static synchronized short add(String symbol) {
+        Short ordinal = ordinals.get(symbol);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        String[] table = symbols;
+        if (table.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many different atom symbols");
+        }
+        String[] grown = Arrays.copyOf(table, table.length + 1);
+        grown[table.length] = symbol;
+        symbols = grown;
+        ordinals.put(symbol, (short) table.length);
+        return (short) table.length;
+    }
+}
@@ -24,10 +24,14 @@
  */
 package pl.edu.uwb.ii.sdfeater;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import org.apache.jena.riot.system.StreamRDF;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
 
 import static pl.edu.uwb.ii.sdfeater.SDFEater.jenaModel;
 
@@ -40,24 +44,89 @@ import static pl.edu.uwb.ii.sdfeater.SDFEater.jenaModel;
 class File {
 
     /**
-     * Filename
+     * Filenames of input files, converted to one output
+     */
+    private final List<String> filenames;
+
+    /**
+     * Number of the first file in the list of all input files
+     */
+    private final int firstInput;
+
+    /**
+     * Number of parsing threads
+     */
+    private final int threads;
+
+    /**
+     * Molecule identifier strategy
      */
-    private final String filename;
+    private final MoleculeId.Strategy ids;
+
+    /**
+     * Index of the input file and records selected in it, null to parse all
+     * records
+     */
+    private final RecordIndex index;
+    private final long[] selected;
 
     /**
      * File class constructor
      *
      * @param filename filename of input file
+     * @param threads  number of parsing threads, records are parsed in the
+     *                 calling thread if 1
+     * @param ids      molecule identifier strategy used by parsing threads
+     */
+    File(String filename, int threads, MoleculeId.Strategy ids) {
+        this(filename, threads, ids, null, null);
+    }
+
+    /**
+     * File class constructor for records selected in the index
+     *
+     * @param filename filename of input file
+     * @param threads  number of parsing threads, records are parsed in the
+     *                 calling thread if 1
+     * @param ids      molecule identifier strategy used by parsing threads
+     * @param index    index of the input file, closed after parsing, null to
+     *                 parse all records
+     * @param selected selected record numbers in input order
+     */
+    File(String filename, int threads, MoleculeId.Strategy ids, RecordIndex index, long[] selected) {
+        this(List.of(filename), 0, threads, ids, index, selected);
+    }
+
+    /**
+     * File class constructor for many input files converted to one output
+     *
+     * @param filenames  filenames of input files
+     * @param firstInput number of the first file in the list of all input
+     *                   files, used by molecule identifiers
+     * @param threads    number of parsing threads; with more than one thread
+     *                   and a format printed in parallel every thread
+     *                   converts whole files
+     * @param ids        molecule identifier strategy used by parsing threads
+     * @param index      index of the input file, closed after parsing, null
+     *                   to parse all records; only for a single input file
+     * @param selected   selected record numbers in input order
      */
-    File(String filename) {
-        this.filename = filename;
+    File(List<String> filenames, int firstInput, int threads, MoleculeId.Strategy ids, RecordIndex index, long[] selected) {
+        this.filenames = filenames;
+        this.firstInput = firstInput;
+        this.threads = threads;
+        this.ids = ids;
+        this.index = index;
+        this.selected = selected;
     }
 
     /**
      * Reads and retrieves data from the input file and then writes it to the
      * appropriate program structures
      *
-     * @param molecule Molecule object to which values from the file will be entered
+     * @param molecule Molecule object to which values from the file will be
+     *                 entered (used only in single-threaded mode) with
+     *                 outputs of the format
      * @param format   Output format: c - Cypher, r - cvme, s - smiles, n - inchi
      * @param urls     Try to generate full database URLs instead of IDs
      *                 (true/false)
@@ -65,19 +134,80 @@ class File {
      *                 cypher format (true/false)
      */
     void parse(Molecule molecule, char format, boolean urls, boolean periodic) {
+        parse(new Molecule[]{molecule}, format, urls, periodic);
+    }
+
+    /**
+     * Reads records of the input files and writes them to output shards.
+     * Every shard gets its own header and footer of the format
+     *
+     * @param targets  molecules with outputs of the format, one for every
+     *                 shard
+     * @param format   output format
+     * @param urls     try to generate full database URLs instead of IDs
+     * @param periodic add additional atoms data from periodic table
+     */
+    void parse(Molecule[] targets, char format, boolean urls, boolean periodic) {
         try {
-            FileInputStream fstream = new FileInputStream(filename);
-            BufferedReader br = new BufferedReader(new InputStreamReader(fstream));
-            String strLine;
-            String pName = "";    // current property name
-            boolean molfileReady = false;
-            String[] tokens;
+            // output of a resumed conversion already has its header
+            boolean header = SDFEater.checkpoint == null || !SDFEater.checkpoint.resumed;
+            for (Molecule target : targets) {
+                begin(target, format, header);
+            }
+            RunStats stats = SDFEater.stats;
+            if (filenames.size() == 1) {
+                parse(0, targets, format, urls, periodic);
+            } else {
+                if (stats != null) {
+                    long size = 0;
+                    for (String filename : filenames) {
+                        size += Files.size(Paths.get(filename));
+                    }
+                    stats.start(size);
+                }
+                if (threads > 1 && isParallel(format)) {
+                    new RecordPipeline(threads, format, urls, periodic, ids).runFiles(filenames, firstInput, targets);
+                } else {
+                    for (int i = 0; i < filenames.size(); i++) {
+                        parse(i, targets, format, urls, periodic);
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException | NumberFormatException | IllegalStateException e) {
+            System.err.println("Error while parsing file: " + e.toString());
+        }
+
+        for (Molecule target : targets) {
+            end(target, format);
+        }
+    }
 
-            /* Do something BEFORE file reading */
+    /**
+     * Writes the beginning of the output
+     *
+     * @param target molecule with outputs of the format
+     * @param format output format
+     * @param header write the header of the format
+     */
+    private static void begin(Molecule target, char format, boolean header) {
+        OutputSink out = target.out;
+        StreamRDF rdfStream = SDFEater.createRDFStream(format, out.asOutputStream());
+        /* Do something BEFORE file reading */
+        // resumed formats are not written to RDF streams
+        if (header) {
             switch (format) {
+                // Turtle, N-Triples and RDF Thrift are written molecule by molecule
+                case 't':
+                    rdfStream.start();
+                    SDFEater.addRDFStreamPrefixes(rdfStream);
+                    break;
+                case 'n':
+                case 'h':
+                    rdfStream.start();
+                    break;
                 // JSON-LD with HTML
                 case 'd':
-                    System.out.println("<!DOCTYPE html>\n" +
+                    out.println("<!DOCTYPE html>\n" +
                             "<html lang=\"en\">\n" +
                             "  <head>\n" +
                             "    <title>Example Document</title>\n" +
@@ -85,245 +215,168 @@ class File {
                     break;
                 // RDFa
                 case 'a':
-                    System.out.println("<!DOCTYPE html>");
-                    System.out.println("<html lang='en'>");
-                    System.out.println("  <head>");
-                    System.out.println("    <title>Example Document</title>");
-                    System.out.println("  </head>");
-                    System.out.println("  <body vocab='http://schema.org/'>");
+                    out.println("<!DOCTYPE html>");
+                    out.println("<html lang='en'>");
+                    out.println("  <head>");
+                    out.println("    <title>Example Document</title>");
+                    out.println("  </head>");
+                    out.println("  <body vocab='http://schema.org/'>");
                     break;
                 // Microdata
                 case 'm':
-                    System.out.println("<!DOCTYPE html>");
-                    System.out.println("<html lang='en'>");
-                    System.out.println("  <head>");
-                    System.out.println("    <title>Example Document</title>");
-                    System.out.println("  </head>");
-                    System.out.println("  <body>");
+                    out.println("<!DOCTYPE html>");
+                    out.println("<html lang='en'>");
+                    out.println("  <head>");
+                    out.println("    <title>Example Document</title>");
+                    out.println("  </head>");
+                    out.println("  <body>");
                     break;
                 default:
                     break;
             }
+        }
+        target.rdfStream = rdfStream;
+        if (target.model == null) {
+            target.model = jenaModel;
+        }
+    }
 
-            while ((strLine = br.readLine()) != null) {
-                strLine = strLine.trim().replace("\\", "\\\\").replace("'", "\\'");
-
-                if (strLine.startsWith("END", 3)) {
-                    molfileReady = true;
-                } else if (!molfileReady && !strLine.matches("M\\s+\\w+.*")) {
-                    // TODO: V3000
-
-                    tokens = strLine.split("\\s+");
+    /**
+     * Writes the end of the output
+     *
+     * @param target molecule with outputs of the format
+     * @param format output format
+     */
+    private static void end(Molecule target, char format) {
+        OutputSink out = target.out;
+        /* Do something AFTER file reading */
+        try {
+            switch (format) {
+                case 't':
+                case 'n':
+                case 'h':
+                    target.rdfStream.finish();
+                    break;
+                case 'j':
+                    target.model.write(out.asOutputStream(), "JSONLD");
+                    break;
+                // JSON-LD with HTML
+                case 'd':
+                    target.model.write(out.asOutputStream(), "JSONLD");
+                    out.println("    </script>\n" +
+                            "  </head>\n" +
+                            "</html>");
+                    break;
+                case 'x':
+                    target.model.write(out.asOutputStream(), "RDF/XML");
+                    break;
+                case 'q':
+                    target.cypherBatch.finish(out);
+                    break;
+                // neo4j-admin import
+                case 'b':
+                    target.csv.finish(out);
+                    break;
+                // RDFa and Microdata
+                case 'a':
+                case 'm':
+                    out.println("  </body>");
+                    out.println("</html>");
+                    break;
+                default:
+                    break;
+            }
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error while writing output: " + e.toString());
+        }
+    }
 
-                    if (tokens.length == 16) {
-                        molecule.atoms.add(new Atom(tokens[3], Float.parseFloat(tokens[0]), Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2])));
+    /**
+     * Reads all records of one input file and writes them to the outputs
+     *
+     * @param inputNumber number of the file in the list of input files
+     * @param targets     molecules with outputs of the format, one for every
+     *                    shard
+     * @param format      output format
+     * @param urls        try to generate full database URLs instead of IDs
+     * @param periodic    add additional atoms data from periodic table
+     * @throws IOException if the input could not be read
+     */
+    private void parse(int inputNumber, Molecule[] targets, char format, boolean urls, boolean periodic) throws IOException {
+        String filename = filenames.get(inputNumber);
+        try (RecordReader reader = index != null ? new IndexedRecordReader(filename, index, selected) : RecordReader.open(filename, threads)) {
+            RunStats stats = SDFEater.stats;
+            if (stats != null) {
+                stats.start(reader.size());
+            }
+            Checkpoint checkpoint = SDFEater.checkpoint;
+            if (checkpoint != null && checkpoint.resumed) {
+                reader.skip(checkpoint.offset, checkpoint.records);
+                Molecule.resumeIDs(checkpoint.ids);
+            }
+            if (threads > 1) {
+                new RecordPipeline(isParallel(format) ? threads : 1, format, urls, periodic, ids)
+                        .run(reader, targets, filename, firstInput + inputNumber);
+            } else {
+                // with shards, molecules are parsed apart from the outputs of any shard
+                Molecule molecule = targets.length == 1 ? targets[0] : new Molecule(targets[0].out, ids.create());
+                // an unfinished last record of the previous input is dropped
+                molecule.clearAll();
+                molecule.input = filename;
+                molecule.inputNumber = firstInput + inputNumber;
+                RecordParser parser = new RecordParser(molecule, format, urls, periodic);
+                if (targets.length > 1) {
+                    parser.setShards(SDFEater.shards, targets);
+                }
+                long firstRecord = reader.records();
+                while (true) {
+                    long start = stats != null ? System.nanoTime() : 0;
+                    ByteBuffer batch = reader.nextBatch(RecordPipeline.BATCH_RECORDS);
+                    if (stats != null) {
+                        stats.read(System.nanoTime() - start, reader.consumed());
                     }
-
-                    // V2000, V3000; comment text exclusion
-                    if ((tokens.length == 7 && !tokens[6].startsWith("V") && isInt(tokens[0]) || tokens.length == 6 && isInt(tokens[0]))) {
-                        molecule.bonds.add(new Bond(Integer.parseInt(tokens[0]), Byte.parseByte(tokens[2]), Integer.parseInt(tokens[1]), Byte.parseByte(tokens[3])));
+                    if (batch == null) {
+                        break;
                     }
-                } else if (molfileReady && !strLine.matches("M\\s+\\w+.*")) {
-                    // SDF file parse
-                    if (strLine.replaceAll("\\s+", "").startsWith("><")) {
-                        pName = strLine.split("<")[1];
-                        pName = pName.substring(0, pName.length() - 1);
-                    } else if (strLine.startsWith("$$$$")) {
-                        switch (format) {
-                            case 'c':
-                                molecule.printCypherMolecule();
-                                if (periodic) {
-                                    molecule.printCypherAtomsWithPeriodicTableData();
-                                } else {
-                                    molecule.printCypherAtoms();
-                                }
-                                molecule.printCypherBonds();
-                                System.out.println(';');
-                                break;
-                            case 'r':
-                                molecule.printChemSKOSMolecule();
-                                molecule.printChemSKOSAtomsAndBonds();
-                                break;
-                            case 's':
-                                molecule.printSMILES();
-                                break;
-                            case 'i':
-                                molecule.printInChI();
-                                break;
-                            case 't':
-                            case 'n':
-                            case 'j':
-                            case 'd':
-                            case 'x':
-                            case 'h':
-                                molecule.addToJenaModel();
-                                break;
-                            case 'a':
-                                molecule.printRDFaMolecule();
-                                break;
-                            case 'm':
-                                molecule.printMicrodataMolecule();
-                                break;
-                            default:
-                                break;
-                        }
-                        molecule.clearAll();
-                        molfileReady = false;
-                        //} else if (strLine.isEmpty()) {
-                    } else if (!strLine.isEmpty()) {
-                        if (urls) {
-                            // Database links
-                            switch (pName) {
-                                case "Agricola Citation Links":
-                                    molecule.addPropertyByName(pName, "https://agricola.nal.usda.gov/cgi-bin/Pwebrecon.cgi?Search_Arg=" + strLine + "&DB=local&CNT=25&Search_Code=GKEY%5E&STARTDB=AGRIDB");
-                                    break;
-                                case "ArrayExpress Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/arrayexpress/experiments/" + strLine);
-                                    break;
-                                case "BioModels Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/biomodels-main/" + strLine);
-                                    break;
-                                case "ChEBI ID":
-                                    molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/chebi/searchId.do?chebiId=" + strLine.substring(6));
-                                    break;
-                                case "DrugBank Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.drugbank.ca/drugs/" + strLine);
-                                    break;
-                                case "ECMDB Database Links":
-                                    molecule.addPropertyByName(pName, "http://ecmdb.ca/compounds/" + strLine);
-                                    break;
-                                case "HMDB Database Links":
-                                    // metabolites
-                                    molecule.addPropertyByName(pName, "http://www.hmdb.ca/metabolites/" + strLine);
-                                    break;
-                                case "IntAct Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/intact/interaction/" + strLine);
-                                    break;
-                                case "IntEnz Database Links":
-                                    strLine = strLine.replaceAll(" ", "+");
-                                    molecule.addPropertyByName(pName, "http://www.ebi.ac.uk/intenz/query?q=" + strLine);
-                                    break;
-                                case "KEGG COMPOUND Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?cpd:" + strLine);
-                                    break;
-                                case "KEGG DRUG Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?dr:" + strLine);
-                                    break;
-                                case "KEGG GLYCAN Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?gl:" + strLine);
-                                    break;
-                                case "KNApSAcK Database Links":
-                                    molecule.addPropertyByName(pName, "http://kanaya.naist.jp/knapsack_jsp/information.jsp?word=" + strLine);
-                                    break;
-                                case "LIPID MAPS instance Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.lipidmaps.org/data/LMSDRecord.php?LMID=" + strLine);
-                                    break;
-                                case "MetaCyc Database Links":
-                                    molecule.addPropertyByName(pName, "https://metacyc.org/compound?orgid=META&id=" + strLine);
-                                    break;
-                                case "Patent Database Links":
-                                    molecule.addPropertyByName(pName, "https://worldwide.espacenet.com/searchResults?query=" + strLine);
-                                    break;
-                                case "PDBeChem Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.ebi.ac.uk/pdbe-srv/pdbechem/chemicalCompound/show/" + strLine);
-                                    break;
-                                case "PubChem Database Links":
-                                    // custom key value for compound and substance links
-                                    switch (strLine.substring(0, 3)) {
-                                        case "CID":
-                                            molecule.addPropertyByName("PubChem Database Molecule Links", "https://pubchem.ncbi.nlm.nih.gov/compound/" + strLine.substring(5));
-                                            break;
-                                        case "SID":
-                                            molecule.addPropertyByName("PubChem Database Substance Links", "https://pubchem.ncbi.nlm.nih.gov/substance/" + strLine.substring(5));
-                                            break;
-                                    }
-                                    break;
-                                case "PubMed Central Citation Links":
-                                    molecule.addPropertyByName(pName, "https://www.ncbi.nlm.nih.gov/pmc/articles/" + strLine + "/");
-                                    break;
-                                case "PubMed Citation Links":
-                                    molecule.addPropertyByName(pName, "https://www.ncbi.nlm.nih.gov/pubmed/?term=" + strLine);
-                                    break;
-                                case "Reactome Database Links":
-                                    molecule.addPropertyByName(pName, "https://reactome.org/content/detail/" + strLine);
-                                    break;
-                                case "RESID Database Links":
-                                    molecule.addPropertyByName(pName, "http://pir.georgetown.edu/cgi-bin/resid?id=" + strLine);
-                                    break;
-                                case "Rhea Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.rhea-db.org/reaction?id=" + strLine);
-                                    break;
-                                case "SABIO-RK Database Links":
-                                    molecule.addPropertyByName(pName, "http://sabio.h-its.org/reacdetails.jsp?reactid=" + strLine);
-                                    break;
-                                case "UM-BBD compID Database Links":
-                                    molecule.addPropertyByName(pName, "http://eawag-bbd.ethz.ch/servlets/pageservlet?ptype=c&compID=" + strLine);
-                                    break;
-                                case "UniProt Database Links":
-                                    molecule.addPropertyByName(pName, "https://www.uniprot.org/uniprot/" + strLine);
-                                    break;
-                                case "Wikipedia Database Links":
-                                    molecule.addPropertyByName(pName, "https://en.wikipedia.org/wiki/" + strLine);
-                                    break;
-                                case "YMDB Database Links":
-                                    molecule.addPropertyByName(pName, "http://www.ymdb.ca/compounds/" + strLine);
-                                    break;
-                                default:
-                                    molecule.addPropertyByName(pName, strLine);
-                            }
-                        } else {
-                            molecule.addPropertyByName(pName, strLine);
+                    parser.parse(batch, firstRecord, reader.batchOffset());
+                    firstRecord = reader.records();
+                    for (Molecule target : targets) {
+                        if (target.csv != null) {
+                            target.csv.flush();
                         }
+                        target.out.flush();
+                    }
+                    if (checkpoint != null && checkpoint.isDue()) {
+                        checkpoint.save(reader.offset(), reader.records(), targets[0].out);
                     }
                 }
             }
-            br.close();
-            fstream.close();
-        } catch (IOException | NumberFormatException e) {
-            System.err.println("Error while parsing file: " + e.toString());
         }
+    }
 
-        /* Do something AFTER file reading */
+    /**
+     * Checks if records can be printed by many workers at once. Formats that
+     * collect molecules in the shared Jena model or number them in output
+     * order use a single worker, reading and writing still run in their own
+     * threads
+     *
+     * @param format output format
+     * @return true if records can be printed in parallel
+     */
+    private static boolean isParallel(char format) {
         switch (format) {
+            case 'c':
+            case 'r':
+            case 's':
+            case 'i':
             case 't':
-                jenaModel.write(System.out, "TURTLE");
-                break;
             case 'n':
-                jenaModel.write(System.out, "NTRIPLES");
-                break;
-            case 'j':
-                jenaModel.write(System.out, "JSONLD");
-                break;
-            // JSON-LD with HTML
-            case 'd':
-                jenaModel.write(System.out, "JSONLD");
-                System.out.println("    </script>\n" +
-                        "  </head>\n" +
-                        "</html>");
-                break;
-            case 'x':
-                jenaModel.write(System.out, "RDF/XML");
-                break;
             case 'h':
-                jenaModel.write(System.out, "RDFTHRIFT");
-                break;
-            // RDFa and Microdata
-            case 'a':
-            case 'm':
-                System.out.println("  </body>");
-                System.out.println("</html>");
-                break;
+            case 'b':
+                return true;
             default:
-                break;
-        }
-    }
-
-    private boolean isInt(String s) {
-        try {
-            Integer.parseInt(s);
-        } catch (NumberFormatException e) {
-            return false;
+                return false;
         }
-        return true;
     }
 }
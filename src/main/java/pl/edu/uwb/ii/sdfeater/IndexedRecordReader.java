@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of selected records of an indexed file. Records are read straight
+ * from their offsets in the index, runs of consecutive records are returned
+ * as single batches
+ */
+class IndexedRecordReader extends RecordReader {
+
+    private final FileChannel channel;
+
+    private final RecordIndex index;
+
+    /**
+     * Selected record numbers in input order
+     */
+    private final long[] selected;
+
+    /**
+     * Index of the next selected record to return
+     */
+    private int next;
+
+    /**
+     * Offset of the last returned batch
+     */
+    private long batchOffset;
+
+    /**
+     * Number of bytes read so far
+     */
+    private long position;
+
+    /**
+     * IndexedRecordReader class constructor
+     *
+     * @param filename indexed file
+     * @param index    index of the file
+     * @param selected selected record numbers (starting from 1) in input
+     *                 order, without duplicates
+     * @throws IOException if the file could not be opened
+     */
+    IndexedRecordReader(String filename, RecordIndex index, long[] selected) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.index = index;
+        this.selected = selected;
+    }
+
+    @Override
+    ByteBuffer nextBatch(int records) throws IOException {
+        if (next == selected.length) {
+            return null;
+        }
+        int first = next;
+        next++;
+        while (next < selected.length && next - first < records && selected[next] == selected[next - 1] + 1) {
+            next++;
+        }
+        batchOffset = index.offset(selected[first]);
+        long end = index.offset(selected[next - 1]) + index.length(selected[next - 1]);
+        if (end - batchOffset > Integer.MAX_VALUE) {
+            throw new IOException("Records from " + selected[first] + " to " + selected[next - 1] + " are too large");
+        }
+        ByteBuffer batch = ByteBuffer.allocate((int) (end - batchOffset));
+        while (batch.hasRemaining()) {
+            if (channel.read(batch, batchOffset + batch.position()) < 0) {
+                throw new IOException("Input file is shorter than its index");
+            }
+        }
+        batch.flip();
+        position += batch.limit();
+        return batch;
+    }
+
+    /**
+     * @return number of input records before the next batch, so records keep
+     * their numbers from the whole input
+     */
+    @Override
+    long records() {
+        return next < selected.length ? selected[next] - 1 : index.records();
+    }
+
+    @Override
+    long batchOffset() {
+        return batchOffset;
+    }
+
+    /**
+     * @return number of selected record bytes read so far
+     */
+    @Override
+    long position() {
+        return position;
+    }
+
+    /**
+     * @return size of all selected records
+     */
+    @Override
+    long size() {
+        long size = 0;
+        try {
+            for (long record : selected) {
+                size += index.length(record);
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return size;
+    }
+
+    /**
+     * Selected records are not read from the start of the input
+     *
+     * @throws IOException always
+     */
+    @Override
+    void skipInput(long bytes) throws IOException {
+        throw new IOException("Selected records can not be skipped");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            index.close();
+        }
+    }
+}
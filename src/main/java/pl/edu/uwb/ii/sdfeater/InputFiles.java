@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Input files of the -i option: comma separated file paths, directories and
+ * glob patterns (e.g. {@code pubchem/Compound_*.sdf.gz}). Files are returned
+ * in the order they are given, files of a directory or pattern in the
+ * lexical order of their paths
+ */
+class InputFiles {
+
+    /**
+     * Extensions of SDF files taken from directories
+     */
+    private static final String[] EXTENSIONS = {".sdf", ".sd", ".sdf.gz", ".sd.gz"};
+
+    private InputFiles() {
+    }
+
+    /**
+     * Finds input files
+     *
+     * @param spec comma separated file paths, directories and glob patterns
+     * @return input file paths in the given order; a single file path is returned
+     * as it is, even if the file does not exist
+     * @throws IOException if a directory could not be listed or nothing was
+     *                     found for a directory or pattern
+     */
+    static List<String> expand(String spec) throws IOException {
+        String[] parts = spec.split(",");
+        if (parts.length == 1 && !isPattern(spec) && !Files.isDirectory(Paths.get(spec))) {
+            return List.of(spec);
+        }
+        Set<Path> files = new LinkedHashSet<>();
+        for (String part : parts) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            List<Path> found;
+            if (isPattern(part)) {
+                found = glob(part);
+            } else if (Files.isDirectory(Paths.get(part))) {
+                try (Stream<Path> list = Files.list(Paths.get(part))) {
+                    found = list.filter(path -> Files.isRegularFile(path) && isSdf(path)).sorted().collect(Collectors.toList());
+                }
+            } else {
+                found = List.of(Paths.get(part));
+            }
+            if (found.isEmpty()) {
+                throw new IOException("No input files found in " + part);
+            }
+            files.addAll(found);
+        }
+        return files.stream().map(Path::toString).collect(Collectors.toList());
+    }
+
+    /**
+     * Files matching the glob pattern. The pattern is matched against paths
+     * relative to its longest leading part without wildcards
+     */
+    private static List<Path> glob(String pattern) throws IOException {
+        List<String> names = List.of(pattern.replace('\\', '/').split("/", -1));
+        int base = 0;
+        while (base < names.size() - 1 && !isPattern(names.get(base))) {
+            base++;
+        }
+        String dirName = String.join("/", names.subList(0, base));
+        boolean relative = base == 0;
+        Path dir = Paths.get(relative ? "." : dirName.isEmpty() ? "/" : dirName);
+        String rest = String.join("/", names.subList(base, names.size()));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rest);
+        int depth = rest.contains("**") ? Integer.MAX_VALUE : names.size() - base;
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(dir, depth)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(dir.relativize(file)))
+                    .map(file -> relative ? dir.relativize(file) : file)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isPattern(String path) {
+        return path.indexOf('*') >= 0 || path.indexOf('?') >= 0 || path.indexOf('[') >= 0 || path.indexOf('{') >= 0;
+    }
+
+    private static boolean isSdf(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Thread safe set of 64-bit hashes with open addressing. Hashes are kept in
+ * primitive tables (8 bytes per slot, at most 75% full) instead of boxed
+ * objects, so hundreds of millions of them fit in a few GB. The set is split
+ * into segments by the highest bits of the hash, every segment grows and is
+ * locked on its own. Tables are Java arrays or, optionally, direct buffers
+ * outside the Java heap
+ */
+class LongHashSet {
+
+    /**
+     * Number of segments (power of two) and bits selecting a segment
+     */
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    /**
+     * Initial number of slots in a segment
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Value stored in place of 0, which marks empty slots
+     */
+    private static final long ZERO = 0x9e3779b97f4a7c15L;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * LongHashSet class constructor
+     *
+     * @param offHeap keep tables in direct buffers outside the Java heap
+     */
+    LongHashSet(boolean offHeap) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(offHeap);
+        }
+    }
+
+    /**
+     * Adds hash to the set
+     *
+     * @param hash well mixed 64-bit hash
+     * @return true if the set did not contain the hash
+     */
+    boolean add(long hash) {
+        if (hash == 0) {
+            hash = ZERO;
+        }
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))].add(hash);
+    }
+
+    /**
+     * @return number of hashes in the set
+     */
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private static final class Segment {
+
+        private final boolean offHeap;
+
+        private LongBuffer table;
+
+        private int size;
+
+        Segment(boolean offHeap) {
+            this.offHeap = offHeap;
+            this.table = allocate(INITIAL_CAPACITY);
+        }
+
+        synchronized boolean add(long hash) {
+            if (!insert(table, hash)) {
+                return false;
+            }
+            if (++size > table.capacity() / 4 * 3) {
+                LongBuffer grown = allocate(table.capacity() * 2);
+                for (int i = 0; i < table.capacity(); i++) {
+                    long value = table.get(i);
+                    if (value != 0) {
+                        insert(grown, value);
+                    }
+                }
+                table = grown;
+            }
+            return true;
+        }
+
+        /**
+         * Linear probing from the slot of the lowest bits of the hash
+         */
+        private static boolean insert(LongBuffer table, long hash) {
+            int mask = table.capacity() - 1;
+            int slot = (int) hash & mask;
+            while (true) {
+                long value = table.get(slot);
+                if (value == hash) {
+                    return false;
+                }
+                if (value == 0) {
+                    table.put(slot, hash);
+                    return true;
+                }
+                slot = slot + 1 & mask;
+            }
+        }
+
+        private LongBuffer allocate(int capacity) {
+            if (capacity <= 0 || offHeap && capacity > Integer.MAX_VALUE / Long.BYTES) {
+                throw new IllegalStateException("Too many distinct keys");
+            }
+            return offHeap ? ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                    : LongBuffer.wrap(new long[capacity]);
+        }
+    }
+}
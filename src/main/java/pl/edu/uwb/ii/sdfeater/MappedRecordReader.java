@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads SDF file through memory mapped windows and cuts it into batches of
+ * whole records without copying or decoding the bytes
+ */
+class MappedRecordReader extends RecordReader {
+
+    /**
+     * Maximum size of one mapped window
+     */
+    static final int WINDOW = 1 << 30;
+
+    private final FileChannel channel;
+
+    /**
+     * Input file size
+     */
+    private final long size;
+
+    /**
+     * Currently mapped part of the file
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * File offset of the window start
+     */
+    private long windowOffset;
+
+    /**
+     * File offset of the first byte not returned yet
+     */
+    private long position;
+
+    /**
+     * MappedRecordReader class constructor
+     *
+     * @param channel channel of input file
+     * @throws IOException if the file size could not be read
+     */
+    MappedRecordReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        size = channel.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException if the file could not be mapped or a record does
+     *                     not fit in a window
+     */
+    @Override
+    ByteBuffer nextBatch(int records) throws IOException {
+        if (position >= size) {
+            return null;
+        }
+        if (window == null || position - windowOffset >= window.limit()) {
+            map();
+        }
+        int start = (int) (position - windowOffset);
+        int end = findBatchEnd(start, records);
+        if (end < 0) {
+            // no complete record left in this window, map the next one from the record start
+            map();
+            start = 0;
+            end = findBatchEnd(start, records);
+            if (end < 0) {
+                throw new IOException("Record at byte " + position + " is larger than " + WINDOW + " bytes");
+            }
+        }
+        position = windowOffset + end;
+        return batch(window, start, end);
+    }
+
+    /**
+     * @return file offset of the first byte not returned yet
+     */
+    @Override
+    long position() {
+        return position;
+    }
+
+    @Override
+    long size() {
+        return size;
+    }
+
+    @Override
+    void skipInput(long bytes) throws IOException {
+        if (bytes > size) {
+            throw new IOException("Input file is shorter than " + bytes + " bytes");
+        }
+        position = bytes;
+    }
+
+    /**
+     * Maps window starting at current position
+     */
+    private void map() throws IOException {
+        windowOffset = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowOffset, Math.min(WINDOW, size - windowOffset));
+    }
+
+    /**
+     * Finds end of the batch in the current window
+     *
+     * @param start   batch start
+     * @param records maximum number of records in the batch
+     * @return batch end or -1 if there is no complete record in the window
+     */
+    private int findBatchEnd(int start, int records) {
+        int limit = window.limit();
+        return findBatchEnd(window, start, limit, windowOffset + limit >= size, records);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
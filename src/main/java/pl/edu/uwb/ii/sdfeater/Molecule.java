@@ -25,19 +25,21 @@
 package pl.edu.uwb.ii.sdfeater;
 
 import org.apache.commons.text.StringEscapeUtils;
-import org.apache.jena.rdf.model.Property;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.AnonId;
+import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.Resource;
-import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.vocabulary.RDF;
 
-import java.net.MalformedURLException;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
 
-import static pl.edu.uwb.ii.sdfeater.SDFEater.jenaModel;
 import static pl.edu.uwb.ii.sdfeater.SDFEater.periodic_table_data;
+import static pl.edu.uwb.ii.sdfeater.SDFEater.propertyMapping;
 
 /**
  * Class that stores information about chemical molecule
@@ -53,6 +55,11 @@ class Molecule {
     private static final byte STRIKE = 0;
     private static final byte UNDERLINE = 1;
 
+    /**
+     * Object of the rdf:type triple (plain literal, as in Jena model formats)
+     */
+    private static final Node MOLECULAR_ENTITY = NodeFactory.createLiteral(PropertyMapping.SCHEMA + "MolecularEntity");
+
     /**
      * Incremental ID
      */
@@ -60,20 +67,123 @@ class Molecule {
     /**
      * Stores atoms data
      */
-    final List<Atom> atoms = new ArrayList<>();
+    final Atoms atoms = new Atoms();
 
     /**
      * Stores bonds data
      */
-    final List<Bond> bonds = new ArrayList<>();
+    final Bonds bonds = new Bonds();
+    /**
+     * Stores all properties of the chemical molecule in input order
+     */
+    private final Map<String, PropertyValues> properties = new LinkedHashMap<>();
+
+    /**
+     * True if the record has property values that the output format does
+     * not use, so they were not parsed
+     */
+    boolean skippedProperties;
+
+    /**
+     * Generator of molecule identifiers
+     */
+    private final MoleculeId ids;
+
     /**
-     * Stores all properties of the chemical molecule
+     * Molecule identifier and its form used in Cypher variable names, null
+     * until the molecule is printed
      */
-    private final Map<String, List<String>> properties = new HashMap<>();
-    private UUID uuid;
+    private String id;
+    private String idVariable;
 
-    Molecule() {
-        uuid = UUID.randomUUID();
+    /**
+     * Bytes of the current record, null if not known
+     */
+    ByteBuffer record;
+
+    /**
+     * Number of the current record in the input, starting from 1
+     */
+    long recordNumber;
+
+    /**
+     * Input offset of the current record (in decompressed input)
+     */
+    long recordOffset;
+
+    /**
+     * Input file of the molecule and its number in the list of input files,
+     * starting from 0
+     */
+    String input;
+    int inputNumber;
+
+    /**
+     * Output to which molecule data is printed
+     */
+    OutputSink out;
+
+    /**
+     * RDF stream to which molecule data is sent in streaming RDF formats
+     */
+    StreamRDF rdfStream;
+
+    /**
+     * CSV files to which molecule data is printed in neo4j-admin import format
+     */
+    Neo4jCsvOutput csv;
+
+    /**
+     * Statements and transactions of the cypher-batch format
+     */
+    CypherBatch cypherBatch;
+
+    /**
+     * Jena model to which molecule data is added in JSON-LD and RDF/XML
+     * formats, the shared model of SDFEater if not set
+     */
+    Model model;
+
+    /**
+     * Molecule class constructor
+     *
+     * @param out output to which molecule data is printed
+     * @param ids generator of molecule identifiers
+     */
+    Molecule(OutputSink out, MoleculeId ids) {
+        this.out = out;
+        this.ids = ids;
+    }
+
+    /**
+     * Prints next molecules to the outputs of another molecule, used to
+     * write records to output shards
+     *
+     * @param target molecule with outputs of the format
+     */
+    void setOutputs(Molecule target) {
+        out = target.out;
+        rdfStream = target.rdfStream;
+        csv = target.csv;
+        cypherBatch = target.cypherBatch;
+        model = target.model;
+    }
+
+    /**
+     * @return next identifier of RDFa and Microdata molecules
+     */
+    static long nextID() {
+        return idCounter.get();
+    }
+
+    /**
+     * Continues identifiers of RDFa and Microdata molecules of a resumed
+     * conversion
+     *
+     * @param next next identifier
+     */
+    static void resumeIDs(long next) {
+        idCounter.set(next);
     }
 
     /**
@@ -89,7 +199,7 @@ class Molecule {
      * @param propertyName property name (key)
      */
     private void setPropertyName(String propertyName) {
-        properties.put(propertyName, new ArrayList<>());
+        properties.put(propertyName, new PropertyValues());
     }
 
     /**
@@ -99,7 +209,9 @@ class Molecule {
      * @param pList        properties list (values)
      */
     void addPropertiesByName(String propertyName, List<String> pList) {
-        properties.put(propertyName, pList);
+        PropertyValues pValues = new PropertyValues();
+        pValues.addAll(pList);
+        properties.put(propertyName, pValues);
     }
 
     /**
@@ -115,15 +227,35 @@ class Molecule {
         properties.get(propertyName).add(propertyValue); // adds property value to list
     }
 
+    /**
+     * Add single property value by property name. Value is decoded only when
+     * it is printed
+     *
+     * @param propertyName property name (key)
+     * @param buf          input bytes
+     * @param start        value start
+     * @param end          value end
+     */
+    void addPropertyByName(String propertyName, ByteBuffer buf, int start, int end) {
+        PropertyValues values = properties.get(propertyName);
+        if (values != null) {
+            values.add(buf, start, end);
+        } else {
+            PropertyValues pValues = new PropertyValues();
+            pValues.add(buf, start, end);
+            properties.put(propertyName, pValues);
+        }
+    }
+
     /**
      * Print properties keys and its values
      */
     void printProperties() {
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
             String key = entry.getKey();
             List<String> values = entry.getValue();
-            System.out.println("Key = " + key);
-            System.out.println("Values = " + values);
+            out.println("Key = " + key);
+            out.println("Values = " + values);
         }
     }
 
@@ -131,8 +263,8 @@ class Molecule {
      * Print atoms data
      */
     void printAtoms() {
-        for (Atom atom : atoms) {
-            System.out.println(atom.toString());
+        for (int i = 0; i < atoms.size(); i++) {
+            out.println(atoms.toString(i));
         }
     }
 
@@ -140,9 +272,14 @@ class Molecule {
      * Print bonds data
      */
     void printBonds() {
-        for (Bond bond : bonds) {
+        for (int i = 0; i < bonds.size(); i++) {
+            int atom1 = bonds.atom1(i);
+            int atom2 = bonds.atom2(i);
             try {
-                System.out.println("(" + atoms.get(bond.atom1 - 1).symbol + "[" + bond.atom1 + "])--" + bond.type + "--(" + atoms.get(bond.atom2 - 1).symbol + "[" + bond.atom2 + "])");
+                if (atom1 < 1 || atom1 > atoms.size() || atom2 < 1 || atom2 > atoms.size()) {
+                    throw new IndexOutOfBoundsException("Atoms: " + atom1 + ", " + atom2 + ", Size: " + atoms.size());
+                }
+                out.println("(" + atoms.symbol(atom1 - 1) + "[" + atom1 + "])--" + bonds.type(i) + "--(" + atoms.symbol(atom2 - 1) + "[" + atom2 + "])");
             } catch (Exception e) {
                 System.err.println("Error in printBonds(): " + e.toString());
             }
@@ -156,7 +293,7 @@ class Molecule {
      * @param propertyName property name (key)
      * @return list of property values
      */
-    List getPropertiesByName(String propertyName) {
+    List<String> getPropertiesByName(String propertyName) {
         return properties.get(propertyName);
     }
 
@@ -167,263 +304,197 @@ class Molecule {
         StringBuilder val_tmp = new StringBuilder();
         StringBuilder query_str = new StringBuilder("CREATE (c" + addUUID(UNDERLINE) + ":Molecule {");
 
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
             String key = entry.getKey();
-            List<String> values = entry.getValue();
-            query_str.append(key.replaceAll("\\s+|-", "").replaceAll("CAS Registry Numbers|CAS_NUMBER", "CASNumber")).append(": ");
+            PropertyValues values = entry.getValue();
+            query_str.append(propertyMapping.get(key).cypher).append(": ");
 
             if (values.size() > 1) {
                 query_str.append("[");
-                for (String value : values) {
-                    val_tmp.append(printValueAsNumberOrStringInCypher(value));
+                for (int i = 0; i < values.size(); i++) {
+                    val_tmp.append(printValueAsNumberOrStringInCypher(values, i));
                 }
                 val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
                 query_str.append(val_tmp).append("], ");
                 val_tmp = new StringBuilder();
             } else {
-                String value = values.get(0);
-                query_str.append(printValueAsNumberOrStringInCypher(value));
+                query_str.append(printValueAsNumberOrStringInCypher(values, 0));
             }
         }
 
         query_str = new StringBuilder(query_str.substring(0, query_str.length() - 2) + "})");
 
-        System.out.println(query_str);
+        out.println(query_str);
     }
 
     /**
-     * Print main molecule data in CVME
+     * Print molecule, its atoms and bonds as rows of neo4j-admin import CSV
+     * files, with the same properties as in Cypher
      */
-    void printChemSKOSMolecule() {
-        StringBuilder val_tmp = new StringBuilder();
-        StringBuilder query_str = new StringBuilder();
+    void printNeo4jCsv() {
+        String id = addUUID(STRIKE);
 
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
-            String key = entry.getKey();
-            List<String> values = entry.getValue();
-            //query_str += key.replaceAll("\\s+", "");
-            if ("SMILES".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> skos:notation ").append(printValueAsNumberOrStringCVME(value)).append("^^chemskos:SMILES .\n");
-            } else if ("Formulae".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> skos:hiddenLabel ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("Definition".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> skos:definition ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("InChIKey".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> dbp:inchikey ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("InChI".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> dbo:inchi ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("Mass".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> dbo:molecularWeight ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("IUPAC Names".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> skos:prefLabel ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("CAS Registry Numbers".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> dbo:casNumber ").append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
-            } else if ("Synonyms".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> skos:altLabel ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append("@en, ");
-                    }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
-                } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append("@en .\n");
+        OutputSink row = csv.molecules;
+        Neo4jCsvOutput.printField(row, id, false);
+        PropertyValues[] cells = null;
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+            Neo4jCsvOutput.Column column = csv.column(propertyMapping.get(entry.getKey()).cypher);
+            column.update(entry.getValue());
+            if (cells == null || cells.length <= column.index) {
+                PropertyValues[] grown = new PropertyValues[Math.max(column.index + 1, properties.size())];
+                if (cells != null) {
+                    System.arraycopy(cells, 0, grown, 0, cells.length);
                 }
-            } else if ("PubMed Citation Links".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append(", ");
-                    }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
-                } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append(" .\n");
-                }
-            } else if ("KNApSAcK Database Links".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append(", ");
-                    }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
-                } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append(" .\n");
+                cells = grown;
+            }
+            cells[column.index] = entry.getValue();
+        }
+        int written = 0;
+        if (cells != null) {
+            // trailing empty columns are added at the end if needed
+            written = cells.length;
+            while (written > 0 && cells[written - 1] == null) {
+                written--;
+            }
+            for (int i = 0; i < written; i++) {
+                row.print(',');
+                if (cells[i] == null) {
+                    continue;
                 }
-            } else if ("LIPID MAPS instance Database Links".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append(", ");
-                    }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
+                if (cells[i].size() > 1) {
+                    Neo4jCsvOutput.printArrayField(row, cells[i]);
                 } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append(" .\n");
+                    Neo4jCsvOutput.printField(row, cells[i].get(0), cells[i].isNumber(0));
                 }
-            } else if ("UniProt Database Links".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append(", ");
-                    }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
-                } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append(" .\n");
-                }
-            } else if ("Rhea Database Links".equals(key)) {
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ");
-                if (values.size() > 1) {
-                    for (String value : values) {
-                        val_tmp.append(printValueAsNumberOrStringCVME(value)).append(", ");
+            }
+        }
+        row.print('\n');
+        csv.rowWritten(written);
+
+        for (int i = 0; i < atoms.size(); i++) {
+            String atomId = id + "-" + (i + 1);
+            csv.atoms.print(atomId).print(',');
+            Neo4jCsvOutput.printField(csv.atoms, atoms.symbol(i), false);
+            csv.atoms.print(',').print(String.valueOf(atoms.x(i))).print(',').print(String.valueOf(atoms.y(i))).print(',').print(String.valueOf(atoms.z(i)));
+            if (!csv.periodicColumns.isEmpty()) {
+                Map<String, PropertyValues> data = getAtomPeriodicDataByAtomSymbol(atoms.symbol(i));
+                for (String key : csv.periodicColumns) {
+                    csv.atoms.print(',');
+                    PropertyValues value = data != null ? data.get(key) : null;
+                    if (value != null) {
+                        Neo4jCsvOutput.printField(csv.atoms, value.get(0), value.isNumber(0));
                     }
-                    val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
-                    query_str.append(val_tmp).append(" .\n");
-                    val_tmp = new StringBuilder();
-                } else {
-                    String value = values.get(0);
-                    query_str.append(printValueAsNumberOrStringCVME(value)).append(" .\n");
                 }
-            } else if ("KEGG COMPOUND Database Links".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ").append(printValueAsNumberOrStringCVME(value)).append(" .\n");
-            } else if ("Patent Database Links".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> cvme:patent ").append(printValueAsNumberOrStringCVME(value)).append(" .\n");
-            } else if ("PubChem Database Molecule Links".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ").append(printValueAsNumberOrStringCVME(value)).append(" .\n");
-            } else if ("PubChem Database Substance Links".equals(key)) {
-                String value = values.get(0);
-                query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> rdfs:seeAlso ").append(printValueAsNumberOrStringCVME(value)).append(" .\n");
             }
+            csv.atoms.print('\n');
+            csv.related.print(id).print(',').print(atomId).print('\n');
+        }
+
+        for (int i = 0; i < bonds.size(); i++) {
+            csv.bonds.print(id).print('-').print(bonds.atom1(i)).print(',').print(id).print('-').print(bonds.atom2(i)).print(',');
+            String type = bondTypeNumberToString(bonds.type(i));
+            if (!"0".equals(type)) {
+                csv.bonds.print(type);
+            }
+            csv.bonds.print(',');
+            String stereo = bondStereoNumberToString(bonds.stereo(i), bonds.type(i));
+            if (!"0".equals(stereo)) {
+                csv.bonds.print(stereo.replace("\"", ""));
+            }
+            csv.bonds.print('\n');
+        }
+    }
+
+    /**
+     * Print main molecule data in CVME
+     */
+    void printChemSKOSMolecule() {
+        StringBuilder val_tmp = new StringBuilder();
+        StringBuilder query_str = new StringBuilder();
 
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+            PropertyMapping.Entry mapping = propertyMapping.get(entry.getKey());
+            if (mapping.cvme == null) {
+                continue;
+            }
+            PropertyValues values = entry.getValue();
+            query_str.append("<urn:uuid:").append(addUUID(STRIKE)).append("> ").append(mapping.cvme).append(' ');
+            if (mapping.cvmeAll && values.size() > 1) {
+                for (int i = 0; i < values.size(); i++) {
+                    val_tmp.append(printValueAsNumberOrStringCVME(values, i)).append(mapping.cvmeSuffix).append(", ");
+                }
+                val_tmp = new StringBuilder(val_tmp.substring(0, val_tmp.length() - 2));
+                query_str.append(val_tmp).append(" .\n");
+                val_tmp = new StringBuilder();
+            } else {
+                query_str.append(printValueAsNumberOrStringCVME(values, 0)).append(mapping.cvmeSuffix).append(" .\n");
+            }
         }
-        System.out.println(query_str);
+        out.println(query_str);
     }
 
     /**
      * Add main molecule data to Jena model
      */
     void addToJenaModel() {
-        Resource me = ResourceFactory.createResource();
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
+        // blank node labelled with the identifier, so -d gives the same output in every run
+        Resource me = model.createResource(AnonId.create(addUUID(STRIKE)));
+        if (!properties.isEmpty() || skippedProperties) {
+            model.add(me, RDF.type, "https://schema.org/MolecularEntity");
+        }
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
 
             String key = entry.getKey();
             List<String> values = entry.getValue();
-            jenaModel.add(me, RDF.type, "https://schema.org/MolecularEntity");
 
-            if ("SMILES".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/smiles");
-                jenaModel.add(me, p, value);
-            } else if ("Formulae".equals(key) || "FORMULA".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/molecularFormula");
-                jenaModel.add(me, p, value);
-            } else if ("Definition".equals(key)) {
+            PropertyMapping.Entry mapping = propertyMapping.get(key);
+            if (mapping.schema != null) {
                 String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/description");
-                jenaModel.add(me, p, value);
-            } else if ("InChIKey".equals(key) || "INCHI_KEY".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/inChIKey");
-                jenaModel.add(me, p, value);
-            } else if ("InChI".equals(key) || "INCHI_IDENTIFIER".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/inChI");
-                jenaModel.add(me, p, value);
-            } else if ("Mass".equals(key) || "MOLECULAR_WEIGHT".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/molecularWeight");
-                jenaModel.add(me, p, value);
-            } else if ("IUPAC Names".equals(key) || "JCHEM_IUPAC".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/iupacName");
-                jenaModel.add(me, p, value);
-            } else if ("CAS Registry Numbers".equals(key) || "CAS_NUMBER".equals((key))) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/identifier");
-                jenaModel.add(me, p, value);
-            } else if ("Synonyms".equals(key) || "SYNONYMS".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/alternateName");
-                jenaModel.add(me, p, value);
-            } else if ("COMMON_NAME".equals(key) || "GENERIC_NAME".equals(key)) {
-                String value = values.get(0);
-                Property p = jenaModel.createProperty("https://schema.org/name");
-                jenaModel.add(me, p, value);
+                model.add(me, mapping.schema, value);
             }
         }
 
     }
 
     /**
-     * Print main molecule data in RDFa
+     * Send main molecule data to RDF stream as soon as the molecule is parsed
      */
-    void printRDFaMolecule() {
-        StringBuilder output_str = new StringBuilder();
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
+    void addToRDFStream() {
+        // blank node labelled with the identifier, so -d gives the same output in every run
+        Node me = NodeFactory.createBlankNode(addUUID(STRIKE));
+        if (!properties.isEmpty() || skippedProperties) {
+            rdfStream.triple(Triple.create(me, RDF.Nodes.type, MOLECULAR_ENTITY));
+        }
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+
             String key = entry.getKey();
             List<String> values = entry.getValue();
 
-            if ("SMILES".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:smiles'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Formulae".equals(key) || "FORMULA".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:molecularFormula'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Definition".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:description'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("InChIKey".equals(key) || "INCHI_KEY".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:inChIKey'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("InChI".equals(key) || "INCHI_IDENTIFIER".equals(key)) {
+            PropertyMapping.Entry mapping = propertyMapping.get(key);
+            if (mapping.schema != null) {
                 String value = values.get(0);
-                output_str.append("      <div property='schema:inChI'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Mass".equals(key) || "MOLECULAR_WEIGHT".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:molecularWeight'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("IUPAC Names".equals(key) || "JCHEM_IUPAC".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:iupacName'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("CAS Registry Numbers".equals(key) || "CAS_NUMBER".equals((key))) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:identifier'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Synonyms".equals(key) || "SYNONYMS".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:alternateName'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("COMMON_NAME".equals(key) || "GENERIC_NAME".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div property='schema:name'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
+                rdfStream.triple(Triple.create(me, mapping.schema.asNode(), NodeFactory.createLiteral(value)));
+            }
+        }
+    }
+
+    /**
+     * Print main molecule data in RDFa
+     */
+    void printRDFaMolecule() {
+        StringBuilder output_str = new StringBuilder();
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+            PropertyMapping.Entry mapping = propertyMapping.get(entry.getKey());
+            if (mapping.schemaName != null) {
+                String value = entry.getValue().get(0);
+                output_str.append("      <div property='schema:").append(mapping.schemaName).append("'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
             }
         }
 
         if (output_str.length() > 0) {
-            System.out.println("    <div typeof='schema:MolecularEntity' about='http://example.org/me" + createID() + "'>");
-            System.out.print(output_str);
-            System.out.println("    </div>");
+            out.println("    <div typeof='schema:MolecularEntity' about='http://example.org/me" + createID() + "'>");
+            out.print(output_str);
+            out.println("    </div>");
         }
 
     }
@@ -433,78 +504,65 @@ class Molecule {
      */
     void printMicrodataMolecule() {
         StringBuilder output_str = new StringBuilder();
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
-            String key = entry.getKey();
-            List<String> values = entry.getValue();
-
-            if ("SMILES".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='smiles'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Formulae".equals(key) || "FORMULA".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='molecularFormula'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Definition".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='description'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("InChIKey".equals(key) || "INCHI_KEY".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='inChIKey'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("InChI".equals(key) || "INCHI_IDENTIFIER".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='inChI'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Mass".equals(key) || "MOLECULAR_WEIGHT".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='molecularWeight'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("IUPAC Names".equals(key) || "JCHEM_IUPAC".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='iupacName'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("CAS Registry Numbers".equals(key) || "CAS_NUMBER".equals((key))) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='identifier'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("Synonyms".equals(key) || "SYNONYMS".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='alternateName'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
-            } else if ("COMMON_NAME".equals(key) || "GENERIC_NAME".equals(key)) {
-                String value = values.get(0);
-                output_str.append("      <div itemprop='name'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+            PropertyMapping.Entry mapping = propertyMapping.get(entry.getKey());
+            if (mapping.schemaName != null) {
+                String value = entry.getValue().get(0);
+                output_str.append("      <div itemprop='").append(mapping.schemaName).append("'>").append(StringEscapeUtils.escapeHtml4(value)).append("</div>\n");
             }
         }
 
         if (output_str.length() > 0) {
-            System.out.println("    <div itemscope itemtype='http://schema.org/MolecularEntity' itemid='http://example.org/me" + createID() + "'>");
-            System.out.print(output_str);
-            System.out.println("    </div>");
+            out.println("    <div itemscope itemtype='http://schema.org/MolecularEntity' itemid='http://example.org/me" + createID() + "'>");
+            out.print(output_str);
+            out.println("    </div>");
         }
 
     }
 
     /**
-     * Detect if value is number, URL or String
+     * Print value as number, URL or String in CVME
      *
-     * @param value Value to check
+     * @param values property values
+     * @param index  value index
      * @return value, if number, 'value', if string, <value> if URL
      */
-    private String printValueAsNumberOrStringCVME(String value) {
-        if (isNumber(value)) {
-            return value;
-        } else if (isURL(value)) {
-            return "<" + value + ">";
-        } else {
-            return "'" + value + "'";
+    private String printValueAsNumberOrStringCVME(PropertyValues values, int index) {
+        String value = values.get(index);
+        switch (values.type(index)) {
+            case PropertyValues.INTEGER:
+            case PropertyValues.DECIMAL:
+                return value;
+            case PropertyValues.URL:
+                return "<" + value + ">";
+            default:
+                return "'" + value + "'";
         }
     }
 
     /**
-     * Detect if value is number and use this in Cypher output
+     * Print value as number or String in Cypher output
+     *
+     * @param values property values
+     * @param index  value index
+     * @return value, if number and 'value', if not
+     */
+    private String printValueAsNumberOrStringInCypher(PropertyValues values, int index) {
+        return cypherValue(values, index) + ", ";
+    }
+
+    /**
+     * Cypher literal of property value
      *
-     * @param value Value to check
+     * @param values property values
+     * @param index  value index
      * @return value, if number and 'value', if not
      */
-    private String printValueAsNumberOrStringInCypher(String value) {
-        if (isNumber(value)) {
-            return value + ", ";
+    private String cypherValue(PropertyValues values, int index) {
+        if (values.isNumber(index)) {
+            return values.get(index);
         } else {
-            return "'" + value + "', ";
+            return "'" + values.get(index) + "'";
         }
     }
 
@@ -512,29 +570,29 @@ class Molecule {
      * Print atoms and bonds as skos:example property in CVME
      */
     void printChemSKOSAtomsAndBonds() {
-        System.out.println("<urn:uuid:" + addUUID(STRIKE) + "> skos:example \"\"\"\n");
-        System.out.println("  CT\n");
+        out.println("<urn:uuid:" + addUUID(STRIKE) + "> skos:example \"\"\"\n");
+        out.println("  CT\n");
         int atomsSize = atoms.size();
         int bondsSize = bonds.size();
         if (atomsSize >= 0 && atomsSize <= 9) {
-            System.out.print("  " + atomsSize);
+            out.print("  " + atomsSize);
         } else if (atomsSize >= 10 && atomsSize <= 99) {
-            System.out.print(" " + atomsSize);
+            out.print(" " + atomsSize);
         } else {
-            System.out.print(atomsSize);
+            out.print(atomsSize);
         }
         if (bondsSize >= 0 && bondsSize <= 9) {
-            System.out.println("  " + bondsSize + "  0  0  0  0            999 V2000");
+            out.println("  " + bondsSize + "  0  0  0  0            999 V2000");
         } else if (bondsSize >= 10 && bondsSize <= 99) {
-            System.out.println(" " + bondsSize + "  0  0  0  0            999 V2000");
+            out.println(" " + bondsSize + "  0  0  0  0            999 V2000");
         } else {
-            System.out.println(bondsSize + "  0  0  0  0            999 V2000");
+            out.println(bondsSize + "  0  0  0  0            999 V2000");
         }
-        for (Atom atom : atoms) {
-            float x = atom.x;
-            float y = atom.y;
-            float z = atom.z;
-            String symbol = atom.symbol;
+        for (int i = 0; i < atomsSize; i++) {
+            float x = atoms.x(i);
+            float y = atoms.y(i);
+            float z = atoms.z(i);
+            String symbol = atoms.symbol(i);
             String line = "";
             String temp;
             if (x < 0) {
@@ -595,13 +653,13 @@ class Molecule {
             }
             line += "0  0  0  0  0  0  0  0  0  0  0  0";
             line = line.replace("\n", "").replace(",", ".");
-            System.out.println(line);
+            out.println(line);
         }
-        for (Bond bond : bonds) {
-            int atom1 = bond.atom1;
-            int atom2 = bond.atom2;
-            byte type = bond.type;
-            byte stereo = bond.stereo;
+        for (int i = 0; i < bondsSize; i++) {
+            int atom1 = bonds.atom1(i);
+            int atom2 = bonds.atom2(i);
+            byte type = bonds.type(i);
+            byte stereo = bonds.stereo(i);
             String line = "";
             if (atom1 <= 9) {
                 line += "  " + atom1;
@@ -619,44 +677,28 @@ class Molecule {
             }
             line += "  " + type;
             line += "  " + stereo + "  0  0  0";
-            System.out.println(line);
+            out.println(line);
         }
-        System.out.print("M  END");
-        System.out.println("\"\"\" .");
+        out.print("M  END");
+        out.println("\"\"\" .");
     }
 
     /**
      * Print SMILES form SDF
      */
     void printSMILES() {
-        String query_str = "";
-
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
-            String key = entry.getKey();
-            List<String> values = entry.getValue();
-            if ("SMILES".equals(key)) {
-                query_str = values.get(0);
-            }
-
-        }
-        System.out.println(query_str);
+        List<String> values = properties.get("SMILES");
+        String query_str = values != null ? values.get(0) : "";
+        out.println(query_str);
     }
 
     /**
      * Print InChI form SDF
      */
     void printInChI() {
-        String query_str = "";
-
-        for (Map.Entry<String, List<String>> entry : properties.entrySet()) {
-            String key = entry.getKey();
-            List<String> values = entry.getValue();
-            if ("InChI".equals(key)) {
-                query_str = values.get(0);
-            }
-
-        }
-        System.out.println(query_str);
+        List<String> values = properties.get("InChI");
+        String query_str = values != null ? values.get(0) : "";
+        out.println(query_str);
     }
 
     /**
@@ -664,10 +706,13 @@ class Molecule {
      */
     void printCypherAtoms() {
         if (!atoms.isEmpty()) {
-            int it = 1;
-            for (Atom atom : atoms) {
-                System.out.println("CREATE (a" + it + addUUID(UNDERLINE) + ":Atom {symbol: '" + atom.symbol + "', x: " + atom.x + ", y: " + atom.y + ", z: " + atom.z + "})");
-                it++;
+            StringBuilder str = new StringBuilder();
+            for (int i = 0; i < atoms.size(); i++) {
+                str.append("CREATE (a").append(i + 1).append(addUUID(UNDERLINE)).append(":Atom {");
+                appendCypherAtomProperties(str, i, false);
+                str.append("})");
+                out.println(str);
+                str.setLength(0);
             }
 
             printCypherMoleculeAtomRelation();
@@ -681,42 +726,53 @@ class Molecule {
     void printCypherAtomsWithPeriodicTableData() {
         if (!atoms.isEmpty()) {
             StringBuilder str = new StringBuilder();
-            int it = 1;
-            for (Atom atom : atoms) {
-                str.append("CREATE (a").append(it).append(addUUID(UNDERLINE)).append(":Atom {symbol: '").append(atom.symbol).append("', x: ").append(atom.x).append(", y: ").append(atom.y).append(", z: ").append(atom.z);
-
-                try {
-                    for (Map.Entry<String, Object> entry : getAtomPeriodicDataByAtomSymbol(atom.symbol).entrySet()) {
-                        String key = entry.getKey();
-                        Object value = entry.getValue();
-
-                        str.append(", ").append(key).append(": ");
-                        if (isNumber(value.toString())) {
-                            str.append(value);
-                        } else {
-                            str.append("'").append(value).append("'");
-                        }
-                    }
-                } catch (Exception e) {
-                    //System.err.println("WARNING: No additional data could be found in the periodic table for " + atom.symbol);
-                }
-
+            for (int i = 0; i < atoms.size(); i++) {
+                str.append("CREATE (a").append(i + 1).append(addUUID(UNDERLINE)).append(":Atom {");
+                appendCypherAtomProperties(str, i, true);
                 str.append("})\n");
-                it++;
             }
-            System.out.print(str);
+            out.print(str);
 
             printCypherMoleculeAtomRelation();
         }
     }
 
+    /**
+     * Append atom properties in Cypher map syntax, without braces
+     *
+     * @param str      query
+     * @param atom     atom counted from 0
+     * @param periodic add additional atoms data from periodic table
+     */
+    private void appendCypherAtomProperties(StringBuilder str, int atom, boolean periodic) {
+        str.append("symbol: '").append(atoms.symbol(atom)).append("', x: ").append(atoms.x(atom)).append(", y: ").append(atoms.y(atom)).append(", z: ").append(atoms.z(atom));
+        if (!periodic) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, PropertyValues> entry : getAtomPeriodicDataByAtomSymbol(atoms.symbol(atom)).entrySet()) {
+                String key = entry.getKey();
+                PropertyValues value = entry.getValue();
+
+                str.append(", ").append(key).append(": ");
+                if (value.isNumber(0)) {
+                    str.append(value.get(0));
+                } else {
+                    str.append("'").append(value.get(0)).append("'");
+                }
+            }
+        } catch (Exception e) {
+            //System.err.println("WARNING: No additional data could be found in the periodic table for " + atoms.symbol(atom));
+        }
+    }
+
     /**
      * Gets additional periodic table data by atom symbol
      *
      * @param symbol Atom symbol
      * @return All periodic table data
      */
-    private Map<String, Object> getAtomPeriodicDataByAtomSymbol(String symbol) {
+    private Map<String, PropertyValues> getAtomPeriodicDataByAtomSymbol(String symbol) {
         return periodic_table_data.get(symbol);
     }
 
@@ -731,7 +787,7 @@ class Molecule {
                 query_str.append("\n(c").append(addUUID(UNDERLINE)).append(")-[:RELATED]->(a").append(i).append(addUUID(UNDERLINE)).append("),");
             }
             query_str = new StringBuilder(query_str.substring(0, query_str.length() - 1));
-            System.out.println(query_str);
+            out.println(query_str);
         }
     }
 
@@ -741,27 +797,83 @@ class Molecule {
     void printCypherBonds() {
         if (!bonds.isEmpty()) {
             StringBuilder query_str = new StringBuilder("CREATE");
-            for (Bond bond : bonds) {
-                query_str.append("\n(a").append(bond.atom1).append(addUUID(UNDERLINE)).append(")-[:BOND_WITH {");
+            for (int i = 0; i < bonds.size(); i++) {
+                query_str.append("\n(a").append(bonds.atom1(i)).append(addUUID(UNDERLINE)).append(")-[:BOND_WITH {");
+                appendCypherBondProperties(query_str, i);
+                query_str.append("}]->(a").append(bonds.atom2(i)).append(addUUID(UNDERLINE)).append("),");
+            }
+            query_str = new StringBuilder(query_str.substring(0, query_str.length() - 1));
+            out.println(query_str);
+        }
 
-                if (!"0".equals(bondTypeNumberToString(bond.type))) {
-                    query_str.append("type: \"").append(bondTypeNumberToString(bond.type)).append("\"");
-                }
+    }
 
-                if (!"0".equals(bondTypeNumberToString(bond.type)) && !"0".equals(bondStereoNumberToString(bond.stereo, bond.type))) {
-                    query_str.append(", ");
-                }
+    /**
+     * Append bond properties in Cypher map syntax, without braces
+     *
+     * @param str  query
+     * @param bond bond counted from 0
+     */
+    private void appendCypherBondProperties(StringBuilder str, int bond) {
+        String type = bondTypeNumberToString(bonds.type(bond));
+        String stereo = bondStereoNumberToString(bonds.stereo(bond), bonds.type(bond));
+        if (!"0".equals(type)) {
+            str.append("type: \"").append(type).append("\"");
+        }
 
-                if (!"0".equals(bondStereoNumberToString(bond.stereo, bond.type))) {
-                    query_str.append("stereo: ").append(bondStereoNumberToString(bond.stereo, bond.type));
-                }
+        if (!"0".equals(type) && !"0".equals(stereo)) {
+            str.append(", ");
+        }
+
+        if (!"0".equals(stereo)) {
+            str.append("stereo: ").append(stereo);
+        }
+    }
 
-                query_str.append("}]->(a").append(bond.atom2).append(addUUID(UNDERLINE)).append("),");
+    /**
+     * Print molecule, its atoms and bonds as a row of the cypher-batch $rows
+     * parameter, with the same properties as in Cypher
+     *
+     * @param periodic add additional atoms data from periodic table
+     */
+    void printCypherBatchRow(boolean periodic) {
+        StringBuilder row = new StringBuilder("{properties: {");
+        String separator = "";
+        for (Map.Entry<String, PropertyValues> entry : properties.entrySet()) {
+            row.append(separator).append(propertyMapping.get(entry.getKey()).cypher).append(": ");
+            PropertyValues values = entry.getValue();
+            if (values.size() > 1) {
+                row.append('[');
+                for (int i = 0; i < values.size(); i++) {
+                    row.append(i > 0 ? ", " : "").append(cypherValue(values, i));
+                }
+                row.append(']');
+            } else {
+                row.append(cypherValue(values, 0));
             }
-            query_str = new StringBuilder(query_str.substring(0, query_str.length() - 1));
-            System.out.println(query_str);
+            separator = ", ";
+        }
+        row.append("}, atoms: [");
+        separator = "";
+        for (int i = 0; i < atoms.size(); i++) {
+            row.append(separator).append('{');
+            appendCypherAtomProperties(row, i, periodic);
+            row.append('}');
+            separator = ", ";
         }
+        row.append("], bonds: [");
+        separator = "";
+        for (int i = 0; i < bonds.size(); i++) {
+            row.append(separator).append("{from: ").append(bonds.atom1(i)).append(", to: ").append(bonds.atom2(i)).append(", properties: {");
+            appendCypherBondProperties(row, i);
+            row.append("}}");
+            separator = ", ";
+        }
+        row.append("]}");
 
+        cypherBatch.beginRow(out);
+        out.print(row);
+        cypherBatch.endRow(out);
     }
 
     /**
@@ -836,45 +948,59 @@ class Molecule {
     }
 
     /**
-     * Prepare UUID to use in Cypher output
+     * Prepare UUID to use in Cypher output. The identifier is generated and
+     * rendered once per molecule
      */
     private String addUUID(byte dash) {
-        if (dash == 0) {
-            return uuid.toString();
-        } else {
-            return "_" + uuid.toString().replace('-', '_');
+        if (id == null) {
+            id = ids.next(this).toString();
+            idVariable = "_" + id.replace('-', '_');
         }
+        return dash == STRIKE ? id : idVariable;
     }
 
     /**
-     * Prepare program structures for new molecule
-     */
-    void clearAll() {
-        properties.clear();
-        atoms.clear();
-        bonds.clear();
-        uuid = UUID.randomUUID();
+     * Set bytes, number and offset of the current record
+     *
+     * @param record       record bytes from position to limit
+     * @param recordNumber number of the record in the input, starting from 1
+     * @param recordOffset input offset of the record
+     */
+    void setRecord(ByteBuffer record, long recordNumber, long recordOffset) {
+        this.record = record;
+        this.recordNumber = recordNumber;
+        this.recordOffset = recordOffset;
     }
 
     /**
-     * Detect if String is number
-     *
-     * @param s String to check
-     * @return true if number, false if not
+     * @return values of properties by property name, in input order
      */
-    private boolean isNumber(String s) {
-        String regex = "-?\\d+(\\.\\d+)?";
-        return s.matches(regex);
+    Map<String, PropertyValues> getProperties() {
+        return properties;
     }
 
-    private boolean isURL(String s) {
-        try {
-            URL url = new URL(s);
-            url.toURI();
-        } catch (MalformedURLException | URISyntaxException exception) {
-            return false;
+    /**
+     * @return first InChIKey value or null if the molecule has none
+     */
+    String getInChIKey() {
+        List<String> values = properties.get("InChIKey");
+        if (values == null) {
+            values = properties.get("INCHI_KEY");
         }
-        return true;
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Prepare program structures for new molecule
+     */
+    void clearAll() {
+        properties.clear();
+        skippedProperties = false;
+        atoms.clear();
+        bonds.clear();
+        id = null;
+        idVariable = null;
+        record = null;
     }
 
     @Override
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates identifiers of molecules used in Cypher variable names and cvme
+ * subjects. Identifier is generated only once for every molecule, when it is
+ * printed for the first time
+ */
+abstract class MoleculeId {
+
+    /**
+     * Identifier strategies
+     */
+    enum Strategy {
+        /**
+         * Random identifiers from a fast non-cryptographic generator
+         */
+        RANDOM,
+        /**
+         * Record numbers in input order
+         */
+        SEQUENTIAL,
+        /**
+         * Hash of the InChIKey or, if there is none, of the record bytes, so
+         * the same molecule gets the same identifier in every run. Records
+         * with the same InChIKey get the same identifier, so the input should
+         * be deduplicated
+         */
+        HASH;
+
+        /**
+         * Finds strategy by its name
+         *
+         * @param name strategy name (random, sequential, hash)
+         * @return strategy
+         * @throws IllegalArgumentException if there is no such strategy
+         */
+        static Strategy of(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * Creates identifier generator. Generators are not thread safe, every
+         * Molecule object has its own one
+         *
+         * @return new generator
+         */
+        MoleculeId create() {
+            switch (this) {
+                case SEQUENTIAL:
+                    return new Sequential();
+                case HASH:
+                    return new Hash();
+                default:
+                    return new Random();
+            }
+        }
+    }
+
+    /**
+     * Generates identifier of the molecule
+     *
+     * @param molecule parsed molecule
+     * @return molecule identifier
+     */
+    abstract UUID next(Molecule molecule);
+
+    /**
+     * Random version 4 UUIDs. Unlike UUID.randomUUID() it does not use
+     * SecureRandom, so it never waits for entropy
+     */
+    static class Random extends MoleculeId {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        @Override
+        UUID next(Molecule molecule) {
+            long msb = random.nextLong() & ~0xf000L | 0x4000L;
+            long lsb = random.nextLong() & ~(3L << 62) | 1L << 63;
+            return new UUID(msb, lsb);
+        }
+    }
+
+    /**
+     * Record number (starting from 1) in the lowest bits of the UUID and
+     * number of the input file (0 for the first one) in the highest bits, so
+     * records of many input files get different identifiers
+     */
+    static class Sequential extends MoleculeId {
+
+        @Override
+        UUID next(Molecule molecule) {
+            return new UUID(molecule.inputNumber, molecule.recordNumber);
+        }
+    }
+
+    /**
+     * Name based (version 3) UUIDs of InChIKey or record bytes
+     */
+    static class Hash extends MoleculeId {
+
+        private final MessageDigest md5;
+
+        Hash() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        UUID next(Molecule molecule) {
+            String inchiKey = molecule.getInChIKey();
+            if (inchiKey != null) {
+                md5.update(inchiKey.getBytes(StandardCharsets.UTF_8));
+            } else if (molecule.record != null) {
+                md5.update(molecule.record.duplicate());
+            }
+            byte[] hash = md5.digest();
+            hash[6] = (byte) (hash[6] & 0x0f | 0x30);
+            hash[8] = (byte) (hash[8] & 0x3f | 0x80);
+            ByteBuffer bytes = ByteBuffer.wrap(hash);
+            return new UUID(bytes.getLong(), bytes.getLong());
+        }
+    }
+}
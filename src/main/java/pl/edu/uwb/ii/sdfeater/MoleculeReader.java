@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads molecules of SDF files for use in Java code, without converting them
+ * to text. Gzip compressed files are decompressed on the fly
+ */
+public final class MoleculeReader {
+
+    private MoleculeReader() {
+    }
+
+    /**
+     * Opens stream of the molecules of the file. The stream is splittable on
+     * record boundaries, so with parallel() batches of records are parsed by
+     * many threads. Broken records are skipped and reported to the standard
+     * error. Close the stream to close the file
+     *
+     * @param input SDF file, optionally compressed with gzip
+     * @return stream of molecules in input order
+     * @throws IOException if the file could not be opened
+     */
+    public static Stream<MoleculeView> stream(Path input) throws IOException {
+        return stream(input, 1);
+    }
+
+    /**
+     * Opens stream of the molecules of the file
+     *
+     * @param input   SDF file, optionally compressed with gzip
+     * @param threads number of decompression threads of blocked gzip (BGZF)
+     *                files
+     * @return stream of molecules in input order
+     * @throws IOException if the file could not be opened
+     */
+    public static Stream<MoleculeView> stream(Path input, int threads) throws IOException {
+        RecordReader reader = RecordReader.open(input.toString(), threads);
+        return StreamSupport.stream(new RecordSpliterator(reader), false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
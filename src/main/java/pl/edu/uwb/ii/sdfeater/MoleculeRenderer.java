@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Converts SDF files to an output format for use in Java code, writing to a
+ * caller supplied byte or text output instead of a file. Output is not
+ * closed. Errors of the input are reported to the standard error, as in the
+ * command line tool, and the output is still completed with its footer
+ */
+public final class MoleculeRenderer {
+
+    private final Conversion conversion;
+
+    private final int threads;
+
+    /**
+     * Renderer of the format with default options
+     *
+     * @param format output format name (cypher, cypher-batch, cvme, smiles,
+     *               inchi, turtle, ntriples, rdfxml, rdfthrift, jsonldhtml,
+     *               jsonld, rdfa, microdata)
+     * @throws IllegalArgumentException if the format is not known
+     */
+    public MoleculeRenderer(String format) {
+        this(format, false, false, 1);
+    }
+
+    /**
+     * MoleculeRenderer class constructor
+     *
+     * @param format   output format name
+     * @param urls     try to generate full database URLs instead of IDs in
+     *                 Cypher formats (always in cvme)
+     * @param periodic add additional atoms data from periodic table in
+     *                 Cypher formats
+     * @param threads  number of threads used to parse records
+     * @throws IllegalArgumentException if the format is not known or is
+     *                                  neo4jcsv, which is a directory of
+     *                                  files
+     */
+    public MoleculeRenderer(String format, boolean urls, boolean periodic, int threads) {
+        char f = Conversion.format(format);
+        if (f == 0 || f == 'b') {
+            throw new IllegalArgumentException("Unsupported output format: " + format);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+        boolean graph = f == 'c' || f == 'q';
+        initialize(graph && periodic);
+        this.conversion = new Conversion(f, f == 'r' || graph && urls, graph && periodic, MoleculeId.Strategy.RANDOM,
+                OutputSink.DEFAULT_BUFFER_SIZE, false, CypherBatch.DEFAULT_BATCH_SIZE, CypherBatch.DEFAULT_COMMIT_SIZE);
+        this.threads = threads;
+    }
+
+    /**
+     * Loads data shared by all conversions
+     *
+     * @param periodic load periodic table data
+     */
+    private static synchronized void initialize(boolean periodic) {
+        if (SDFEater.propertyMapping == null) {
+            try {
+                SDFEater.propertyMapping = PropertyMapping.load(null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (periodic && SDFEater.periodic_table_data == null) {
+            SDFEater.loadPeriodicTableData();
+        }
+    }
+
+    /**
+     * Writes molecules of the file as bytes of the format
+     *
+     * @param input SDF file, optionally compressed with gzip
+     * @param out   byte output, flushed but not closed
+     * @throws IOException if the output could not be written
+     */
+    public void render(Path input, OutputStream out) throws IOException {
+        render(input, new ChannelOutputSink(Channels.newChannel(out), OutputSink.DEFAULT_BUFFER_SIZE));
+        out.flush();
+    }
+
+    /**
+     * Writes molecules of the file as text of the format
+     *
+     * @param input SDF file, optionally compressed with gzip
+     * @param out   text output (e.g. StringBuilder or Writer), not closed
+     * @throws IOException if the output could not be written
+     */
+    public void render(Path input, Appendable out) throws IOException {
+        render(input, new AppendableOutputSink(out, OutputSink.DEFAULT_BUFFER_SIZE));
+    }
+
+    private void render(Path input, OutputSink sink) throws IOException {
+        try {
+            conversion.write(List.of(input.toString()), 0, sink, null, threads, null, null);
+            sink.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
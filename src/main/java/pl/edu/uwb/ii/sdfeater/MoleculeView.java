@@ -0,0 +1,240 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of a parsed SDF record: its properties, atoms and bonds.
+ * Atoms and bonds are read by their index, like in the molfile blocks, so
+ * no object is created for each of them
+ */
+public final class MoleculeView {
+
+    private final long recordNumber;
+
+    private final long offset;
+
+    private final Map<String, List<String>> properties;
+
+    /**
+     * Atom symbols and coordinates (x, y and z of every atom)
+     */
+    private final String[] symbols;
+    private final float[] coordinates;
+
+    /**
+     * First and second atom of every bond, bond types and stereo
+     */
+    private final int[] bondAtoms;
+    private final byte[] bondTypes;
+    private final byte[] bondStereo;
+
+    /**
+     * Copies the current record of the parsed molecule
+     *
+     * @param molecule parsed molecule
+     */
+    MoleculeView(Molecule molecule) {
+        recordNumber = molecule.recordNumber;
+        offset = molecule.recordOffset;
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        for (Map.Entry<String, PropertyValues> entry : molecule.getProperties().entrySet()) {
+            List<String> list = new ArrayList<>(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                list.add(unescape(value));
+            }
+            values.put(entry.getKey(), Collections.unmodifiableList(list));
+        }
+        properties = Collections.unmodifiableMap(values);
+        Atoms atoms = molecule.atoms;
+        symbols = new String[atoms.size()];
+        coordinates = new float[atoms.size() * 3];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = atoms.symbol(i);
+            coordinates[3 * i] = atoms.x(i);
+            coordinates[3 * i + 1] = atoms.y(i);
+            coordinates[3 * i + 2] = atoms.z(i);
+        }
+        Bonds bonds = molecule.bonds;
+        bondAtoms = new int[bonds.size() * 2];
+        bondTypes = new byte[bonds.size()];
+        bondStereo = new byte[bonds.size()];
+        for (int i = 0; i < bondTypes.length; i++) {
+            bondAtoms[2 * i] = bonds.atom1(i);
+            bondAtoms[2 * i + 1] = bonds.atom2(i);
+            bondTypes[i] = bonds.type(i);
+            bondStereo[i] = bonds.stereo(i);
+        }
+    }
+
+    /**
+     * @return number of the record in the input, starting from 1
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * @return input offset of the record (in decompressed input)
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return values of properties by property name, in input order
+     */
+    public Map<String, List<String>> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @param name property name
+     * @return first value of the property, null if the record has none
+     */
+    public String getProperty(String name) {
+        List<String> values = properties.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return number of atoms
+     */
+    public int getAtomCount() {
+        return symbols.length;
+    }
+
+    /**
+     * @param atom atom counted from 0
+     * @return atom symbol
+     */
+    public String getAtomSymbol(int atom) {
+        return symbols[atom];
+    }
+
+    /**
+     * @param atom atom counted from 0
+     * @return x coordinate of the atom
+     */
+    public float getAtomX(int atom) {
+        return coordinates[3 * index(atom, symbols.length)];
+    }
+
+    /**
+     * @param atom atom counted from 0
+     * @return y coordinate of the atom
+     */
+    public float getAtomY(int atom) {
+        return coordinates[3 * index(atom, symbols.length) + 1];
+    }
+
+    /**
+     * @param atom atom counted from 0
+     * @return z coordinate of the atom
+     */
+    public float getAtomZ(int atom) {
+        return coordinates[3 * index(atom, symbols.length) + 2];
+    }
+
+    /**
+     * @return number of bonds
+     */
+    public int getBondCount() {
+        return bondTypes.length;
+    }
+
+    /**
+     * @param bond bond counted from 0
+     * @return first atom of the bond, counted from 1 as in the bond block
+     */
+    public int getBondFirstAtom(int bond) {
+        return bondAtoms[2 * index(bond, bondTypes.length)];
+    }
+
+    /**
+     * @param bond bond counted from 0
+     * @return second atom of the bond, counted from 1 as in the bond block
+     */
+    public int getBondSecondAtom(int bond) {
+        return bondAtoms[2 * index(bond, bondTypes.length) + 1];
+    }
+
+    /**
+     * @param bond bond counted from 0
+     * @return bond type (1 - single, 2 - double, 3 - triple, 4 - aromatic...)
+     */
+    public int getBondType(int bond) {
+        return bondTypes[bond];
+    }
+
+    /**
+     * @param bond bond counted from 0
+     * @return bond stereo
+     */
+    public int getBondStereo(int bond) {
+        return bondStereo[bond];
+    }
+
+    @Override
+    public String toString() {
+        return "MoleculeView{record=" + recordNumber + ", atoms=" + symbols.length + ", bonds=" + bondTypes.length
+                + ", properties=" + properties + "}";
+    }
+
+    /**
+     * Checks index of an atom or bond, so arrays of many values per item are
+     * not read past the item
+     */
+    private static int index(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    /**
+     * Removes escaping of backslashes and apostrophes added for the output
+     * formats
+     */
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+}
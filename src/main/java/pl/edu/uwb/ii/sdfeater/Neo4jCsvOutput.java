@@ -0,0 +1,386 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static pl.edu.uwb.ii.sdfeater.SDFEater.periodic_table_data;
+
+/**
+ * CSV files for neo4j-admin database import: Molecule and Atom nodes, RELATED
+ * and BOND_WITH relationships, each with its own header file. Molecule
+ * properties are not known before the whole input is read, so their columns
+ * are numbered in order of appearance and the header is written at the end
+ */
+class Neo4jCsvOutput {
+
+    /**
+     * Delimiter of array values, passed to neo4j-admin as U+001F
+     */
+    static final char ARRAY_DELIMITER = '\u001f';
+
+    /**
+     * Node and relationship files
+     */
+    final OutputSink molecules;
+    final OutputSink atoms;
+    final OutputSink related;
+    final OutputSink bonds;
+
+    /**
+     * Periodic table properties added to atoms, empty if not used
+     */
+    final List<String> periodicColumns;
+
+    /**
+     * Molecule property columns shared by all batches
+     */
+    private final Map<String, Column> columns;
+    private final List<Column> columnOrder;
+
+    /**
+     * Smallest number of property columns in a molecule row
+     */
+    private final AtomicInteger minRowColumns;
+
+    /**
+     * Output directory, null for batch buffers
+     */
+    private final Path directory;
+
+    private Neo4jCsvOutput(OutputSink molecules, OutputSink atoms, OutputSink related, OutputSink bonds,
+                           List<String> periodicColumns, Map<String, Column> columns, List<Column> columnOrder,
+                           AtomicInteger minRowColumns, Path directory) {
+        this.molecules = molecules;
+        this.atoms = atoms;
+        this.related = related;
+        this.bonds = bonds;
+        this.periodicColumns = periodicColumns;
+        this.columns = columns;
+        this.columnOrder = columnOrder;
+        this.minRowColumns = minRowColumns;
+        this.directory = directory;
+    }
+
+    /**
+     * Opens CSV files in the output directory, the directory is created if
+     * it does not exist
+     *
+     * @param directory  output directory
+     * @param bufferSize buffer size of every file in bytes
+     * @param periodic   add additional atoms data from periodic table
+     * @return output writing to the files
+     * @throws IOException if the files could not be opened
+     */
+    static Neo4jCsvOutput open(String directory, int bufferSize, boolean periodic) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        List<String> periodicColumns = new ArrayList<>();
+        if (periodic) {
+            Set<String> keys = new LinkedHashSet<>();
+            periodic_table_data.values().forEach(element -> keys.addAll(element.keySet()));
+            periodicColumns.addAll(keys);
+        }
+        return new Neo4jCsvOutput(
+                ChannelOutputSink.open(dir.resolve("molecules.csv").toString(), bufferSize),
+                ChannelOutputSink.open(dir.resolve("atoms.csv").toString(), bufferSize),
+                ChannelOutputSink.open(dir.resolve("related.csv").toString(), bufferSize),
+                ChannelOutputSink.open(dir.resolve("bonds.csv").toString(), bufferSize),
+                Collections.unmodifiableList(periodicColumns), new ConcurrentHashMap<>(),
+                Collections.synchronizedList(new ArrayList<>()), new AtomicInteger(Integer.MAX_VALUE), dir);
+    }
+
+    /**
+     * Creates output kept in memory for a batch printed by a worker thread.
+     * Columns are shared with this output
+     *
+     * @return batch output
+     */
+    Neo4jCsvOutput batch() {
+        return new Neo4jCsvOutput(new OutputSink.Buffer(), new OutputSink.Buffer(), new OutputSink.Buffer(),
+                new OutputSink.Buffer(), periodicColumns, columns, columnOrder, minRowColumns, null);
+    }
+
+    /**
+     * Writes batch output to the files
+     *
+     * @param target output writing to the files
+     */
+    void writeTo(Neo4jCsvOutput target) {
+        ((OutputSink.Buffer) molecules).writeTo(target.molecules);
+        ((OutputSink.Buffer) atoms).writeTo(target.atoms);
+        ((OutputSink.Buffer) related).writeTo(target.related);
+        ((OutputSink.Buffer) bonds).writeTo(target.bonds);
+    }
+
+    /**
+     * Writes buffered rows to the files
+     */
+    void flush() {
+        molecules.flush();
+        atoms.flush();
+        related.flush();
+        bonds.flush();
+    }
+
+    /**
+     * Finds or adds column of molecule property
+     *
+     * @param name property name
+     * @return property column
+     */
+    Column column(String name) {
+        Column column = columns.get(name);
+        if (column == null) {
+            synchronized (columnOrder) {
+                column = columns.computeIfAbsent(name, key -> new Column(key, columnOrder.size()));
+                if (column.index == columnOrder.size()) {
+                    columnOrder.add(column);
+                }
+            }
+        }
+        return column;
+    }
+
+    /**
+     * Notes number of property columns written in a molecule row
+     *
+     * @param count number of property columns
+     */
+    void rowWritten(int count) {
+        if (count < minRowColumns.get()) {
+            minRowColumns.accumulateAndGet(count, Math::min);
+        }
+    }
+
+    /**
+     * Print value of known type as CSV field
+     *
+     * @param sink   output file
+     * @param value  field value
+     * @param number true if value is number, which is not quoted
+     */
+    static void printField(OutputSink sink, String value, boolean number) {
+        if (number) {
+            sink.print(value);
+        } else {
+            sink.print('"').print(escape(value)).print('"');
+        }
+    }
+
+    /**
+     * Print values as CSV array field
+     *
+     * @param sink   output file
+     * @param values field values
+     */
+    static void printArrayField(OutputSink sink, List<String> values) {
+        sink.print('"');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                sink.print(ARRAY_DELIMITER);
+            }
+            sink.print(escape(values.get(i)));
+        }
+        sink.print('"');
+    }
+
+    /**
+     * Changes value escaped for Cypher string literals to CSV quoted field
+     * content
+     *
+     * @param value property value
+     * @return escaped value
+     */
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+            }
+            if (c == '"') {
+                escaped.append('"');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Closes the files, adds missing columns to molecule rows, writes header
+     * files and prints the neo4j-admin command that imports the files
+     *
+     * @param out output for the import command
+     * @throws IOException if the files could not be written
+     */
+    void finish(OutputSink out) throws IOException {
+        molecules.close();
+        atoms.close();
+        related.close();
+        bonds.close();
+        if (minRowColumns.get() < columnOrder.size()) {
+            padMoleculeRows();
+        }
+
+        StringBuilder header = new StringBuilder(":ID(Molecule)");
+        for (Column column : columnOrder) {
+            header.append(',').append(column.header());
+        }
+        writeHeader("molecules_header.csv", header);
+        header = new StringBuilder(":ID(Atom),symbol,x:double,y:double,z:double");
+        for (String key : periodicColumns) {
+            header.append(',').append(key).append(periodicType(key));
+        }
+        writeHeader("atoms_header.csv", header);
+        writeHeader("related_header.csv", ":START_ID(Molecule),:END_ID(Atom)");
+        writeHeader("bonds_header.csv", ":START_ID(Atom),:END_ID(Atom),type,stereo");
+
+        out.println("neo4j-admin database import full --array-delimiter=U+001F"
+                + " --nodes=Molecule=" + file("molecules_header.csv") + "," + file("molecules.csv")
+                + " --nodes=Atom=" + file("atoms_header.csv") + "," + file("atoms.csv")
+                + " --relationships=RELATED=" + file("related_header.csv") + "," + file("related.csv")
+                + " --relationships=BOND_WITH=" + file("bonds_header.csv") + "," + file("bonds.csv"));
+    }
+
+    private String file(String name) {
+        return directory.resolve(name).toString();
+    }
+
+    private void writeHeader(String name, CharSequence header) throws IOException {
+        Files.write(directory.resolve(name), (header + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Adds empty fields to molecule rows written before the last column was
+     * found
+     */
+    private void padMoleculeRows() throws IOException {
+        Path file = directory.resolve("molecules.csv");
+        Path padded = directory.resolve("molecules.csv.tmp");
+        int fieldCount = columnOrder.size() + 1;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+             OutputStream padOut = new BufferedOutputStream(Files.newOutputStream(padded), 1 << 16)) {
+            int fields = 1;
+            boolean quoted = false;
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && b == ',') {
+                    fields++;
+                } else if (!quoted && b == '\n') {
+                    for (; fields < fieldCount; fields++) {
+                        padOut.write(',');
+                    }
+                    fields = 1;
+                }
+                padOut.write(b);
+            }
+        }
+        Files.move(padded, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return neo4j-admin type of periodic table property
+     */
+    private String periodicType(String key) {
+        boolean decimal = false;
+        for (Map<String, PropertyValues> element : periodic_table_data.values()) {
+            PropertyValues value = element.get(key);
+            if (value == null) {
+                continue;
+            }
+            if (!value.isNumber(0)) {
+                return "";
+            }
+            decimal |= value.isDecimal(0);
+        }
+        return decimal ? ":double" : ":long";
+    }
+
+    /**
+     * Column of molecule property. Types of all values are noted, so the
+     * header can declare the narrowest type that fits them all
+     */
+    static class Column {
+        final String name;
+        final int index;
+        private volatile boolean text;
+        private volatile boolean decimal;
+        private volatile boolean array;
+
+        Column(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        /**
+         * Notes types of property values
+         *
+         * @param values property values
+         */
+        void update(PropertyValues values) {
+            if (values.size() > 1 && !array) {
+                array = true;
+            }
+            for (int i = 0; i < values.size() && !text; i++) {
+                if (!values.isNumber(i)) {
+                    text = true;
+                } else if (!decimal && values.isDecimal(i)) {
+                    decimal = true;
+                }
+            }
+        }
+
+        /**
+         * @return column name with neo4j-admin type
+         */
+        String header() {
+            String type = text ? "string" : decimal ? "double" : "long";
+            return name + ":" + type + (array ? "[]" : "");
+        }
+    }
+}
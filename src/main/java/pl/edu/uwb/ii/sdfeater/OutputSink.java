@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Buffered output to which all formats are printed. Text is encoded to UTF-8
+ * directly into the buffer, which is written out only when it is full or
+ * flushed explicitly at the end of a batch
+ */
+abstract class OutputSink implements Closeable {
+
+    /**
+     * Default buffer size in bytes
+     */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    /**
+     * Output buffer
+     */
+    byte[] buffer;
+
+    /**
+     * Number of bytes in the buffer
+     */
+    int count;
+
+    private OutputStream stream;
+
+    /**
+     * OutputSink class constructor
+     *
+     * @param bufferSize buffer size in bytes
+     */
+    OutputSink(int bufferSize) {
+        buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Writes bytes from the buffer to the target
+     *
+     * @param b   bytes to write
+     * @param off start offset
+     * @param len number of bytes
+     * @throws IOException if bytes could not be written
+     */
+    protected abstract void drain(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Makes room for at least given number of bytes in the buffer
+     *
+     * @param needed number of bytes
+     */
+    protected void ensureCapacity(int needed) {
+        if (buffer.length - count < needed) {
+            drainBuffer();
+        }
+    }
+
+    private void drainBuffer() {
+        try {
+            drain(buffer, 0, count);
+            count = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Print text
+     *
+     * @param s text to print
+     * @return this sink
+     */
+    OutputSink print(CharSequence s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (count == buffer.length) {
+                    ensureCapacity(1);
+                }
+                buffer[count++] = (byte) c;
+            } else {
+                ensureCapacity(4);
+                if (c < 0x800) {
+                    buffer[count++] = (byte) (0xc0 | c >> 6);
+                    buffer[count++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer[count++] = (byte) (0xf0 | cp >> 18);
+                    buffer[count++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                    buffer[count++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                    buffer[count++] = (byte) (0x80 | cp & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    buffer[count++] = '?';
+                } else {
+                    buffer[count++] = (byte) (0xe0 | c >> 12);
+                    buffer[count++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    buffer[count++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Print character
+     *
+     * @param c character to print
+     * @return this sink
+     */
+    OutputSink print(char c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            buffer[count++] = (byte) c;
+            return this;
+        }
+        return print(String.valueOf(c));
+    }
+
+    /**
+     * Print number
+     *
+     * @param i number to print
+     * @return this sink
+     */
+    OutputSink print(int i) {
+        return print(Integer.toString(i));
+    }
+
+    /**
+     * Print line separator
+     *
+     * @return this sink
+     */
+    OutputSink println() {
+        return print(NEWLINE);
+    }
+
+    /**
+     * Print text and line separator
+     *
+     * @param s text to print
+     * @return this sink
+     */
+    OutputSink println(CharSequence s) {
+        return print(s).print(NEWLINE);
+    }
+
+    /**
+     * Print character and line separator
+     *
+     * @param c character to print
+     * @return this sink
+     */
+    OutputSink println(char c) {
+        return print(c).print(NEWLINE);
+    }
+
+    /**
+     * Write encoded bytes
+     *
+     * @param b   bytes to write
+     * @param off start offset
+     * @param len number of bytes
+     */
+    void write(byte[] b, int off, int len) {
+        if (len > buffer.length - count) {
+            ensureCapacity(len);
+            if (len > buffer.length - count) {
+                // larger than the whole buffer
+                try {
+                    drain(b, off, len);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes buffered bytes to the target
+     */
+    void flush() {
+        if (count > 0) {
+            drainBuffer();
+        }
+    }
+
+    /**
+     * Writes all bytes, including the buffered ones, to the file and forces
+     * them to the storage device. Used before a checkpoint is saved
+     *
+     * @return file length, -1 if not known
+     * @throws IOException if bytes could not be written
+     */
+    long sync() throws IOException {
+        flush();
+        return -1;
+    }
+
+    /**
+     * Output stream view of this sink for libraries that write bytes (Jena)
+     *
+     * @return output stream writing to this sink
+     */
+    OutputStream asOutputStream() {
+        if (stream == null) {
+            stream = new OutputStream() {
+                @Override
+                public void write(int b) {
+                    ensureCapacity(1);
+                    buffer[count++] = (byte) b;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    OutputSink.this.write(b, off, len);
+                }
+            };
+        }
+        return stream;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Output kept in memory, used for batches printed by worker threads
+     */
+    static class Buffer extends OutputSink {
+
+        Buffer() {
+            super(8192);
+        }
+
+        @Override
+        protected void ensureCapacity(int needed) {
+            if (buffer.length - count < needed) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + needed));
+            }
+        }
+
+        @Override
+        protected void drain(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        void flush() {
+        }
+
+        /**
+         * Writes buffered bytes to another sink
+         *
+         * @param out target sink
+         */
+        void writeTo(OutputSink out) {
+            out.write(buffer, 0, count);
+        }
+    }
+}
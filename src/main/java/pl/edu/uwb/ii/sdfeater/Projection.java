@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import static pl.edu.uwb.ii.sdfeater.SDFEater.propertyMapping;
+
+/**
+ * Parts of a record used by an output format. The parser skips atom and
+ * bond lines and values of properties that the format does not print, so
+ * they are neither tokenized nor decoded
+ */
+final class Projection {
+
+    /**
+     * Kinds of property selection
+     */
+    private static final int ALL_PROPERTIES = 0;
+    private static final int SCHEMA_PROPERTIES = 1;
+    private static final int CVME_PROPERTIES = 2;
+    private static final int SMILES_PROPERTY = 3;
+    private static final int INCHI_PROPERTY = 4;
+
+    /**
+     * Whole record
+     */
+    static final Projection ALL = new Projection(true, true, ALL_PROPERTIES);
+
+    /**
+     * Atom block is used
+     */
+    final boolean atoms;
+
+    /**
+     * Bond block is used
+     */
+    final boolean bonds;
+
+    private final int properties;
+
+    private Projection(boolean atoms, boolean bonds, int properties) {
+        this.atoms = atoms;
+        this.bonds = bonds;
+        this.properties = properties;
+    }
+
+    /**
+     * Parts of a record used by the output format
+     *
+     * @param format output format
+     * @return projection of the format
+     */
+    static Projection of(char format) {
+        switch (format) {
+            // Cypher and neo4j-admin import use the whole record
+            case 'c':
+            case 'q':
+            case 'b':
+                return ALL;
+            case 'r':
+                return new Projection(true, true, CVME_PROPERTIES);
+            case 's':
+                return new Projection(false, false, SMILES_PROPERTY);
+            case 'i':
+                return new Projection(false, false, INCHI_PROPERTY);
+            // RDF formats, RDFa and Microdata
+            case 't':
+            case 'n':
+            case 'h':
+            case 'j':
+            case 'd':
+            case 'x':
+            case 'a':
+            case 'm':
+                return new Projection(false, false, SCHEMA_PROPERTIES);
+            default:
+                return ALL;
+        }
+    }
+
+    /**
+     * Checks if values of the property are used
+     *
+     * @param name SDF property name as read from the input
+     * @return true if the property values must be parsed
+     */
+    boolean property(String name) {
+        switch (properties) {
+            case SMILES_PROPERTY:
+                return name.equals("SMILES");
+            case INCHI_PROPERTY:
+                return name.equals("InChI");
+            case SCHEMA_PROPERTIES:
+                return isIdSource(name) || propertyMapping.get(name).schema != null;
+            case CVME_PROPERTIES:
+                return isIdSource(name) || propertyMapping.get(name).cvme != null || isPubChem(name);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Properties used by the hash molecule identifier strategy
+     */
+    private static boolean isIdSource(String name) {
+        return name.equals("InChIKey") || name.equals("INCHI_KEY");
+    }
+
+    /**
+     * PubChem links are renamed to molecule and substance links when they are
+     * written as URLs
+     */
+    private static boolean isPubChem(String name) {
+        return name.equals("PubChem Database Links")
+                && (propertyMapping.get("PubChem Database Molecule Links").cvme != null
+                || propertyMapping.get("PubChem Database Substance Links").cvme != null);
+    }
+}
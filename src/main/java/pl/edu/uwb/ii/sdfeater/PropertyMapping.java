@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.ResourceFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps SDF property names to schema.org properties (RDF formats, RDFa,
+ * Microdata), CVME predicates and Cypher property names. Mapping is loaded
+ * once from property_mapping.json and, optionally, from a user file whose
+ * entries replace the built-in ones with the same name. Renderers find
+ * everything they need about a property with a single lookup
+ */
+class PropertyMapping {
+
+    /**
+     * schema.org namespace
+     */
+    static final String SCHEMA = "https://schema.org/";
+
+    /**
+     * Output names of a single SDF property
+     */
+    static final class Entry {
+
+        /**
+         * schema.org property and its local name, null if the property is not
+         * used in RDF formats, RDFa and Microdata
+         */
+        final Property schema;
+        final String schemaName;
+
+        /**
+         * CVME predicate, null if the property is not used in CVME
+         */
+        final String cvme;
+
+        /**
+         * Text written after every CVME value (language tag or datatype)
+         */
+        final String cvmeSuffix;
+
+        /**
+         * Write all values in CVME, not only the first one
+         */
+        final boolean cvmeAll;
+
+        /**
+         * Property name in Cypher and neo4j-admin import formats
+         */
+        final String cypher;
+
+        private Entry(String schemaName, String cvme, String cvmeSuffix, boolean cvmeAll, String cypher) {
+            this.schema = schemaName != null ? ResourceFactory.createProperty(SCHEMA, schemaName) : null;
+            this.schemaName = schemaName;
+            this.cvme = cvme;
+            this.cvmeSuffix = cvmeSuffix != null ? cvmeSuffix : "";
+            this.cvmeAll = cvmeAll;
+            this.cypher = cypher;
+        }
+    }
+
+    /**
+     * Entry of the JSON file
+     */
+    private static final class Definition {
+        String schema;
+        String cvme;
+        String cvmeSuffix;
+        boolean cvmeAll;
+        String cypher;
+    }
+
+    /**
+     * Entries by property name. Properties without a definition are added
+     * when they are seen for the first time
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Loads built-in mapping and mapping from the user file
+     *
+     * @param filename user mapping file path, null for built-in mapping only
+     * @return property mapping
+     * @throws IOException if the file could not be read or is not valid
+     */
+    static PropertyMapping load(String filename) throws IOException {
+        PropertyMapping mapping = new PropertyMapping();
+        try (InputStream resource = PropertyMapping.class.getResourceAsStream("property_mapping.json")) {
+            mapping.add(new InputStreamReader(resource, StandardCharsets.UTF_8));
+        }
+        if (filename != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+                mapping.add(reader);
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Adds definitions from JSON, replacing previous ones with the same name
+     *
+     * @param reader JSON object of definitions by property name
+     * @throws IOException if JSON is not valid
+     */
+    private void add(Reader reader) throws IOException {
+        Gson gson = new GsonBuilder().create();
+        Type type = new TypeToken<Map<String, Definition>>() {
+        }.getType();
+        Map<String, Definition> definitions;
+        try {
+            definitions = gson.fromJson(reader, type);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid property mapping: " + e.getMessage(), e);
+        }
+        if (definitions == null) {
+            return;
+        }
+        for (Map.Entry<String, Definition> definition : definitions.entrySet()) {
+            String name = definition.getKey();
+            Definition d = definition.getValue();
+            entries.put(name, new Entry(d.schema, d.cvme, d.cvmeSuffix, d.cvmeAll,
+                    d.cypher != null ? d.cypher : cypherName(name)));
+        }
+    }
+
+    /**
+     * Gets output names of the property
+     *
+     * @param name SDF property name
+     * @return entry, never null
+     */
+    Entry get(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(name, n -> new Entry(null, null, null, false, cypherName(n)));
+        }
+        return entry;
+    }
+
+    /**
+     * Default Cypher property name
+     *
+     * @param name SDF property name
+     * @return property name without whitespace and dashes
+     */
+    private static String cypherName(String name) {
+        StringBuilder cypher = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '-' && c != ' ' && (c < '\t' || c > '\r')) {
+                cypher.append(c);
+            }
+        }
+        return cypher.toString();
+    }
+}
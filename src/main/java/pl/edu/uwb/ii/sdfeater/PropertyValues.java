@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * List of property values that keeps values as input bytes and decodes them
+ * only when they are read. Number types are found once, when the value is
+ * added, so the output formats do not check them again. Values that may be
+ * URLs are checked only when their type is read, by the formats that write
+ * URLs
+ */
+class PropertyValues extends AbstractList<String> {
+
+    /**
+     * Value types
+     */
+    static final byte STRING = 0;
+    static final byte INTEGER = 1;
+    static final byte DECIMAL = 2;
+    static final byte URL = 3;
+
+    /**
+     * Type of value starting with URL scheme, not checked yet
+     */
+    private static final byte URL_CANDIDATE = 4;
+
+    /**
+     * URL schemes of values checked as URLs
+     */
+    private static final String[] SCHEMES = {"http://", "https://", "ftp://", "file://"};
+
+    /**
+     * Input bytes of not decoded values
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Decoded values, null if not decoded yet
+     */
+    private String[] values = new String[1];
+
+    /**
+     * Start and end of not decoded values in the buffer
+     */
+    private int[] bounds = new int[2];
+
+    /**
+     * Types of values
+     */
+    private byte[] types = new byte[1];
+
+    private int size;
+
+    /**
+     * Add value as input bytes
+     *
+     * @param buf   input bytes
+     * @param start value start
+     * @param end   value end
+     */
+    void add(ByteBuffer buf, int start, int end) {
+        if (buffer != null && buffer != buf) {
+            // values from another buffer are decoded at once
+            add(Bytes.decode(buf, start, end));
+            return;
+        }
+        buffer = buf;
+        grow();
+        bounds[2 * size] = start;
+        bounds[2 * size + 1] = end;
+        byte type = numberType(buf, start, end);
+        types[size] = type == STRING && isURLCandidate(buf, start, end) ? URL_CANDIDATE : type;
+        size++;
+    }
+
+    @Override
+    public boolean add(String value) {
+        grow();
+        values[size] = value;
+        byte type = numberType(value);
+        types[size] = type == STRING && isURLCandidate(value) ? URL_CANDIDATE : type;
+        size++;
+        return true;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        String value = values[index];
+        if (value == null) {
+            value = Bytes.decode(buffer, bounds[2 * index], bounds[2 * index + 1]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Type of value. Value starting with URL scheme is checked as URL the
+     * first time its type is read
+     *
+     * @param index value index
+     * @return value type (STRING, INTEGER, DECIMAL or URL)
+     */
+    byte type(int index) {
+        byte type = numberType(index);
+        if (type == URL_CANDIDATE) {
+            type = isURL(get(index)) ? URL : STRING;
+            types[index] = type;
+        }
+        return type;
+    }
+
+    /**
+     * @param index value index
+     * @return true if value is integer or decimal number
+     */
+    boolean isNumber(int index) {
+        byte type = numberType(index);
+        return type == INTEGER || type == DECIMAL;
+    }
+
+    /**
+     * @param index value index
+     * @return true if value is decimal number
+     */
+    boolean isDecimal(int index) {
+        return numberType(index) == DECIMAL;
+    }
+
+    /**
+     * Type of value found when it was added, without checking URLs
+     */
+    private byte numberType(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return types[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            bounds = Arrays.copyOf(bounds, size * 4);
+            types = Arrays.copyOf(types, size * 2);
+        }
+    }
+
+    /**
+     * @param value decoded value
+     * @return true if value is integer or decimal number
+     */
+    static boolean isNumber(String value) {
+        return numberType(value) != STRING;
+    }
+
+    /**
+     * Type of decoded value that is a number or string, the same as
+     * -?\d+(\.\d+)?
+     */
+    private static byte numberType(String value) {
+        int i = 0;
+        int length = value.length();
+        if (i < length && value.charAt(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            i++;
+        }
+        if (i > digits) {
+            if (i == length) {
+                return INTEGER;
+            }
+            if (value.charAt(i) == '.' && ++i < length) {
+                while (i < length && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+                    i++;
+                }
+                if (i == length) {
+                    return DECIMAL;
+                }
+            }
+        }
+        return STRING;
+    }
+
+    /**
+     * Type of value that is a number or string, the same as -?\d+(\.\d+)?
+     * matched on the decoded value
+     */
+    private static byte numberType(ByteBuffer buf, int start, int end) {
+        int i = start;
+        if (i < end && buf.get(i) == '-') {
+            i++;
+        }
+        int digits = i;
+        while (i < end && buf.get(i) >= '0' && buf.get(i) <= '9') {
+            i++;
+        }
+        if (i == digits) {
+            return STRING;
+        }
+        if (i == end) {
+            return INTEGER;
+        }
+        if (buf.get(i) != '.' || ++i == end) {
+            return STRING;
+        }
+        while (i < end && buf.get(i) >= '0' && buf.get(i) <= '9') {
+            i++;
+        }
+        return i == end ? DECIMAL : STRING;
+    }
+
+    /**
+     * Detect value starting with one of the URL schemes
+     */
+    private static boolean isURLCandidate(ByteBuffer buf, int start, int end) {
+        for (String scheme : SCHEMES) {
+            if (Bytes.matches(buf, start, end, scheme)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isURLCandidate(String value) {
+        for (String scheme : SCHEMES) {
+            if (value.startsWith(scheme)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isURL(String s) {
+        try {
+            new java.net.URL(s).toURI();
+        } catch (MalformedURLException | URISyntaxException exception) {
+            return false;
+        }
+        return true;
+    }
+}
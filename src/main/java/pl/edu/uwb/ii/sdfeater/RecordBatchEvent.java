@@ -1,7 +1,8 @@
 /*
  * The MIT License
  *
- * Copyright 2017 Łukasz Szeremeta.
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -23,36 +24,46 @@
  */
 package pl.edu.uwb.ii.sdfeater;
 
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
 /**
- * Bonds data
- *
- * @author Łukasz Szeremeta 2017
+ * JFR event of a parsed and rendered batch of records. Events are recorded
+ * only by a running flight recording (e.g. -XX:StartFlightRecording), stage
+ * times and allocations are set only with the --stats option
  */
-class Bond {
-
-    final int atom1;
-    final byte type;
-    final int atom2;
-    final byte stereo;
-
-    /**
-     * Bond class constructor
-     *
-     * @param atom1 first atom id
-     * @param type bond type
-     * @param atom2 second atom id
-     * @param stereo bond stereo
-     *
-     */
-    Bond(int atom1, byte type, int atom2, byte stereo) {
-        this.atom1 = atom1;
-        this.type = type;
-        this.atom2 = atom2;
-        this.stereo = stereo;
-    }
-
-    @Override
-    public String toString() {
-        return "(" + atom1 + ")--" + type + "--(" + atom2 + ")";
-    }
+@Name("pl.edu.uwb.ii.sdfeater.RecordBatch")
+@Label("Record Batch")
+@Category("SDFEater")
+@Description("Batch of SDF records parsed and rendered by one thread")
+@StackTrace(false)
+class RecordBatchEvent extends jdk.jfr.Event {
+
+    @Label("First Record")
+    @Description("Number of records in the input before the batch")
+    long firstRecord;
+
+    @Label("Records")
+    long records;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Tokenize Time")
+    @Timespan
+    long tokenize;
+
+    @Label("Render Time")
+    @Timespan
+    long render;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
 }
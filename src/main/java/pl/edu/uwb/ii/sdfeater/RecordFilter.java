@@ -0,0 +1,572 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Filter of records given with the --filter option, e.g.
+ * {@code Mass > 300 AND has(InChIKey)} or {@code Formulae contains 'Cl'}.
+ * Expression is compiled once and shared by all threads. Every thread
+ * checks records with its own {@link Matcher}, which reads only the counts
+ * line and values of the properties used in the expression straight from
+ * the input bytes, so rejected records are not parsed or rendered at all
+ */
+class RecordFilter {
+
+    /**
+     * Operand of the counts line instead of a property
+     */
+    private static final int ATOMS = -1;
+    private static final int BONDS = -2;
+
+    /**
+     * Condition of the expression
+     */
+    private interface Node {
+        boolean test(Matcher matcher);
+    }
+
+    /**
+     * Root condition
+     */
+    private final Node root;
+
+    /**
+     * Names of properties used in the expression, as UTF-8 bytes
+     */
+    private final byte[][] names;
+
+    /**
+     * True if atom or bond count is used in the expression
+     */
+    private final boolean counts;
+
+    private RecordFilter(Node root, List<String> names, boolean counts) {
+        this.root = root;
+        this.names = new byte[names.size()][];
+        for (int i = 0; i < this.names.length; i++) {
+            this.names[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        this.counts = counts;
+    }
+
+    /**
+     * Compiles filter expression
+     *
+     * @param expression filter expression
+     * @return compiled filter
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    static RecordFilter compile(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.or();
+        parser.skipSpaces();
+        if (parser.pos < expression.length()) {
+            throw parser.error("unexpected '" + expression.substring(parser.pos) + "'");
+        }
+        return new RecordFilter(root, parser.names, parser.counts);
+    }
+
+    /**
+     * @return new matcher, used by a single thread
+     */
+    Matcher matcher() {
+        return new Matcher();
+    }
+
+    /**
+     * Checks records of a single thread. Keeps input byte ranges of the used
+     * property values of the last scanned record
+     */
+    final class Matcher {
+
+        /**
+         * Value ranges (start, end) and decoded values of every used property
+         */
+        private final int[][] bounds = new int[names.length][2];
+        private final String[][] values = new String[names.length][1];
+        private final int[] sizes = new int[names.length];
+
+        private final CTFileParser ctFileParser = new CTFileParser();
+
+        private ByteBuffer buf;
+
+        /**
+         * Atom and bond counts of the record, -1 if not found
+         */
+        private int atoms;
+        private int bonds;
+
+        private boolean matches;
+        private boolean ended;
+
+        private Matcher() {
+        }
+
+        /**
+         * Reads record that starts the input bytes and checks it
+         *
+         * @param buf   input bytes
+         * @param start record start
+         * @param limit input end
+         * @return position after the $$$$ line of the record or limit if the
+         * record has no $$$$ line
+         */
+        int scan(ByteBuffer buf, int start, int limit) {
+            this.buf = buf;
+            Arrays.fill(sizes, 0);
+            atoms = -1;
+            bonds = -1;
+            ended = false;
+            boolean molfile = true;
+            boolean countsFound = !counts;
+            int line = 0;
+            int property = -1;
+            int lineStart = start;
+            while (lineStart < limit) {
+                int lineEnd = Bytes.lineEnd(buf, lineStart, limit);
+                int next = Bytes.nextLine(buf, lineEnd, limit);
+                int trimmedStart = Bytes.trimStart(buf, lineStart, lineEnd);
+                if (Bytes.matches(buf, trimmedStart, lineEnd, "$$$$")) {
+                    ended = true;
+                    matches = root.test(this);
+                    return next;
+                }
+                if (molfile) {
+                    if (!countsFound && line >= 3 && ctFileParser.isCountsLine(buf, lineStart, lineEnd)) {
+                        countsFound = true;
+                        try {
+                            atoms = ctFileParser.atomCount(buf, lineStart, lineEnd);
+                            bonds = ctFileParser.bondCount(buf, lineStart, lineEnd);
+                        } catch (NumberFormatException e) {
+                            atoms = -1;
+                            bonds = -1;
+                        }
+                    }
+                    if (line >= 3 && Bytes.matches(buf, trimmedStart, lineEnd, "M  END")) {
+                        molfile = false;
+                    }
+                    line++;
+                } else {
+                    int end = Bytes.trimEnd(buf, trimmedStart, lineEnd);
+                    if (RecordParser.isPropertyName(buf, trimmedStart, end)) {
+                        property = property(trimmedStart, end);
+                    } else if (trimmedStart < end && property >= 0) {
+                        add(property, trimmedStart, end);
+                    }
+                }
+                lineStart = next;
+            }
+            matches = root.test(this);
+            return limit;
+        }
+
+        /**
+         * @return true if the last scanned record matches the expression
+         */
+        boolean matches() {
+            return matches;
+        }
+
+        /**
+         * @return true if the last scanned record has its $$$$ line
+         */
+        boolean ended() {
+            return ended;
+        }
+
+        /**
+         * Finds property of the header line, the same name as in
+         * RecordParser
+         *
+         * @return index of the used property, -1 if it is not used
+         */
+        private int property(int start, int end) {
+            int nameStart = Bytes.indexOf(buf, (byte) '<', start, end) + 1;
+            int nameEnd = Bytes.indexOf(buf, (byte) '<', nameStart, end);
+            if (nameEnd < 0) {
+                nameEnd = end;
+            }
+            nameEnd--;
+            for (int i = 0; i < names.length; i++) {
+                byte[] name = names[i];
+                if (name.length == nameEnd - nameStart) {
+                    int j = 0;
+                    while (j < name.length && name[j] == buf.get(nameStart + j)) {
+                        j++;
+                    }
+                    if (j == name.length) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private void add(int property, int start, int end) {
+            int size = sizes[property];
+            if (size == values[property].length) {
+                values[property] = Arrays.copyOf(values[property], size * 2);
+                bounds[property] = Arrays.copyOf(bounds[property], size * 4);
+            }
+            values[property][size] = null;
+            bounds[property][2 * size] = start;
+            bounds[property][2 * size + 1] = end;
+            sizes[property] = size + 1;
+        }
+
+        private String value(int property, int index) {
+            String value = values[property][index];
+            if (value == null) {
+                // compared with literals as it is in the file, not escaped for the output
+                value = Bytes.decodeRaw(buf, bounds[property][2 * index], bounds[property][2 * index + 1]);
+                values[property][index] = value;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Comparison of a property value or count with a literal. Property
+     * matches if any of its values matches, a missing property never matches
+     */
+    private static final class Comparison implements Node {
+
+        private final int operand;
+        private final String operator;
+        private final String text;
+        private final double number;
+        private final Pattern pattern;
+
+        Comparison(int operand, String operator, String text, double number, Pattern pattern) {
+            this.operand = operand;
+            this.operator = operator;
+            this.text = text;
+            this.number = number;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(Matcher matcher) {
+            if (operand < 0) {
+                int count = operand == ATOMS ? matcher.atoms : matcher.bonds;
+                return count >= 0 && compare(Double.compare(count, number));
+            }
+            for (int i = 0; i < matcher.sizes[operand]; i++) {
+                if (test(matcher.value(operand, i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean test(String value) {
+            switch (operator) {
+                case "contains":
+                    return value.contains(text);
+                case "matches":
+                    return pattern.matcher(value).find();
+                default:
+                    if (Double.isNaN(number)) {
+                        return compare(value.compareTo(text));
+                    }
+                    try {
+                        return compare(Double.compare(Double.parseDouble(value), number));
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+            }
+        }
+
+        private boolean compare(int result) {
+            switch (operator) {
+                case "=":
+                    return result == 0;
+                case "!=":
+                    return result != 0;
+                case "<":
+                    return result < 0;
+                case "<=":
+                    return result <= 0;
+                case ">":
+                    return result > 0;
+                default:
+                    return result >= 0;
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser of the expression:
+     * <pre>
+     * or         = and { OR and }
+     * and        = not { AND not }
+     * not        = NOT not | ( or ) | HAS ( name ) | comparison
+     * comparison = ( name | ATOMS | BONDS ) operator literal
+     * operator   = = | == | != | &lt;&gt; | &lt; | &lt;= | &gt; | &gt;= | CONTAINS | MATCHES
+     * name       = identifier | "quoted name"
+     * literal    = number | 'quoted text'
+     * </pre>
+     * Keywords are case insensitive
+     */
+    private static final class Parser {
+
+        private final String expression;
+        private int pos;
+
+        /**
+         * Used property names, in order of their indexes
+         */
+        private final List<String> names = new ArrayList<>();
+
+        private boolean counts;
+
+        Parser(String expression) {
+            this.expression = expression;
+        }
+
+        Node or() {
+            Node left = and();
+            while (keyword("or")) {
+                Node l = left;
+                Node r = and();
+                left = m -> l.test(m) || r.test(m);
+            }
+            return left;
+        }
+
+        private Node and() {
+            Node left = not();
+            while (keyword("and")) {
+                Node l = left;
+                Node r = not();
+                left = m -> l.test(m) && r.test(m);
+            }
+            return left;
+        }
+
+        private Node not() {
+            if (keyword("not")) {
+                Node node = not();
+                return m -> !node.test(m);
+            }
+            if (symbol("(")) {
+                Node node = or();
+                expect(")");
+                return node;
+            }
+            int start = pos;
+            if (keyword("has")) {
+                if (symbol("(")) {
+                    int property = property(name());
+                    expect(")");
+                    return m -> m.sizes[property] > 0;
+                }
+                pos = start;
+            }
+            return comparison();
+        }
+
+        private Node comparison() {
+            skipSpaces();
+            int operand;
+            if (peek() != '"' && keyword("atoms")) {
+                operand = ATOMS;
+                counts = true;
+            } else if (peek() != '"' && keyword("bonds")) {
+                operand = BONDS;
+                counts = true;
+            } else {
+                operand = property(name());
+            }
+            String operator = operator();
+            skipSpaces();
+            int literalStart = pos;
+            String text;
+            double number = Double.NaN;
+            if (peek() == '\'') {
+                text = quoted('\'');
+            } else {
+                while (pos < expression.length() && (Character.isDigit(peek()) || peek() == '-' || peek() == '.'
+                        || peek() == '+' || peek() == 'e' || peek() == 'E')) {
+                    pos++;
+                }
+                text = expression.substring(literalStart, pos);
+                try {
+                    number = Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    pos = literalStart;
+                    throw error("number or quoted text expected");
+                }
+            }
+            Pattern pattern = null;
+            if (operator.equals("contains") || operator.equals("matches")) {
+                if (operand < 0) {
+                    throw error("atoms and bonds can only be compared with a number");
+                }
+                if (operator.equals("matches")) {
+                    try {
+                        pattern = Pattern.compile(text);
+                    } catch (PatternSyntaxException e) {
+                        throw error("invalid regular expression " + e.getDescription());
+                    }
+                }
+                number = Double.NaN;
+            } else if (operand < 0 && Double.isNaN(number)) {
+                throw error("atoms and bonds can only be compared with a number");
+            }
+            return new Comparison(operand, operator, text, number, pattern);
+        }
+
+        private String operator() {
+            skipSpaces();
+            String[] symbols = {"==", "!=", "<>", "<=", ">=", "=", "<", ">"};
+            for (String symbol : symbols) {
+                if (expression.startsWith(symbol, pos)) {
+                    pos += symbol.length();
+                    switch (symbol) {
+                        case "==":
+                            return "=";
+                        case "<>":
+                            return "!=";
+                        default:
+                            return symbol;
+                    }
+                }
+            }
+            if (keyword("contains")) {
+                return "contains";
+            }
+            if (keyword("matches")) {
+                return "matches";
+            }
+            throw error("comparison operator expected");
+        }
+
+        /**
+         * Property name, bare or in double quotes
+         */
+        private String name() {
+            skipSpaces();
+            if (peek() == '"') {
+                return quoted('"');
+            }
+            int start = pos;
+            while (pos < expression.length() && isNameChar(peek())) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("property name expected");
+            }
+            return expression.substring(start, pos);
+        }
+
+        /**
+         * Text in quotes, a quote inside is written twice
+         */
+        private String quoted(char quote) {
+            int start = pos;
+            StringBuilder text = new StringBuilder();
+            pos++;
+            while (true) {
+                if (pos >= expression.length()) {
+                    pos = start;
+                    throw error("unterminated " + quote);
+                }
+                char c = expression.charAt(pos++);
+                if (c == quote) {
+                    if (peek() != quote) {
+                        return text.toString();
+                    }
+                    pos++;
+                }
+                text.append(c);
+            }
+        }
+
+        private int property(String name) {
+            int index = names.indexOf(name);
+            if (index < 0) {
+                index = names.size();
+                names.add(name);
+            }
+            return index;
+        }
+
+        /**
+         * Reads keyword if it is the next word
+         */
+        private boolean keyword(String keyword) {
+            skipSpaces();
+            int end = pos + keyword.length();
+            if (expression.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end == expression.length() || !isNameChar(expression.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean symbol(String symbol) {
+            skipSpaces();
+            if (expression.startsWith(symbol, pos)) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String symbol) {
+            if (!symbol(symbol)) {
+                throw error("'" + symbol + "' expected");
+            }
+        }
+
+        void skipSpaces() {
+            while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return pos < expression.length() ? expression.charAt(pos) : 0;
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid filter at position " + (pos + 1) + ": " + message);
+        }
+    }
+}
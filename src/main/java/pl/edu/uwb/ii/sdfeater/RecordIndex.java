@@ -0,0 +1,482 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sidecar index of an uncompressed SDF file. The index has the byte offset
+ * and length of every record and hashes of values of key properties (IDs,
+ * InChIKey), so single records can be found and read without scanning the
+ * whole file.
+ * <p>
+ * Layout: magic, input size and modification time, key property names,
+ * records table (offset and length of every record, 12 bytes each), sorted
+ * key table (8 bytes each: high bits of the value hash and the record
+ * number) and trailer with the number of records, number of keys and the
+ * records table offset. Hashes are shortened, so records found by a key are
+ * checked against the key value
+ */
+class RecordIndex implements Closeable {
+
+    /**
+     * Key properties indexed by default
+     */
+    static final List<String> DEFAULT_KEYS = Arrays.asList("ChEBI ID", "DRUGBANK_ID", "InChIKey", "INCHI_KEY");
+
+    /**
+     * File name extension of the index
+     */
+    static final String EXTENSION = ".idx";
+
+    private static final byte[] MAGIC = "SDFEIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Bits of the key table entry used by the record number
+     */
+    private static final int ORDINAL_BITS = 31;
+
+    private static final int RECORD_ENTRY = 12;
+
+    private static final int TRAILER = 24;
+
+    private final FileChannel channel;
+    private final List<byte[]> keys;
+    private final long records;
+    private final long keyEntries;
+    private final long recordsOffset;
+
+    private RecordIndex(FileChannel channel, List<byte[]> keys, long records, long keyEntries, long recordsOffset) {
+        this.channel = channel;
+        this.keys = keys;
+        this.records = records;
+        this.keyEntries = keyEntries;
+        this.recordsOffset = recordsOffset;
+    }
+
+    /**
+     * Writes index of the input file. The index is written to a temporary
+     * file first and moved to its path when it is complete, so a failed run
+     * leaves no broken index
+     *
+     * @param input     uncompressed SDF file
+     * @param indexFile index file path
+     * @param keyNames  names of key properties
+     * @return number of indexed records
+     * @throws IOException if the input is compressed or the files could not
+     *                     be read or written
+     */
+    static long build(String input, String indexFile, List<String> keyNames) throws IOException {
+        List<byte[]> keys = encode(keyNames);
+        Path inputPath = Paths.get(input);
+        long records = 0;
+        long[] keyTable = new long[1024];
+        int keyEntries = 0;
+        Path indexPath = Paths.get(indexFile);
+        Path temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (RecordReader reader = RecordReader.open(input, 1)) {
+            if (!(reader instanceof MappedRecordReader)) {
+                throw new IOException("Only uncompressed files can be indexed");
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.write(MAGIC);
+                out.writeLong(Files.size(inputPath));
+                out.writeLong(Files.getLastModifiedTime(inputPath).toMillis());
+                out.writeInt(keyNames.size());
+                for (byte[] key : keys) {
+                    out.writeUTF(new String(key, StandardCharsets.UTF_8));
+                }
+                long recordsOffset = out.size();
+                ByteBuffer batch;
+                while ((batch = reader.nextBatch(RecordPipeline.BATCH_RECORDS)) != null) {
+                    long batchOffset = reader.batchOffset();
+                    int limit = batch.limit();
+                    int recordStart = 0;
+                    int lineStart = 0;
+                    boolean keyLine = false;
+                    while (lineStart < limit) {
+                        int lineEnd = Bytes.lineEnd(batch, lineStart, limit);
+                        int next = Bytes.nextLine(batch, lineEnd, limit);
+                        int s = Bytes.trimStart(batch, lineStart, lineEnd);
+                        if (Bytes.matches(batch, s, lineEnd, "$$$$")) {
+                            int end = Math.min(next, limit);
+                            if (++records > (1L << ORDINAL_BITS) - 1) {
+                                throw new IOException("Too many records to index");
+                            }
+                            out.writeLong(batchOffset + recordStart);
+                            out.writeInt(end - recordStart);
+                            recordStart = end;
+                        } else if (keyLine) {
+                            // first value of the key property
+                            if (s < lineEnd) {
+                                if (keyEntries == keyTable.length) {
+                                    keyTable = Arrays.copyOf(keyTable, keyEntries * 2);
+                                }
+                                keyTable[keyEntries++] = entry(hash(batch, s, Bytes.trimEnd(batch, s, lineEnd)), records + 1);
+                            }
+                            keyLine = false;
+                        } else if (keyIndex(keys, batch, s, lineEnd) >= 0) {
+                            keyLine = true;
+                        }
+                        lineStart = next;
+                    }
+                }
+                Arrays.parallelSort(keyTable, 0, keyEntries);
+                for (int i = 0; i < keyEntries; i++) {
+                    out.writeLong(keyTable[i]);
+                }
+                out.writeLong(records);
+                out.writeLong(keyEntries);
+                out.writeLong(recordsOffset);
+            }
+            Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return records;
+    }
+
+    /**
+     * Opens index of the input file
+     *
+     * @param indexFile index file path
+     * @param input     indexed SDF file
+     * @return index
+     * @throws IOException if the index could not be read, is not valid or
+     *                     is older than the input
+     */
+    static RecordIndex open(String indexFile, String input) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(indexFile), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 20);
+            read(channel, header, 0);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not an SDFEater index: " + indexFile);
+            }
+            Path inputPath = Paths.get(input);
+            if (header.getLong() != Files.size(inputPath) || header.getLong() != Files.getLastModifiedTime(inputPath).toMillis()) {
+                throw new IOException("Index " + indexFile + " is out of date, write it again with -f index");
+            }
+            int keyCount = header.getInt();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+            read(channel, trailer, channel.size() - TRAILER);
+            long records = trailer.getLong();
+            long keyEntries = trailer.getLong();
+            long recordsOffset = trailer.getLong();
+            ByteBuffer names = ByteBuffer.allocate((int) (recordsOffset - header.limit()));
+            read(channel, names, header.limit());
+            List<String> keyNames = new ArrayList<>(keyCount);
+            for (int i = 0; i < keyCount; i++) {
+                int length = names.getShort() & 0xffff;
+                keyNames.add(StandardCharsets.UTF_8.decode(names.slice().limit(length)).toString());
+                names.position(names.position() + length);
+            }
+            return new RecordIndex(channel, encode(keyNames), records, keyEntries, recordsOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of indexed records
+     */
+    long records() {
+        return records;
+    }
+
+    /**
+     * Input offset of the record
+     *
+     * @param record record number, starting from 1
+     * @return byte offset
+     * @throws IOException if the index could not be read
+     */
+    long offset(long record) throws IOException {
+        return recordEntry(record).getLong(0);
+    }
+
+    /**
+     * Length of the record, including its $$$$ line
+     *
+     * @param record record number, starting from 1
+     * @return length in bytes
+     * @throws IOException if the index could not be read
+     */
+    int length(long record) throws IOException {
+        return recordEntry(record).getInt(8);
+    }
+
+    /**
+     * Finds records with the key property value
+     *
+     * @param value value of any key property
+     * @param input channel of the indexed file, used to check the records
+     * @return record numbers in input order
+     * @throws IOException if the files could not be read
+     */
+    long[] find(String value, FileChannel input) throws IOException {
+        byte[] bytes = value.trim().getBytes(StandardCharsets.UTF_8);
+        long hash = entry(hash(ByteBuffer.wrap(bytes), 0, bytes.length), 0);
+        // first entry with the hash
+        long low = 0;
+        long high = keyEntries;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (keyEntry(middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        long[] found = new long[0];
+        for (long i = low; i < keyEntries; i++) {
+            long entry = keyEntry(i);
+            if (entry >>> ORDINAL_BITS != hash >>> ORDINAL_BITS) {
+                break;
+            }
+            long record = entry & (1L << ORDINAL_BITS) - 1;
+            if (hasKey(read(input, record), bytes)) {
+                found = Arrays.copyOf(found, found.length + 1);
+                found[found.length - 1] = record;
+            }
+        }
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Selects records by numbers, ranges and key values
+     *
+     * @param ranges comma separated record numbers and ranges starting from 1
+     *               (e.g. 1-10,25), null for none
+     * @param values comma separated values of key properties, null for none
+     * @param input  indexed SDF file
+     * @return selected record numbers in input order, without duplicates
+     * @throws IOException if the files could not be read
+     * @throws IllegalArgumentException if a range is not valid
+     */
+    long[] select(String ranges, String values, String input) throws IOException {
+        LongList selected = new LongList();
+        if (ranges != null) {
+            for (String range : ranges.split(",")) {
+                range = range.trim();
+                int dash = range.indexOf('-', 1);
+                long first = Long.parseLong(dash < 0 ? range : range.substring(0, dash).trim());
+                long last = dash < 0 ? first : Long.parseLong(range.substring(dash + 1).trim());
+                if (first < 1 || last < first) {
+                    throw new IllegalArgumentException("Invalid record range: " + range);
+                }
+                if (first > records) {
+                    System.err.println("Record " + first + " is not in the input of " + records + " records");
+                }
+                for (long record = first; record <= Math.min(last, records); record++) {
+                    selected.add(record);
+                }
+            }
+        }
+        if (values != null) {
+            try (FileChannel channel = FileChannel.open(Paths.get(input), StandardOpenOption.READ)) {
+                for (String value : values.split(",")) {
+                    long[] found = find(value, channel);
+                    if (found.length == 0) {
+                        System.err.println("Key not found in the index: " + value.trim());
+                    }
+                    for (long record : found) {
+                        selected.add(record);
+                    }
+                }
+            }
+        }
+        return selected.toSortedSet();
+    }
+
+    /**
+     * Growable list of record numbers
+     */
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedSet() {
+            return Arrays.stream(values, 0, size).sorted().distinct().toArray();
+        }
+    }
+
+    /**
+     * Reads the whole record
+     *
+     * @param input  channel of the indexed file
+     * @param record record number, starting from 1
+     * @return record bytes
+     * @throws IOException if the files could not be read
+     */
+    ByteBuffer read(FileChannel input, long record) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length(record));
+        read(input, bytes, offset(record));
+        return bytes;
+    }
+
+    /**
+     * Checks if any key property of the record has the value
+     */
+    private boolean hasKey(ByteBuffer record, byte[] value) {
+        int limit = record.limit();
+        int lineStart = 0;
+        boolean keyLine = false;
+        while (lineStart < limit) {
+            int lineEnd = Bytes.lineEnd(record, lineStart, limit);
+            int s = Bytes.trimStart(record, lineStart, lineEnd);
+            if (keyLine) {
+                if (equals(record, s, Bytes.trimEnd(record, s, lineEnd), value)) {
+                    return true;
+                }
+                keyLine = false;
+            } else if (keyIndex(keys, record, s, lineEnd) >= 0) {
+                keyLine = true;
+            }
+            lineStart = Bytes.nextLine(record, lineEnd, limit);
+        }
+        return false;
+    }
+
+    private ByteBuffer recordEntry(long record) throws IOException {
+        if (record < 1 || record > records) {
+            throw new IllegalArgumentException("Record " + record + " is not in the input of " + records + " records");
+        }
+        ByteBuffer entry = ByteBuffer.allocate(RECORD_ENTRY);
+        read(channel, entry, recordsOffset + (record - 1) * RECORD_ENTRY);
+        return entry;
+    }
+
+    private long keyEntry(long i) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        read(channel, entry, recordsOffset + records * RECORD_ENTRY + i * 8);
+        return entry.getLong(0);
+    }
+
+    /**
+     * Index of the key property named in the property name line
+     *
+     * @return key index or -1 if the line is not a key property name
+     */
+    private static int keyIndex(List<byte[]> keys, ByteBuffer buf, int start, int end) {
+        if (start == end || buf.get(start) != '>') {
+            return -1;
+        }
+        int nameStart = Bytes.indexOf(buf, (byte) '<', start, end) + 1;
+        if (nameStart == 0) {
+            return -1;
+        }
+        int nameEnd = Bytes.indexOf(buf, (byte) '>', nameStart, end);
+        if (nameEnd < 0) {
+            return -1;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            if (equals(buf, nameStart, nameEnd, keys.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(ByteBuffer buf, int start, int end, byte[] bytes) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buf.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the bytes
+     */
+    private static long hash(ByteBuffer buf, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= buf.get(i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Key table entry: high bits of the hash and the record number, sorted
+     * as unsigned values by the hash
+     */
+    private static long entry(long hash, long record) {
+        return (hash >>> ORDINAL_BITS + 1) << ORDINAL_BITS | record;
+    }
+
+    private static List<byte[]> encode(List<String> names) {
+        List<byte[]> encoded = new ArrayList<>(names.size());
+        for (String name : names) {
+            encoded.add(name.trim().getBytes(StandardCharsets.UTF_8));
+        }
+        return encoded;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
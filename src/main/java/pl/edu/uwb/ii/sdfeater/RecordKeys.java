@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keys of --dedup-by and --delta of the records of one batch. With many
+ * threads a worker scans the property lines of its batch for them, waits
+ * until the batches before it are checked and checks them in input order, so
+ * the same records are kept as with a single thread. The parser then prints
+ * only the kept records. Keys of records rejected by the parser are checked
+ * too, as the scan does not parse the molfile
+ */
+class RecordKeys {
+
+    /**
+     * True if the record has the --dedup-by key and its hash
+     */
+    private boolean[] found = new boolean[16];
+    private long[] keys = new long[16];
+
+    /**
+     * First value of the --delta-key property (null if none) and content
+     * hash of the record
+     */
+    private String[] deltaKeys = new String[16];
+    private long[] hashes = new long[16];
+
+    /**
+     * Decisions made by check, null before it
+     */
+    private boolean[] kept;
+
+    private int size;
+
+    /**
+     * Number of decisions read by next
+     */
+    private int next;
+
+    /**
+     * Collects keys of all records of the batch that match the --filter
+     * expression, in the same records as RecordParser
+     *
+     * @param batch      batch bytes from position to limit
+     * @param duplicates duplicate records, null without --dedup-by
+     * @param delta      manifest and delta conversion, null without them
+     * @param filter     matcher of the --filter expression, null without it
+     */
+    void scan(ByteBuffer batch, Duplicates duplicates, Delta delta, RecordFilter.Matcher filter) {
+        Scanner scanner = new Scanner(duplicates, delta);
+        int limit = batch.limit();
+        int start = batch.position();
+        while (start < limit) {
+            if (filter != null) {
+                int next = filter.scan(batch, start, limit);
+                if (!filter.matches()) {
+                    start = next;
+                    continue;
+                }
+            }
+            start = scanner.scan(batch, start, limit);
+            if (scanner.ended) {
+                add(scanner.found, scanner.key, scanner.deltaKey, scanner.hash);
+            }
+        }
+    }
+
+    /**
+     * Adds keys of the next record
+     *
+     * @param found    true if the record has the --dedup-by key
+     * @param key      hash of the --dedup-by key
+     * @param deltaKey first value of the --delta-key property, null if none
+     * @param hash     content hash of the record
+     */
+    void add(boolean found, long key, String deltaKey, long hash) {
+        if (size == keys.length) {
+            this.found = Arrays.copyOf(this.found, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+            deltaKeys = Arrays.copyOf(deltaKeys, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        this.found[size] = found;
+        keys[size] = key;
+        deltaKeys[size] = deltaKey;
+        hashes[size] = hash;
+        size++;
+    }
+
+    /**
+     * Checks all records against duplicates and the manifest, in the order
+     * they were added. Must be called for batches in input order
+     *
+     * @param duplicates duplicate records, null without --dedup-by
+     * @param delta      manifest and delta conversion, null without them
+     */
+    void check(Duplicates duplicates, Delta delta) {
+        kept = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            kept[i] = (duplicates == null || !found[i] || duplicates.first(keys[i]))
+                    && (delta == null || delta.write(deltaKeys[i], hashes[i]));
+        }
+    }
+
+    /**
+     * @return true if the next record is written to the output
+     */
+    boolean next() {
+        return kept[next++];
+    }
+
+    /**
+     * Reads --dedup-by and --delta keys of a record from its property lines,
+     * without parsing the molfile. The key is the hash of the first value of
+     * the --dedup-by property or, with content-hash, of the whole record
+     */
+    static final class Scanner {
+
+        /**
+         * Names of the key properties, null if not used
+         */
+        private final byte[] keyName;
+        private final byte[] deltaName;
+
+        /**
+         * True if the keys need the hash of the whole record
+         */
+        private final boolean contentHash;
+        private final boolean recordHash;
+
+        /**
+         * Keys of the last scanned record
+         */
+        boolean found;
+        long key;
+        String deltaKey;
+        long hash;
+
+        /**
+         * True if the last scanned record has its $$$$ line
+         */
+        boolean ended;
+
+        /**
+         * Scanner class constructor
+         *
+         * @param duplicates duplicate records, null without --dedup-by
+         * @param delta      manifest and delta conversion, null without them
+         */
+        Scanner(Duplicates duplicates, Delta delta) {
+            keyName = duplicates != null && duplicates.property != null ? duplicates.property.getBytes(StandardCharsets.UTF_8) : null;
+            deltaName = delta != null ? delta.property.getBytes(StandardCharsets.UTF_8) : null;
+            contentHash = duplicates != null && duplicates.property == null;
+            recordHash = contentHash || delta != null;
+        }
+
+        /**
+         * Reads keys of the record that starts the input bytes
+         *
+         * @param buf   input bytes
+         * @param start record start
+         * @param limit input end
+         * @return position after the $$$$ line of the record or limit if the
+         * record has no $$$$ line
+         */
+        int scan(ByteBuffer buf, int start, int limit) {
+            found = false;
+            deltaKey = null;
+            ended = false;
+            boolean molfile = true;
+            int line = 0;
+            boolean keyLine = false;
+            boolean deltaLine = false;
+            int recordEnd = limit;
+            int next = limit;
+            int lineStart = start;
+            while (lineStart < limit) {
+                int lineEnd = Bytes.lineEnd(buf, lineStart, limit);
+                next = Bytes.nextLine(buf, lineEnd, limit);
+                int trimmedStart = Bytes.trimStart(buf, lineStart, lineEnd);
+                if (Bytes.matches(buf, trimmedStart, lineEnd, "$$$$")) {
+                    ended = true;
+                    recordEnd = lineStart;
+                    break;
+                }
+                if (molfile) {
+                    if (line >= 3 && Bytes.matches(buf, trimmedStart, lineEnd, "M  END")) {
+                        molfile = false;
+                    }
+                    line++;
+                } else {
+                    int end = Bytes.trimEnd(buf, trimmedStart, lineEnd);
+                    if (RecordParser.isPropertyName(buf, trimmedStart, end)) {
+                        keyLine = isName(buf, trimmedStart, end, keyName);
+                        deltaLine = isName(buf, trimmedStart, end, deltaName);
+                    } else if (trimmedStart < end) {
+                        if (keyLine && !found) {
+                            key = Duplicates.hash(buf, trimmedStart, end);
+                            found = true;
+                        }
+                        if (deltaLine && deltaKey == null) {
+                            deltaKey = Bytes.decode(buf, trimmedStart, end);
+                        }
+                    }
+                }
+                lineStart = next;
+            }
+            hash = recordHash ? Duplicates.hash(buf, start, recordEnd) : 0;
+            if (contentHash) {
+                found = true;
+                key = hash;
+            }
+            return next;
+        }
+
+        /**
+         * Checks name of the property line, read as in RecordParser
+         */
+        private static boolean isName(ByteBuffer buf, int start, int end, byte[] name) {
+            if (name == null) {
+                return false;
+            }
+            int nameStart = Bytes.indexOf(buf, (byte) '<', start, end) + 1;
+            int nameEnd = Bytes.indexOf(buf, (byte) '<', nameStart, end);
+            if (nameEnd < 0) {
+                nameEnd = end;
+            }
+            nameEnd--;
+            if (nameEnd - nameStart != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (buf.get(nameStart + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
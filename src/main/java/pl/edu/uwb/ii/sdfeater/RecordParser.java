@@ -0,0 +1,694 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Line by line SDF record parser. Keeps the state of the record that is
+ * currently read and prints the molecule when its $$$$ line is reached
+ */
+class RecordParser {
+
+    /**
+     * Molecule to which values from the file will be entered
+     */
+    private final Molecule molecule;
+
+    /**
+     * Output format
+     */
+    private final char format;
+
+    /**
+     * Try to generate full database URLs instead of IDs
+     */
+    private final boolean urls;
+
+    /**
+     * Add additional atoms data from periodic table
+     */
+    private final boolean periodic;
+
+    /**
+     * Parts of the record used by the output format
+     */
+    private final Projection projection;
+
+    /**
+     * Current property name
+     */
+    private String pName = "";
+
+    /**
+     * True if values of the current property are not used by the format
+     */
+    private boolean skipProperty = false;
+
+    /**
+     * True if the current property is the key of shard routing, hash of its
+     * first value in the current record, valid if shardKeyFound is true
+     */
+    private boolean shardKeyProperty = false;
+    private long shardKey;
+    private boolean shardKeyFound = false;
+
+    /**
+     * True after the M  END line of the current record
+     */
+    private boolean molfileReady = false;
+
+    /**
+     * Number of the current line in the molfile part of the record
+     */
+    private int line = 0;
+
+    /**
+     * Number of the counts line in the current record, -1 if not found yet
+     */
+    private int countsLine = -1;
+
+    /**
+     * Number of atoms and bonds from the counts line of the current record
+     */
+    private int atomCount = 0;
+    private int bondCount = 0;
+
+    /**
+     * Start of the current record in the parsed batch
+     */
+    private int recordStart = 0;
+
+    /**
+     * Number of records read before the current one
+     */
+    private long records = 0;
+
+    /**
+     * Input offset of the parsed batch start
+     */
+    private long batchOffset = 0;
+
+    /**
+     * Reason of rejecting the current record, null if it is not broken. Rest
+     * of a broken record is skipped up to its $$$$ line
+     */
+    private String rejectReason;
+
+    /**
+     * Size of the property names cache
+     */
+    private static final int NAMES = 64;
+
+    /**
+     * Property names cache keys (name bytes) and values (interned names)
+     */
+    private final byte[][] nameKeys = new byte[NAMES][];
+    private final String[] nameValues = new String[NAMES];
+
+    /**
+     * Parser of the atom and bond blocks
+     */
+    private final CTFileParser ctFileParser = new CTFileParser();
+
+    /**
+     * Timing of records with the --stats option, null without it
+     */
+    private final RunStats.Recorder recorder = SDFEater.stats != null ? SDFEater.stats.recorder() : null;
+
+    /**
+     * Matcher of the --filter expression, null without it
+     */
+    private final RecordFilter.Matcher filter = SDFEater.filter != null ? SDFEater.filter.matcher() : null;
+
+    /**
+     * Duplicate records with the --dedup-by option, null without it
+     */
+    private final Duplicates duplicates = SDFEater.duplicates;
+
+    /**
+     * Manifest and delta conversion, null without them
+     */
+    private final Delta delta = SDFEater.delta;
+
+    /**
+     * Reader of --dedup-by and --delta keys, null without them
+     */
+    private final RecordKeys.Scanner keyScanner = duplicates != null || delta != null ? new RecordKeys.Scanner(duplicates, delta) : null;
+
+    /**
+     * Report of rejected records
+     */
+    private Rejects rejects = SDFEater.rejects;
+
+    /**
+     * Routing of records to output shards, null without shards
+     */
+    private Shards shards;
+
+    /**
+     * Molecules with outputs of the shards
+     */
+    private Molecule[] outputs;
+
+    /**
+     * Receiver of parsed molecules instead of the output format, null to
+     * print them
+     */
+    private Consumer<Molecule> consumer;
+
+    /**
+     * Keys of --dedup-by and --delta checked in input order by the record
+     * pipeline, null to check them while parsing
+     */
+    private RecordKeys keys;
+
+    /**
+     * RecordParser class constructor
+     *
+     * @param molecule Molecule object to which values from the file will be entered
+     * @param format   Output format: c - Cypher, r - cvme, s - smiles, n - inchi
+     * @param urls     Try to generate full database URLs instead of IDs
+     *                 (true/false)
+     * @param periodic Map with additional atoms data from periodic table for
+     *                 cypher format (true/false)
+     */
+    RecordParser(Molecule molecule, char format, boolean urls, boolean periodic) {
+        this.molecule = molecule;
+        this.format = format;
+        this.urls = urls;
+        this.periodic = periodic;
+        this.projection = Projection.of(format);
+    }
+
+    /**
+     * Prints molecules to output shards
+     *
+     * @param shards  routing of records to shards
+     * @param outputs molecules with outputs of the shards, in shard order
+     */
+    void setShards(Shards shards, Molecule[] outputs) {
+        this.shards = shards;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Reports rejected records to the given report instead of the one of
+     * the run
+     *
+     * @param rejects report of rejected records
+     */
+    void setRejects(Rejects rejects) {
+        this.rejects = rejects;
+    }
+
+    /**
+     * Passes molecules to the consumer instead of printing them. The
+     * molecule is cleared after the consumer returns
+     *
+     * @param consumer receiver of parsed molecules
+     */
+    void setConsumer(Consumer<Molecule> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Prints only the records kept by the keys checked by the record
+     * pipeline
+     *
+     * @param keys checked keys of the records of the parsed batch
+     */
+    void setKeys(RecordKeys keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Parses all lines of the input bytes that start the input
+     *
+     * @param batch       input bytes from position to limit
+     * @param firstRecord number of records in the input before the batch
+     */
+    void parse(ByteBuffer batch, long firstRecord) {
+        parse(batch, firstRecord, 0);
+    }
+
+    /**
+     * Parses all lines of the input bytes
+     *
+     * @param batch       input bytes from position to limit
+     * @param firstRecord number of records in the input before the batch
+     * @param firstOffset input offset of the batch, used in reports of
+     *                    rejected records
+     */
+    void parse(ByteBuffer batch, long firstRecord, long firstOffset) {
+        RecordBatchEvent event = new RecordBatchEvent();
+        event.begin();
+        if (recorder != null) {
+            recorder.startBatch();
+        }
+        int limit = batch.limit();
+        int lineStart = batch.position();
+        recordStart = lineStart;
+        records = firstRecord;
+        batchOffset = firstOffset - lineStart;
+        boolean filtered = false;
+        while (lineStart < limit) {
+            if (filter != null && !filtered) {
+                // records not matching the filter are skipped before parsing
+                int next = filter.scan(batch, lineStart, limit);
+                if (!filter.matches()) {
+                    if (filter.ended()) {
+                        records++;
+                    }
+                    lineStart = next;
+                    recordStart = next;
+                    continue;
+                }
+                filtered = true;
+            }
+            int lineEnd = Bytes.lineEnd(batch, lineStart, limit);
+            boolean recordEnd = parseLine(batch, lineStart, lineEnd);
+            lineStart = Bytes.nextLine(batch, lineEnd, limit);
+            if (recordEnd) {
+                recordStart = lineStart;
+                filtered = false;
+            }
+        }
+        if (recorder != null) {
+            recorder.endBatch(records - firstRecord, event);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.firstRecord = firstRecord;
+            event.records = records - firstRecord;
+            event.bytes = limit - batch.position();
+            event.commit();
+        }
+    }
+
+    /**
+     * Parses a single input line. Atom block and bond block are recognised by
+     * their position after the counts line, property data follows the M  END
+     * line
+     *
+     * @param buf   input bytes
+     * @param start line start
+     * @param end   line end
+     * @return true if the line closed a record ($$$$)
+     */
+    boolean parseLine(ByteBuffer buf, int start, int end) {
+        int trimmedStart = Bytes.trimStart(buf, start, end);
+
+        if (Bytes.matches(buf, trimmedStart, end, "$$$$")) {
+            records++;
+            if (rejectReason == null && countsLine >= 0) {
+                rejectReason = checkMolfile();
+            }
+            if (rejectReason != null) {
+                // keys of rejected records are checked as in the record pipeline
+                isKept(buf, start);
+                rejects.add(molecule.input, records, batchOffset + recordStart, start - recordStart, rejectReason);
+                rejectReason = null;
+            } else if (!isKept(buf, start)) {
+                // duplicate or not changed since the previous run, dropped
+                // before rendering
+            } else {
+                ByteBuffer record = buf.duplicate();
+                record.position(recordStart).limit(start);
+                molecule.setRecord(record, records, batchOffset + recordStart);
+                if (shards != null) {
+                    molecule.setOutputs(outputs[shards.shard(records, batchOffset + recordStart, shardKeyFound, shardKey)]);
+                }
+                if (consumer != null) {
+                    consumer.accept(molecule);
+                } else {
+                    render(start);
+                }
+            }
+            molecule.clearAll();
+            shardKeyProperty = false;
+            shardKeyFound = false;
+            molfileReady = false;
+            line = 0;
+            countsLine = -1;
+            return true;
+        } else if (rejectReason != null) {
+            // broken record, skipped without parsing
+        } else if (!molfileReady) {
+            // TODO: V3000
+            try {
+                if (countsLine < 0) {
+                    if (line >= 3 && ctFileParser.isCountsLine(buf, start, end)) {
+                        countsLine = line;
+                        atomCount = ctFileParser.atomCount(buf, start, end);
+                        bondCount = ctFileParser.bondCount(buf, start, end);
+                    }
+                } else if (line <= countsLine + atomCount) {
+                    if (projection.atoms) {
+                        ctFileParser.parseAtom(buf, start, end, molecule);
+                    }
+                } else if (line <= countsLine + atomCount + bondCount) {
+                    if (projection.bonds) {
+                        ctFileParser.parseBond(buf, start, end, molecule);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // number format or too many different atom symbols
+                rejectReason = "line " + (line + 1) + ": " + e.toString();
+                return false;
+            }
+            if (line >= 3 && Bytes.matches(buf, trimmedStart, end, "M  END")) {
+                molfileReady = true;
+            }
+            line++;
+        } else {
+            // SDF file parse
+            end = Bytes.trimEnd(buf, trimmedStart, end);
+            if (isPropertyName(buf, trimmedStart, end)) {
+                int nameStart = Bytes.indexOf(buf, (byte) '<', trimmedStart, end) + 1;
+                int nameEnd = Bytes.indexOf(buf, (byte) '<', nameStart, end);
+                if (nameEnd < 0) {
+                    nameEnd = end;
+                }
+                pName = nameEnd > nameStart ? propertyName(buf, nameStart, nameEnd - 1) : "";
+                skipProperty = !projection.property(pName);
+                shardKeyProperty = shards != null && pName.equals(shards.property);
+            } else if (trimmedStart < end) {
+                if (shardKeyProperty && !shardKeyFound) {
+                    shardKey = Duplicates.hash(buf, trimmedStart, end);
+                    shardKeyFound = true;
+                }
+                try {
+                    if (skipProperty) {
+                        molecule.skippedProperties = true;
+                    } else if (urls) {
+                        addPropertyAsURL(Bytes.decode(buf, trimmedStart, end));
+                    } else {
+                        molecule.addPropertyByName(pName, buf, trimmedStart, end);
+                    }
+                } catch (RuntimeException e) {
+                    // unexpected property value rejects only its record
+                    rejectReason = "property " + pName + ": " + e.toString();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detect property name line (&gt;  &lt;name&gt;)
+     *
+     * @param buf   input bytes
+     * @param start trimmed line start
+     * @param end   trimmed line end
+     * @return true if first two not whitespace characters are &gt;&lt;
+     */
+    static boolean isPropertyName(ByteBuffer buf, int start, int end) {
+        if (start == end || buf.get(start) != '>') {
+            return false;
+        }
+        int i = start + 1;
+        while (i < end && Bytes.isSpace(buf.get(i))) {
+            i++;
+        }
+        return i < end && buf.get(i) == '<';
+    }
+
+    /**
+     * Checks the record against --dedup-by and --delta, or takes the decision
+     * made by the record pipeline. Records without the key property are kept
+     * by --dedup-by
+     *
+     * @param buf input bytes
+     * @param end start of the $$$$ line
+     * @return false if the record is dropped
+     */
+    private boolean isKept(ByteBuffer buf, int end) {
+        if (duplicates == null && delta == null) {
+            return true;
+        }
+        if (keys != null) {
+            return keys.next();
+        }
+        // keys are read from the record bytes as in the record pipeline, so
+        // both keep the same records
+        keyScanner.scan(buf, recordStart, end);
+        return (duplicates == null || !keyScanner.found || duplicates.first(keyScanner.key))
+                && (delta == null || delta.write(keyScanner.deltaKey, keyScanner.hash));
+    }
+
+    /**
+     * Checks atom and bond blocks of the record against its counts line.
+     * Blocks skipped by the projection are not checked
+     *
+     * @return reason of rejecting the record or null if blocks are complete
+     */
+    private String checkMolfile() {
+        if (projection.atoms && molecule.atoms.size() != atomCount || projection.bonds && molecule.bonds.size() != bondCount) {
+            return "counts line has " + atomCount + " atoms and " + bondCount + " bonds, record has "
+                    + molecule.atoms.size() + " atoms and " + molecule.bonds.size() + " bonds";
+        }
+        for (int i = 0; i < molecule.bonds.size(); i++) {
+            int atom1 = molecule.bonds.atom1(i);
+            int atom2 = molecule.bonds.atom2(i);
+            if (atom1 < 1 || atom1 > atomCount || atom2 < 1 || atom2 > atomCount) {
+                return "bond " + (i + 1) + " joins atoms " + atom1 + " and " + atom2 + " of " + atomCount;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Property name from cache, decoded only the first time it is found.
+     * Names are interned, so molecules from all threads share them
+     *
+     * @param buf   input bytes
+     * @param start name start
+     * @param end   name end
+     * @return property name
+     */
+    private String propertyName(ByteBuffer buf, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf.get(i);
+        }
+        int slot = (hash ^ hash >>> 16) & (NAMES - 1);
+        byte[] key = nameKeys[slot];
+        if (key != null && key.length == end - start) {
+            int i = 0;
+            while (i < key.length && key[i] == buf.get(start + i)) {
+                i++;
+            }
+            if (i == key.length) {
+                return nameValues[slot];
+            }
+        }
+        key = new byte[end - start];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = buf.get(start + i);
+        }
+        nameKeys[slot] = key;
+        nameValues[slot] = Bytes.decode(buf, start, end).intern();
+        return nameValues[slot];
+    }
+
+    /**
+     * Prints completed molecule, reporting it as rejected if it could not be
+     * rendered. Output written before the failure is kept
+     *
+     * @param end start of the $$$$ line
+     */
+    private void render(int end) {
+        long renderStart = recorder != null ? System.nanoTime() : 0;
+        try {
+            printMolecule();
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            rejects.add(molecule.input, records, batchOffset + recordStart, end - recordStart, e.toString());
+        }
+        if (recorder != null) {
+            recorder.record(renderStart);
+        }
+    }
+
+    /**
+     * Prints completed molecule in the output format
+     */
+    private void printMolecule() {
+        switch (format) {
+            case 'c':
+                molecule.printCypherMolecule();
+                if (periodic) {
+                    molecule.printCypherAtomsWithPeriodicTableData();
+                } else {
+                    molecule.printCypherAtoms();
+                }
+                molecule.printCypherBonds();
+                molecule.out.println(';');
+                break;
+            case 'b':
+                molecule.printNeo4jCsv();
+                break;
+            case 'q':
+                molecule.printCypherBatchRow(periodic);
+                break;
+            case 'r':
+                molecule.printChemSKOSMolecule();
+                molecule.printChemSKOSAtomsAndBonds();
+                break;
+            case 's':
+                molecule.printSMILES();
+                break;
+            case 'i':
+                molecule.printInChI();
+                break;
+            case 't':
+            case 'n':
+            case 'h':
+                molecule.addToRDFStream();
+                break;
+            case 'j':
+            case 'd':
+            case 'x':
+                molecule.addToJenaModel();
+                break;
+            case 'a':
+                molecule.printRDFaMolecule();
+                break;
+            case 'm':
+                molecule.printMicrodataMolecule();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds current property value, replacing database IDs with full URLs
+     *
+     * @param strLine property value
+     */
+    private void addPropertyAsURL(String strLine) {
+        switch (pName) {
+            case "Agricola Citation Links":
+                molecule.addPropertyByName(pName, "https://agricola.nal.usda.gov/cgi-bin/Pwebrecon.cgi?Search_Arg=" + strLine + "&DB=local&CNT=25&Search_Code=GKEY%5E&STARTDB=AGRIDB");
+                break;
+            case "ArrayExpress Database Links":
+                molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/arrayexpress/experiments/" + strLine);
+                break;
+            case "BioModels Database Links":
+                molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/biomodels-main/" + strLine);
+                break;
+            case "ChEBI ID":
+                molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/chebi/searchId.do?chebiId=" + (strLine.startsWith("CHEBI:") ? strLine.substring(6) : strLine));
+                break;
+            case "DrugBank Database Links":
+                molecule.addPropertyByName(pName, "https://www.drugbank.ca/drugs/" + strLine);
+                break;
+            case "ECMDB Database Links":
+                molecule.addPropertyByName(pName, "http://ecmdb.ca/compounds/" + strLine);
+                break;
+            case "HMDB Database Links":
+                // metabolites
+                molecule.addPropertyByName(pName, "http://www.hmdb.ca/metabolites/" + strLine);
+                break;
+            case "IntAct Database Links":
+                molecule.addPropertyByName(pName, "https://www.ebi.ac.uk/intact/interaction/" + strLine);
+                break;
+            case "IntEnz Database Links":
+                strLine = strLine.replaceAll(" ", "+");
+                molecule.addPropertyByName(pName, "http://www.ebi.ac.uk/intenz/query?q=" + strLine);
+                break;
+            case "KEGG COMPOUND Database Links":
+                molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?cpd:" + strLine);
+                break;
+            case "KEGG DRUG Database Links":
+                molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?dr:" + strLine);
+                break;
+            case "KEGG GLYCAN Database Links":
+                molecule.addPropertyByName(pName, "http://www.genome.jp/dbget-bin/www_bget?gl:" + strLine);
+                break;
+            case "KNApSAcK Database Links":
+                molecule.addPropertyByName(pName, "http://kanaya.naist.jp/knapsack_jsp/information.jsp?word=" + strLine);
+                break;
+            case "LIPID MAPS instance Database Links":
+                molecule.addPropertyByName(pName, "http://www.lipidmaps.org/data/LMSDRecord.php?LMID=" + strLine);
+                break;
+            case "MetaCyc Database Links":
+                molecule.addPropertyByName(pName, "https://metacyc.org/compound?orgid=META&id=" + strLine);
+                break;
+            case "Patent Database Links":
+                molecule.addPropertyByName(pName, "https://worldwide.espacenet.com/searchResults?query=" + strLine);
+                break;
+            case "PDBeChem Database Links":
+                molecule.addPropertyByName(pName, "http://www.ebi.ac.uk/pdbe-srv/pdbechem/chemicalCompound/show/" + strLine);
+                break;
+            case "PubChem Database Links":
+                // custom key value for compound and substance links, values
+                // too short for "CID: " or "SID: " and an ID are skipped
+                if (strLine.length() > 5 && strLine.startsWith("CID")) {
+                    molecule.addPropertyByName("PubChem Database Molecule Links", "https://pubchem.ncbi.nlm.nih.gov/compound/" + strLine.substring(5));
+                } else if (strLine.length() > 5 && strLine.startsWith("SID")) {
+                    molecule.addPropertyByName("PubChem Database Substance Links", "https://pubchem.ncbi.nlm.nih.gov/substance/" + strLine.substring(5));
+                }
+                break;
+            case "PubMed Central Citation Links":
+                molecule.addPropertyByName(pName, "https://www.ncbi.nlm.nih.gov/pmc/articles/" + strLine + "/");
+                break;
+            case "PubMed Citation Links":
+                molecule.addPropertyByName(pName, "https://www.ncbi.nlm.nih.gov/pubmed/?term=" + strLine);
+                break;
+            case "Reactome Database Links":
+                molecule.addPropertyByName(pName, "https://reactome.org/content/detail/" + strLine);
+                break;
+            case "RESID Database Links":
+                molecule.addPropertyByName(pName, "http://pir.georgetown.edu/cgi-bin/resid?id=" + strLine);
+                break;
+            case "Rhea Database Links":
+                molecule.addPropertyByName(pName, "https://www.rhea-db.org/reaction?id=" + strLine);
+                break;
+            case "SABIO-RK Database Links":
+                molecule.addPropertyByName(pName, "http://sabio.h-its.org/reacdetails.jsp?reactid=" + strLine);
+                break;
+            case "UM-BBD compID Database Links":
+                molecule.addPropertyByName(pName, "http://eawag-bbd.ethz.ch/servlets/pageservlet?ptype=c&compID=" + strLine);
+                break;
+            case "UniProt Database Links":
+                molecule.addPropertyByName(pName, "https://www.uniprot.org/uniprot/" + strLine);
+                break;
+            case "Wikipedia Database Links":
+                molecule.addPropertyByName(pName, "https://en.wikipedia.org/wiki/" + strLine);
+                break;
+            case "YMDB Database Links":
+                molecule.addPropertyByName(pName, "http://www.ymdb.ca/compounds/" + strLine);
+                break;
+            default:
+                molecule.addPropertyByName(pName, strLine);
+        }
+    }
+}
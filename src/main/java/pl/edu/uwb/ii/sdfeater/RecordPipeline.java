@@ -0,0 +1,441 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.lang.CollectorStreamTriples;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Multi-threaded record pipeline. A reader thread cuts the input into
+ * batches of records at $$$$ boundaries, a pool of workers parses and prints
+ * each batch to its own buffer and the calling thread writes the buffers out
+ * in input order, so the output is the same as in the single-threaded run.
+ * Many input files are read one after another by the same reader
+ */
+class RecordPipeline {
+
+    /**
+     * Number of records in one batch
+     */
+    static final int BATCH_RECORDS = 256;
+
+    /**
+     * Marks the end of the input in the queue of pending batches
+     */
+    private static final Future<RenderedBatch> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * Number of worker threads
+     */
+    private final int threads;
+
+    /**
+     * Output format
+     */
+    private final char format;
+
+    /**
+     * Try to generate full database URLs instead of IDs
+     */
+    private final boolean urls;
+
+    /**
+     * Add additional atoms data from periodic table
+     */
+    private final boolean periodic;
+
+    /**
+     * Molecule identifier strategy
+     */
+    private final MoleculeId.Strategy ids;
+
+    /**
+     * Error thrown by the reader thread, rethrown by the writer so a failed
+     * read never ends like a complete input
+     */
+    private volatile Throwable readError;
+
+    /**
+     * Completed when the keys of the last submitted batch are checked
+     * against --dedup-by and --delta, null without them. Used by the reader
+     * thread only
+     */
+    private CompletableFuture<Void> checked;
+
+    /**
+     * RecordPipeline class constructor
+     *
+     * @param threads  number of worker threads
+     * @param format   output format
+     * @param urls     try to generate full database URLs instead of IDs
+     * @param periodic add additional atoms data from periodic table
+     * @param ids      molecule identifier strategy
+     */
+    RecordPipeline(int threads, char format, boolean urls, boolean periodic, MoleculeId.Strategy ids) {
+        this.threads = threads;
+        this.format = format;
+        this.urls = urls;
+        this.periodic = periodic;
+        this.ids = ids;
+    }
+
+    /**
+     * Parses all records from the reader and writes them to the output in
+     * input order
+     *
+     * @param input       input file reader
+     * @param targets     molecules with outputs of the format, one for every
+     *                    shard: output sink, RDF stream of Turtle, CSV files
+     *                    of neo4j-admin import, state of cypher-batch
+     *                    statements or Jena model
+     * @param filename    input file
+     * @param inputNumber number of the file in the list of input files
+     * @throws IOException if the input could not be read
+     */
+    void run(RecordReader input, Molecule[] targets, String filename, int inputNumber) throws IOException {
+        run(List.of(filename), inputNumber, input, targets);
+    }
+
+    /**
+     * Converts many input files one after another. Batches of all files go
+     * through the same workers, so small files are converted at once, and
+     * the output of every file is written in one piece, in the order of the
+     * files
+     *
+     * @param filenames  input files
+     * @param firstInput number of the first file in the list of all input
+     *                   files
+     * @param targets    molecules with outputs of the format, one for every
+     *                   shard
+     * @throws IOException if an input could not be read
+     */
+    void runFiles(List<String> filenames, int firstInput, Molecule[] targets) throws IOException {
+        run(filenames, firstInput, null, targets);
+    }
+
+    /**
+     * Parses all records of the input files and writes them to the output in
+     * input order
+     *
+     * @param filenames  input files
+     * @param firstInput number of the first file in the list of all input
+     *                   files
+     * @param first      reader of the first file, null to open it
+     * @param targets    molecules with outputs of the format, one for every
+     *                   shard
+     * @throws IOException if an input could not be read
+     */
+    private void run(List<String> filenames, int firstInput, RecordReader first, Molecule[] targets) throws IOException {
+        if (SDFEater.duplicates != null || SDFEater.delta != null) {
+            checked = CompletableFuture.completedFuture(null);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // bounded, so the reader waits when the workers or the writer are behind
+        BlockingQueue<Future<RenderedBatch>> pending = new ArrayBlockingQueue<>(threads * 2);
+        Thread reader = new Thread(() -> read(filenames, firstInput, first, workers, pending, targets), "SDFEater-reader");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            Future<RenderedBatch> next;
+            Checkpoint checkpoint = SDFEater.checkpoint;
+            while ((next = pending.take()) != END) {
+                RenderedBatch batch = next.get();
+                write(batch, targets);
+                if (checkpoint != null && checkpoint.isDue()) {
+                    checkpoint.save(batch.end, batch.records, targets[0].out);
+                }
+            }
+            if (readError instanceof IOException) {
+                throw (IOException) readError;
+            } else if (readError instanceof RuntimeException) {
+                throw (RuntimeException) readError;
+            } else if (readError instanceof Error) {
+                throw (Error) readError;
+            } else if (readError != null) {
+                throw new IOException(readError);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes one rendered batch to the outputs of the format
+     *
+     * @param batch   batch output
+     * @param targets molecules with outputs of the format, one for every
+     *                shard
+     * @throws IOException if the batch stopped the run
+     */
+    private static void write(RenderedBatch batch, Molecule[] targets) throws IOException {
+        for (int i = 0; i < targets.length; i++) {
+            Molecule target = targets[i];
+            batch.outputs[i].writeTo(target.out);
+            if (batch.triples != null) {
+                batch.triples.get(i).forEach(target.rdfStream::triple);
+            }
+            target.out.flush();
+        }
+        if (batch.csv != null) {
+            // neo4j-admin import is not sharded
+            batch.csv.writeTo(targets[0].csv);
+            targets[0].csv.flush();
+        }
+        // rejects are reported in input order, so the limit of rejected
+        // records stops the run at the same record whatever the thread timing
+        SDFEater.rejects.addAll(batch.rejects);
+        if (batch.error != null) {
+            throw batch.error;
+        }
+    }
+
+    /**
+     * Reads batches of records of all input files and submits them to the
+     * workers
+     *
+     * @param filenames  input files
+     * @param firstInput number of the first file in the list of all input
+     *                   files
+     * @param first      reader of the first file, null to open it
+     * @param workers    worker pool
+     * @param pending    queue of batches in input order
+     * @param targets    molecules with outputs of the format
+     */
+    private void read(List<String> filenames, int firstInput, RecordReader first, ExecutorService workers,
+                      BlockingQueue<Future<RenderedBatch>> pending, Molecule[] targets) {
+        try {
+            for (int i = 0; i < filenames.size(); i++) {
+                if (i == 0 && first != null) {
+                    // closed by the caller
+                    read(first, workers, pending, targets, filenames.get(i), firstInput + i);
+                } else {
+                    try (RecordReader input = RecordReader.open(filenames.get(i), threads)) {
+                        read(input, workers, pending, targets, filenames.get(i), firstInput + i);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            readError = e;
+        } catch (Throwable e) {
+            readError = e;
+        } finally {
+            try {
+                pending.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads batches of records of one input file and submits them to the
+     * workers
+     *
+     * @param input       input file reader
+     * @param workers     worker pool
+     * @param pending     queue of batches in input order
+     * @param targets     molecules with outputs of the format
+     * @param filename    input file
+     * @param inputNumber number of the file in the list of input files
+     * @throws IOException          if the input could not be read
+     * @throws InterruptedException if the reader thread was stopped
+     */
+    private void read(RecordReader input, ExecutorService workers, BlockingQueue<Future<RenderedBatch>> pending,
+                      Molecule[] targets, String filename, int inputNumber) throws IOException, InterruptedException {
+        RunStats stats = SDFEater.stats;
+        long firstRecord = input.records();
+        while (true) {
+            long start = stats != null ? System.nanoTime() : 0;
+            ByteBuffer records = input.nextBatch(BATCH_RECORDS);
+            if (stats != null) {
+                stats.read(System.nanoTime() - start, input.consumed());
+            }
+            if (records == null) {
+                break;
+            }
+            long first = firstRecord;
+            long offset = input.batchOffset();
+            long end = input.offset();
+            long last = input.records();
+            // keys of every batch are checked after the keys of the batch before it
+            CompletableFuture<Void> previous = checked;
+            CompletableFuture<Void> turn = previous != null ? new CompletableFuture<>() : null;
+            checked = turn;
+            pending.put(workers.submit(() -> {
+                RecordKeys keys = previous != null ? check(records, previous, turn) : null;
+                RenderedBatch rendered = render(records, first, offset, targets, filename, inputNumber, keys);
+                rendered.end = end;
+                rendered.records = last;
+                return rendered;
+            }));
+            firstRecord = input.records();
+        }
+    }
+
+    /**
+     * Scans keys of --dedup-by and --delta of one batch and checks them
+     * after the batches before it, so the first record with a key is kept
+     * whatever the order in which workers finish
+     *
+     * @param batch    batch bytes
+     * @param previous completed when the batch before is checked
+     * @param turn     completed when this batch is checked
+     * @return checked keys of the batch records
+     * @throws InterruptedException if the worker was stopped
+     * @throws ExecutionException   if the batch before could not be checked
+     */
+    private RecordKeys check(ByteBuffer batch, CompletableFuture<Void> previous,
+                             CompletableFuture<Void> turn) throws InterruptedException, ExecutionException {
+        try {
+            RecordKeys keys = new RecordKeys();
+            keys.scan(batch, SDFEater.duplicates, SDFEater.delta, SDFEater.filter != null ? SDFEater.filter.matcher() : null);
+            previous.get();
+            keys.check(SDFEater.duplicates, SDFEater.delta);
+            turn.complete(null);
+            return keys;
+        } catch (RuntimeException | InterruptedException e) {
+            turn.completeExceptionally(e);
+            throw e;
+        } catch (ExecutionException e) {
+            turn.completeExceptionally(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * Parses and prints one batch of records
+     *
+     * @param batch       batch bytes
+     * @param firstRecord number of records in the input before the batch
+     * @param firstOffset input offset of the batch
+     * @param targets     molecules with outputs of the format, one for every
+     *                    shard
+     * @param input       input file of the batch
+     * @param inputNumber number of the file in the list of input files
+     * @param keys        checked keys of the batch records, null without
+     *                    --dedup-by and --delta
+     * @return batch output
+     */
+    private RenderedBatch render(ByteBuffer batch, long firstRecord, long firstOffset, Molecule[] targets,
+                                 String input, int inputNumber, RecordKeys keys) {
+        // outputs of the batch, one for every shard
+        Molecule[] outputs = new Molecule[targets.length];
+        OutputSink.Buffer[] buffers = new OutputSink.Buffer[targets.length];
+        List<List<Triple>> triples = format == 't' ? new ArrayList<>() : null;
+        List<CollectorStreamTriples> collectors = new ArrayList<>();
+        for (int i = 0; i < targets.length; i++) {
+            buffers[i] = new OutputSink.Buffer();
+            Molecule output = new Molecule(buffers[i], null);
+            if (format == 't') {
+                // Turtle abbreviations depend on everything written before, so
+                // triples are written by the output thread
+                CollectorStreamTriples collector = new CollectorStreamTriples();
+                collectors.add(collector);
+                output.rdfStream = collector;
+            } else {
+                output.rdfStream = SDFEater.createRDFStream(format, buffers[i].asOutputStream());
+            }
+            if (output.rdfStream != null) {
+                output.rdfStream.start();
+            }
+            if (targets[i].csv != null) {
+                output.csv = targets[i].csv.batch();
+            }
+            // rendered by a single worker, so batches use them in output order
+            output.cypherBatch = targets[i].cypherBatch;
+            output.model = targets[i].model;
+            outputs[i] = output;
+        }
+        Molecule molecule = new Molecule(buffers[0], ids.create());
+        molecule.setOutputs(outputs[0]);
+        molecule.input = input;
+        molecule.inputNumber = inputNumber;
+        RecordParser parser = new RecordParser(molecule, format, urls, periodic);
+        if (targets.length > 1) {
+            parser.setShards(SDFEater.shards, outputs);
+        }
+        if (keys != null) {
+            parser.setKeys(keys);
+        }
+        Rejects.Batch rejects = new Rejects.Batch();
+        parser.setRejects(rejects);
+        RuntimeException error = null;
+        try {
+            parser.parse(batch, firstRecord, firstOffset);
+        } catch (NumberFormatException | IllegalStateException e) {
+            // records before the one that stopped the run are still written out
+            error = e;
+        }
+        for (Molecule output : outputs) {
+            if (output.rdfStream != null) {
+                output.rdfStream.finish();
+            }
+        }
+        for (CollectorStreamTriples collector : collectors) {
+            triples.add(new ArrayList<>(collector.getCollected()));
+        }
+        return new RenderedBatch(buffers, triples, outputs[0].csv, rejects, error);
+    }
+
+    /**
+     * Output of one batch
+     */
+    private static class RenderedBatch {
+        final OutputSink.Buffer[] outputs;
+        final List<List<Triple>> triples;
+        final Neo4jCsvOutput csv;
+        final Rejects.Batch rejects;
+        final RuntimeException error;
+
+        /**
+         * Input offset after the batch and number of records up to it, set
+         * for checkpoints by the reader of a single input
+         */
+        long end;
+        long records;
+
+        RenderedBatch(OutputSink.Buffer[] outputs, List<List<Triple>> triples, Neo4jCsvOutput csv,
+                      Rejects.Batch rejects, RuntimeException error) {
+            this.outputs = outputs;
+            this.triples = triples;
+            this.csv = csv;
+            this.rejects = rejects;
+            this.error = error;
+        }
+    }
+}
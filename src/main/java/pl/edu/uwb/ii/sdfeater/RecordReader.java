@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Source of SDF records cut into batches of whole records
+ */
+abstract class RecordReader implements Closeable {
+
+    /**
+     * Number of records in all batches returned so far
+     */
+    private long records;
+
+    /**
+     * Number of records found by the last findBatchEnd call
+     */
+    private int found;
+
+    /**
+     * Offset of the last returned batch and of the first byte not returned
+     * yet, in decompressed input
+     */
+    private long batchOffset;
+    private long offset;
+
+    /**
+     * Position reported by the last consumed call
+     */
+    private long consumed;
+
+    /**
+     * Returns next batch of records. Batch ends after the $$$$ line of the
+     * last record, only the last batch of the input can end elsewhere
+     *
+     * @param records maximum number of records in the batch
+     * @return batch bytes or null at the end of input
+     * @throws IOException if the input could not be read
+     */
+    abstract ByteBuffer nextBatch(int records) throws IOException;
+
+    /**
+     * @return number of input file bytes read so far
+     */
+    abstract long position();
+
+    /**
+     * @return input file size
+     */
+    abstract long size();
+
+    /**
+     * Skips bytes at the start of decompressed input
+     *
+     * @param bytes number of bytes
+     * @throws IOException if the input is shorter or can not be skipped
+     */
+    abstract void skipInput(long bytes) throws IOException;
+
+    /**
+     * Skips input before the offset, so the next batch starts there. Called
+     * before the first batch, to resume a conversion from its checkpoint
+     *
+     * @param offset  offset in decompressed input, after the $$$$ line of a
+     *                record
+     * @param records number of records before the offset
+     * @throws IOException if the input is shorter or can not be skipped
+     */
+    void skip(long offset, long records) throws IOException {
+        skipInput(offset);
+        this.offset = offset;
+        batchOffset = offset;
+        this.records = records;
+        // skipped bytes are not counted as read
+        consumed = position();
+    }
+
+    /**
+     * @return number of records in all batches returned so far
+     */
+    long records() {
+        return records;
+    }
+
+    /**
+     * @return number of input file bytes read since the last call
+     */
+    long consumed() {
+        long position = position();
+        long bytes = position - consumed;
+        consumed = position;
+        return bytes;
+    }
+
+    /**
+     * @return offset of the first byte not returned yet in decompressed input
+     */
+    long offset() {
+        return offset;
+    }
+
+    /**
+     * @return offset of the last returned batch in decompressed input
+     */
+    long batchOffset() {
+        return batchOffset;
+    }
+
+    /**
+     * Opens input file. Gzip compressed files are detected by their magic
+     * bytes and decompressed on the fly, blocked gzip (BGZF) files are
+     * decompressed by many threads at once
+     *
+     * @param filename filename of input file
+     * @param threads  number of decompression threads for blocked gzip
+     * @return reader of the file
+     * @throws IOException if the file could not be opened
+     */
+    static RecordReader open(String filename, int threads) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BlockGzip.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            channel.position(0);
+            if (BlockGzip.isBlockGzip(header)) {
+                return new StreamRecordReader(new BlockGzipInputStream(channel, threads), channel);
+            }
+            if (BlockGzip.isGzip(header)) {
+                return new StreamRecordReader(new GZIPInputStream(Channels.newInputStream(channel), 1 << 16), channel);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new MappedRecordReader(channel);
+    }
+
+    /**
+     * Cuts batch at the end found by the last findBatchEnd call
+     *
+     * @param buffer buffer with records
+     * @param start  batch start
+     * @param end    batch end
+     * @return batch bytes
+     */
+    ByteBuffer batch(ByteBuffer buffer, int start, int end) {
+        records += found;
+        batchOffset = offset;
+        offset += end - start;
+        ByteBuffer batch = buffer.duplicate();
+        batch.position(start).limit(end);
+        return batch.slice();
+    }
+
+    /**
+     * Finds end of the batch in the buffer. Records end in the same places as
+     * in RecordParser, after any line whose trimmed start is $$$$
+     *
+     * @param buffer  buffer with records
+     * @param start   batch start
+     * @param limit   end of bytes available in the buffer
+     * @param last    true if no more bytes follow the limit
+     * @param records maximum number of records in the batch
+     * @return batch end or -1 if there is no complete record in the buffer
+     */
+    int findBatchEnd(ByteBuffer buffer, int start, int limit, boolean last, int records) {
+        int batchEnd = -1;
+        found = 0;
+        int lineStart = start;
+        while (lineStart < limit) {
+            int lineEnd = Bytes.lineEnd(buffer, lineStart, limit);
+            if (!last && (lineEnd == limit || lineEnd == limit - 1 && buffer.get(lineEnd) == '\r')) {
+                // line or its \r\n separator continues after the limit
+                break;
+            }
+            int next = Bytes.nextLine(buffer, lineEnd, limit);
+            int s = Bytes.trimStart(buffer, lineStart, lineEnd);
+            if (Bytes.matches(buffer, s, lineEnd, "$$$$")) {
+                batchEnd = Math.min(next, limit);
+                if (++found == records) {
+                    return batchEnd;
+                }
+            }
+            lineStart = next;
+        }
+        return last ? limit : batchEnd;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator of the records of an input file. Splitting cuts the next batch
+ * of whole records from the input, so the batch is parsed by another thread
+ * of a parallel stream while this spliterator goes on with the rest of the
+ * input
+ */
+class RecordSpliterator implements Spliterator<MoleculeView> {
+
+    /**
+     * Number of records in one batch
+     */
+    static final int BATCH_RECORDS = RecordPipeline.BATCH_RECORDS;
+
+    private static final int CHARACTERISTICS = ORDERED | NONNULL | IMMUTABLE;
+
+    /**
+     * Input, null for a spliterator of a single batch
+     */
+    private final RecordReader reader;
+
+    /**
+     * Batch that is not parsed yet, number of records in the input before it
+     * and its input offset
+     */
+    private ByteBuffer batch;
+    private long firstRecord;
+    private long firstOffset;
+
+    /**
+     * Parsed molecules not returned yet
+     */
+    private final Deque<MoleculeView> parsed = new ArrayDeque<>();
+
+    private RecordParser parser;
+
+    /**
+     * RecordSpliterator class constructor
+     *
+     * @param reader input file reader
+     */
+    RecordSpliterator(RecordReader reader) {
+        this.reader = reader;
+    }
+
+    private RecordSpliterator(ByteBuffer batch, long firstRecord, long firstOffset) {
+        this.reader = null;
+        this.batch = batch;
+        this.firstRecord = firstRecord;
+        this.firstOffset = firstOffset;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super MoleculeView> action) {
+        while (parsed.isEmpty()) {
+            if (batch == null && !read()) {
+                return false;
+            }
+            parse();
+        }
+        action.accept(parsed.poll());
+        return true;
+    }
+
+    /**
+     * Cuts the next batch from the input. Molecules already parsed come
+     * before it, so they are split off first
+     *
+     * @return spliterator of the records before the rest of the input, null
+     * if this is a single batch or the input has ended
+     */
+    @Override
+    public Spliterator<MoleculeView> trySplit() {
+        if (!parsed.isEmpty()) {
+            Spliterator<MoleculeView> prefix = Spliterators.spliterator(parsed.toArray(), CHARACTERISTICS);
+            parsed.clear();
+            return prefix;
+        }
+        if (reader == null || batch == null && !read()) {
+            return null;
+        }
+        RecordSpliterator prefix = new RecordSpliterator(batch, firstRecord, firstOffset);
+        batch = null;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        if (reader != null) {
+            return Long.MAX_VALUE;
+        }
+        return batch != null ? BATCH_RECORDS : parsed.size();
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Reads the next batch from the input
+     *
+     * @return false at the end of input
+     */
+    private boolean read() {
+        if (reader == null) {
+            return false;
+        }
+        try {
+            firstRecord = reader.records();
+            batch = reader.nextBatch(BATCH_RECORDS);
+            firstOffset = reader.batchOffset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return batch != null;
+    }
+
+    /**
+     * Parses the batch into views of its molecules. Broken records are
+     * skipped and reported as in the conversion
+     */
+    private void parse() {
+        if (parser == null) {
+            Molecule molecule = new Molecule(null, null);
+            // no format, so the whole record is parsed and nothing is printed
+            parser = new RecordParser(molecule, (char) 0, false, false);
+            parser.setConsumer(m -> parsed.add(new MoleculeView(m)));
+        }
+        parser.parse(batch, firstRecord, firstOffset);
+        batch = null;
+    }
+}
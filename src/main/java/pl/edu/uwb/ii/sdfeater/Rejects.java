@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records rejected by the parser. A broken record is skipped up to its $$$$
+ * line and reported with its input file, number, byte offset, length and
+ * reason, so the rest of the file is still converted. Reports are written to
+ * the reject file as tab separated values or, without the file, to the
+ * standard error. Records rejected by the workers of the record pipeline are
+ * collected per batch and reported by its writer, in input order
+ */
+class Rejects implements Closeable {
+
+    /**
+     * Reject file, null for standard error
+     */
+    private final BufferedWriter out;
+
+    /**
+     * Number of rejected records after which the run fails, -1 for no limit
+     */
+    private final long maxErrors;
+
+    private long count;
+
+    /**
+     * Rejects class constructor
+     *
+     * @param out       reject file, null for standard error
+     * @param maxErrors number of rejected records after which the run fails,
+     *                  -1 for no limit
+     */
+    Rejects(BufferedWriter out, long maxErrors) {
+        this.out = out;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Opens reject file and writes its header
+     *
+     * @param filename  reject file path, null for standard error
+     * @param maxErrors number of rejected records after which the run fails,
+     *                  -1 for no limit
+     * @return rejected records
+     * @throws IOException if the file could not be opened
+     */
+    static Rejects open(String filename, long maxErrors) throws IOException {
+        if (filename == null) {
+            return new Rejects(null, maxErrors);
+        }
+        BufferedWriter out = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8);
+        out.write("input\trecord\toffset\tlength\treason\n");
+        return new Rejects(out, maxErrors);
+    }
+
+    /**
+     * Reports rejected record
+     *
+     * @param input  input file of the record, null if not known
+     * @param record record number in the input file, starting from 1
+     * @param offset input byte offset of the record (in decompressed input)
+     * @param length record length in bytes, without the $$$$ line
+     * @param reason reason of rejection
+     * @throws IllegalStateException if there are more rejected records than
+     *                               the limit
+     */
+    synchronized void add(String input, long record, long offset, int length, String reason) {
+        count++;
+        if (out != null) {
+            try {
+                out.write((input != null ? input : "") + "\t" + record + "\t" + offset + "\t" + length + "\t" + reason.replace('\t', ' ').replace('\n', ' ') + "\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            System.err.println("Rejected record " + record + (input != null ? " of " + input : "") + " at byte " + offset + ": " + reason);
+        }
+        if (maxErrors >= 0 && count > maxErrors) {
+            throw new IllegalStateException("More than " + maxErrors + " rejected records");
+        }
+    }
+
+    /**
+     * Reports records rejected in one batch, in the order they were found
+     *
+     * @param batch records rejected in the batch
+     * @throws IllegalStateException if there are more rejected records than
+     *                               the limit
+     */
+    synchronized void addAll(Batch batch) {
+        for (Reject reject : batch.rejects) {
+            add(reject.input, reject.record, reject.offset, reject.length, reject.reason);
+        }
+    }
+
+    /**
+     * @return number of rejected records
+     */
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * @return true if the run was stopped by the limit of rejected records
+     */
+    synchronized boolean failed() {
+        return maxErrors >= 0 && count > maxErrors;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    /**
+     * Records rejected in one batch, kept until the batch is written
+     */
+    static class Batch extends Rejects {
+
+        private final List<Reject> rejects = new ArrayList<>();
+
+        Batch() {
+            super(null, -1);
+        }
+
+        @Override
+        void add(String input, long record, long offset, int length, String reason) {
+            rejects.add(new Reject(input, record, offset, length, reason));
+        }
+
+        @Override
+        long count() {
+            return rejects.size();
+        }
+    }
+
+    /**
+     * Rejected record
+     */
+    private static class Reject {
+        final String input;
+        final long record;
+        final long offset;
+        final int length;
+        final String reason;
+
+        Reject(String input, long record, long offset, int length, String reason) {
+            this.input = input;
+            this.record = record;
+            this.offset = offset;
+            this.length = length;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run statistics of the --stats option: time spent reading, tokenizing,
+ * rendering and writing, record latency histogram and bytes allocated per
+ * record. Progress is printed periodically to the standard error and all
+ * counters are available through JMX as pl.edu.uwb.ii.sdfeater:type=RunStats
+ */
+class RunStats implements RunStatsMBean {
+
+    /**
+     * JMX name of the statistics
+     */
+    static final String OBJECT_NAME = "pl.edu.uwb.ii.sdfeater:type=RunStats";
+
+    /**
+     * Time between progress lines in milliseconds
+     */
+    private static final long PROGRESS_MILLIS = 5000;
+
+    /**
+     * Allocated bytes of threads, null if the JVM does not count them
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+    private final long started = System.nanoTime();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder tokenizeNanos = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final Histogram latency = new Histogram();
+    private volatile long inputSize = -1;
+    private volatile long finished;
+    private Thread progress;
+
+    /**
+     * Starts counting, registers the statistics in JMX and starts printing
+     * progress. Only the first call counts, so a run over many input files
+     * is started once with their total size
+     *
+     * @param inputSize input file size in bytes
+     */
+    synchronized void start(long inputSize) {
+        if (progress != null) {
+            return;
+        }
+        this.inputSize = inputSize;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, RunStatsMBean.class), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Error while registering statistics in JMX: " + e.toString());
+        }
+        progress = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(PROGRESS_MILLIS);
+                    System.err.println(progressLine());
+                }
+            } catch (InterruptedException e) {
+                // finished
+            }
+        }, "SDFEater-stats");
+        progress.setDaemon(true);
+        progress.start();
+    }
+
+    /**
+     * Adds time of reading a batch
+     *
+     * @param nanos time in nanoseconds
+     * @param bytes number of input file bytes read with the batch
+     */
+    void read(long nanos, long bytes) {
+        readNanos.add(nanos);
+        inputBytes.add(bytes);
+    }
+
+    /**
+     * Adds time of writing output bytes
+     *
+     * @param nanos time in nanoseconds
+     * @param bytes number of bytes written
+     */
+    void write(long nanos, long bytes) {
+        writeNanos.add(nanos);
+        outputBytes.add(bytes);
+    }
+
+    /**
+     * Creates recorder of a single parser thread
+     *
+     * @return recorder
+     */
+    Recorder recorder() {
+        return new Recorder();
+    }
+
+    /**
+     * Stops printing progress and prints the summary
+     *
+     * @param out output of the summary
+     */
+    synchronized void finish(PrintStream out) {
+        if (progress != null) {
+            progress.interrupt();
+        }
+        finished = System.nanoTime();
+        long n = records.sum();
+        double seconds = elapsedNanos() / 1e9;
+        out.println(String.format(Locale.ROOT, "Records: %d in %.3f s (%.0f records/s, %.2f MB/s)",
+                n, seconds, n / seconds, inputBytes.sum() / 1e6 / seconds));
+        out.println(String.format(Locale.ROOT, "Input: %.2f MB, output: %.2f MB", inputBytes.sum() / 1e6, outputBytes.sum() / 1e6));
+        out.println("Rejected records: " + getRejectedRecords());
+        if (SDFEater.duplicates != null) {
+            out.println("Duplicate records: " + getDuplicateRecords());
+        }
+        // stages of many threads overlap, so their sum may exceed the run time
+        out.println(String.format(Locale.ROOT, "Time: read %.3f s, tokenize %.3f s, render %.3f s, write %.3f s",
+                readNanos.sum() / 1e9, tokenizeNanos.sum() / 1e9, renderNanos.sum() / 1e9, writeNanos.sum() / 1e9));
+        synchronized (latency) {
+            out.println(String.format(Locale.ROOT, "Record latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                    latency.percentile(0.5) / 1e3, latency.percentile(0.9) / 1e3, latency.percentile(0.99) / 1e3,
+                    latency.percentile(0.999) / 1e3, latency.max / 1e3));
+        }
+        out.println(THREADS != null ? "Allocated: " + getAllocatedBytesPerRecord() + " bytes/record"
+                : "Allocated: not supported by the JVM");
+    }
+
+    /**
+     * Progress line: records, bytes, records/s and ETA from the input size
+     */
+    String progressLine() {
+        long n = records.sum();
+        long bytes = inputBytes.sum();
+        double seconds = elapsedNanos() / 1e9;
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "Records: %d (%d rejected), input: %.1f MB",
+                n, getRejectedRecords(), bytes / 1e6));
+        if (inputSize > 0) {
+            line.append(String.format(Locale.ROOT, " of %.1f MB (%.1f%%)", inputSize / 1e6, 100.0 * bytes / inputSize));
+        }
+        line.append(String.format(Locale.ROOT, ", %.0f records/s, %.2f MB/s", n / seconds, bytes / 1e6 / seconds));
+        if (inputSize > 0 && bytes > 0) {
+            long eta = (long) (seconds * (inputSize - bytes) / bytes);
+            line.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return line.toString();
+    }
+
+    private long elapsedNanos() {
+        return (finished > 0 ? finished : System.nanoTime()) - started;
+    }
+
+    @Override
+    public long getRecords() {
+        return records.sum();
+    }
+
+    @Override
+    public long getRejectedRecords() {
+        return SDFEater.rejects.count();
+    }
+
+    @Override
+    public long getDuplicateRecords() {
+        return SDFEater.duplicates != null ? SDFEater.duplicates.count() : 0;
+    }
+
+    @Override
+    public long getInputBytes() {
+        return inputBytes.sum();
+    }
+
+    @Override
+    public long getInputSize() {
+        return inputSize;
+    }
+
+    @Override
+    public long getOutputBytes() {
+        return outputBytes.sum();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        return records.sum() / (elapsedNanos() / 1e9);
+    }
+
+    @Override
+    public long getReadMillis() {
+        return readNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getTokenizeMillis() {
+        return tokenizeNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getRenderMillis() {
+        return renderNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getWriteMillis() {
+        return writeNanos.sum() / 1000000;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        synchronized (latency) {
+            return latency.percentile(0.5) / 1e3;
+        }
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        synchronized (latency) {
+            return latency.percentile(0.99) / 1e3;
+        }
+    }
+
+    @Override
+    public long getAllocatedBytesPerRecord() {
+        long n = records.sum();
+        return n > 0 ? allocatedBytes.sum() / n : 0;
+    }
+
+    /**
+     * Counts time and allocations of batches parsed by one thread. Records
+     * are timed locally and added to the statistics once per batch
+     */
+    final class Recorder {
+
+        private final Histogram batchLatency = new Histogram();
+        private long batchStart;
+        private long recordStart;
+        private long render;
+        private long allocated;
+
+        /**
+         * Starts timing a batch
+         */
+        void startBatch() {
+            batchLatency.clear();
+            render = 0;
+            allocated = THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            batchStart = System.nanoTime();
+            recordStart = batchStart;
+        }
+
+        /**
+         * Adds record rendered since renderStart
+         *
+         * @param renderStart time before printing the record
+         */
+        void record(long renderStart) {
+            long now = System.nanoTime();
+            render += now - renderStart;
+            batchLatency.add(now - recordStart);
+            recordStart = now;
+        }
+
+        /**
+         * Adds batch to the statistics and its stage times to the JFR event
+         *
+         * @param count number of records in the batch
+         * @param event JFR event of the batch
+         */
+        void endBatch(long count, RecordBatchEvent event) {
+            long total = System.nanoTime() - batchStart;
+            long batchAllocated = THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated : 0;
+            records.add(count);
+            tokenizeNanos.add(total - render);
+            renderNanos.add(render);
+            allocatedBytes.add(batchAllocated);
+            synchronized (latency) {
+                latency.add(batchLatency);
+            }
+            event.tokenize = total - render;
+            event.render = render;
+            event.allocated = batchAllocated;
+        }
+    }
+
+    /**
+     * Histogram of nanosecond values with 8 buckets for every power of two,
+     * so percentiles are within 12.5% of the real value
+     */
+    static final class Histogram {
+
+        private static final int SUB_BUCKETS = 8;
+
+        private final long[] counts = new long[16 + 60 * SUB_BUCKETS];
+        private long count;
+        private long max;
+
+        void add(long value) {
+            value = Math.max(value, 0);
+            counts[index(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        void clear() {
+            java.util.Arrays.fill(counts, 0);
+            count = 0;
+            max = 0;
+        }
+
+        /**
+         * @param quantile quantile from 0 to 1
+         * @return upper bound of the bucket with the quantile, 0 if empty
+         */
+        long percentile(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return 0;
+        }
+
+        private static int index(long value) {
+            if (value < 16) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return 16 + (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int index) {
+            if (index < 16) {
+                return index;
+            }
+            int exponent = (index - 16) / SUB_BUCKETS + 4;
+            int sub = (index - 16) % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported()) {
+                sunThreads.setThreadAllocatedMemoryEnabled(true);
+                return sunThreads;
+            }
+        }
+        return null;
+    }
+}
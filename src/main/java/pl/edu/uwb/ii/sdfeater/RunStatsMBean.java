@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+/**
+ * Counters of the --stats option exposed through JMX
+ */
+public interface RunStatsMBean {
+
+    /**
+     * @return number of parsed records
+     */
+    long getRecords();
+
+    /**
+     * @return number of broken records skipped by the parser
+     */
+    long getRejectedRecords();
+
+    /**
+     * @return number of duplicate records dropped with --dedup-by
+     */
+    long getDuplicateRecords();
+
+    /**
+     * @return number of input file bytes read
+     */
+    long getInputBytes();
+
+    /**
+     * @return input file size in bytes, -1 if not known
+     */
+    long getInputSize();
+
+    /**
+     * @return number of output bytes written
+     */
+    long getOutputBytes();
+
+    /**
+     * @return average number of records parsed per second
+     */
+    double getRecordsPerSecond();
+
+    /**
+     * @return time of reading the input in milliseconds
+     */
+    long getReadMillis();
+
+    /**
+     * @return time of parsing records without printing them in milliseconds
+     */
+    long getTokenizeMillis();
+
+    /**
+     * @return time of printing records in the output format in milliseconds
+     */
+    long getRenderMillis();
+
+    /**
+     * @return time of writing the output in milliseconds
+     */
+    long getWriteMillis();
+
+    /**
+     * @return median time of parsing and printing a record in microseconds
+     */
+    double getLatencyP50Micros();
+
+    /**
+     * @return 99th percentile of time of parsing and printing a record in
+     * microseconds
+     */
+    double getLatencyP99Micros();
+
+    /**
+     * @return bytes allocated by parsing threads per record
+     */
+    long getAllocatedBytesPerRecord();
+}
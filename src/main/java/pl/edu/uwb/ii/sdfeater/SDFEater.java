@@ -30,11 +30,20 @@ import com.google.gson.reflect.TypeToken;
 import org.apache.commons.cli.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -48,20 +57,76 @@ class SDFEater {
     /**
      * Stores all Atoms data from periodic table
      */
-    static Map<String, Map<String, Object>> periodic_table_data;
+    static Map<String, Map<String, PropertyValues>> periodic_table_data;
 
     /**
-     * Loads periodic data from JSON file to the Map
+     * Loads periodic data from JSON file to the Map. Every value is kept with
+     * its type, found once when the data is loaded
      */
-    private static void loadPeriodicTableData() {
+    static void loadPeriodicTableData() {
         Gson gson = new GsonBuilder().create();
         Type type = new TypeToken<Map<String, Map<String, String>>>() {
         }.getType();
         InputStream periodic_resource = SDFEater.class.getResourceAsStream("periodic_table.json");
         Reader periodic_reader = new InputStreamReader(periodic_resource);
-        periodic_table_data = gson.fromJson(periodic_reader, type);
+        Map<String, Map<String, String>> data = gson.fromJson(periodic_reader, type);
+        Map<String, Map<String, PropertyValues>> typed = new LinkedHashMap<>();
+        data.forEach((symbol, element) -> {
+            Map<String, PropertyValues> values = new LinkedHashMap<>();
+            element.forEach((key, value) -> {
+                PropertyValues typedValue = new PropertyValues();
+                typedValue.add(value);
+                // URL type is found at once, the values are shared by threads
+                typedValue.type(0);
+                values.put(key, typedValue);
+            });
+            typed.put(symbol, values);
+        });
+        periodic_table_data = typed;
     }
 
+    /**
+     * Output names of molecule properties
+     */
+    static PropertyMapping propertyMapping;
+
+    /**
+     * Run statistics, null without the --stats option
+     */
+    static RunStats stats;
+
+    /**
+     * Records rejected by the parser, reported to the standard error by
+     * default
+     */
+    static Rejects rejects = new Rejects(null, -1);
+
+    /**
+     * Filter of converted records, null without the --filter option
+     */
+    static RecordFilter filter;
+
+    /**
+     * Dropped duplicate records, null without the --dedup-by option
+     */
+    static Duplicates duplicates;
+
+    /**
+     * Routing of records to output shards, null without the --shards option
+     */
+    static Shards shards;
+
+    /**
+     * Checkpoints of the conversion, null without the --checkpoint option
+     */
+    static Checkpoint checkpoint;
+
+    /**
+     * Manifest and delta conversion, null without the --manifest and --delta
+     * options
+     */
+    static Delta delta;
+
     /**
      * Apache Jena Model for some formats
      */
@@ -70,22 +135,104 @@ class SDFEater {
     /**
      * Initialize Apache Jena Model for some formats
      */
-    private static void initializeJenaModel() {
-        jenaModel = ModelFactory.createDefaultModel();
-        jenaModel.setNsPrefix("schema", "https://schema.org/");
-        jenaModel.setNsPrefix("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+    static void initializeJenaModel() {
+        jenaModel = createJenaModel();
+    }
+
+    /**
+     * Creates Apache Jena Model with the prefixes of the output formats
+     *
+     * @return empty model
+     */
+    static Model createJenaModel() {
+        Model model = ModelFactory.createDefaultModel();
+        model.setNsPrefix("schema", "https://schema.org/");
+        model.setNsPrefix("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+        return model;
+    }
+
+    /**
+     * Creates RDF writer for formats that are written molecule by molecule
+     * instead of collecting the whole file in the Jena model
+     *
+     * @param format output format: t - Turtle, n - N-Triples, h - RDF Thrift
+     * @param out    output stream
+     * @return RDF stream writer, null if format is not streamed
+     */
+    static StreamRDF createRDFStream(char format, OutputStream out) {
+        switch (format) {
+            case 't':
+                return StreamRDFWriter.getWriterStream(out, RDFFormat.TURTLE_BLOCKS, null);
+            case 'n':
+                return StreamRDFWriter.getWriterStream(out, RDFFormat.NTRIPLES, null);
+            case 'h':
+                return StreamRDFWriter.getWriterStream(out, RDFFormat.RDF_THRIFT, null);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Sends namespace prefixes of the output to RDF stream
+     *
+     * @param stream RDF stream
+     */
+    static void addRDFStreamPrefixes(StreamRDF stream) {
+        stream.prefix("schema", "https://schema.org/");
+        stream.prefix("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+    }
+
+    /**
+     * Opens output file or standard output
+     *
+     * @param filename   output file path or null for standard output
+     * @param gzip       compress output to blocked gzip
+     * @param bufferSize output buffer size in bytes
+     * @param threads    number of compression threads
+     * @return output sink
+     * @throws IOException if the file could not be opened
+     */
+    static OutputSink openOutput(String filename, boolean gzip, int bufferSize, int threads) throws IOException {
+        return openOutput(filename, gzip, bufferSize, threads, -1);
+    }
+
+    /**
+     * Opens output file or standard output, keeping the output of a resumed
+     * conversion
+     *
+     * @param filename   output file path or null for standard output
+     * @param gzip       compress output to blocked gzip
+     * @param bufferSize output buffer size in bytes
+     * @param threads    number of compression threads
+     * @param length     number of file bytes kept from the previous run, -1
+     *                   to truncate the file
+     * @return output sink
+     * @throws IOException if the file could not be opened
+     */
+    static OutputSink openOutput(String filename, boolean gzip, int bufferSize, int threads, long length) throws IOException {
+        boolean compressed = gzip || filename != null && filename.endsWith(".gz");
+        // compressed blocks are written to the channel without copying to another buffer
+        int channelBuffer = compressed ? 0 : bufferSize;
+        OutputSink out;
+        if (filename == null) {
+            out = ChannelOutputSink.stdout(channelBuffer);
+        } else if (length >= 0) {
+            out = ChannelOutputSink.open(filename, channelBuffer, length);
+        } else {
+            out = ChannelOutputSink.open(filename, channelBuffer);
+        }
+        return compressed ? new BlockGzipOutputSink(out, bufferSize, threads) : out;
     }
 
     /**
      * @param args the command line arguments
      */
     public static void main(String[] args) {
-        Molecule molecule = new Molecule();
         Options options = new Options();
-        Option input = new Option("i", "input", true, "input file path");
+        Option input = new Option("i", "input", true, "input file path; comma separated file paths, directories and glob patterns (e.g. \"data/*.sdf.gz\") to convert many files");
         input.setRequired(true);
         options.addOption(input);
-        Option formatarg = new Option("f", "format", true, "output format (cypher, cvme, smiles, inchi, turtle, ntriples, rdfxml, rdfthrift, jsonldhtml, jsonld, rdfa, microdata)");
+        Option formatarg = new Option("f", "format", true, "output format (cypher, cypher-batch, neo4jcsv, cvme, smiles, inchi, turtle, ntriples, rdfxml, rdfthrift, jsonldhtml, jsonld, rdfa, microdata) or index to write the record index of the input");
         formatarg.setRequired(true);
         options.addOption(formatarg);
         Option urls = new Option("u", "urls", false, "try to generate full database URLs instead of IDs (enabled in cvme)");
@@ -94,57 +241,302 @@ class SDFEater {
         Option periodic_data = new Option("p", "periodic", false, "add additional atoms data from periodic table (for cypher output format)");
         periodic_data.setRequired(false);
         options.addOption(periodic_data);
+        Option threads = new Option("t", "threads", true, "number of threads used to parse records (default 1)");
+        threads.setRequired(false);
+        threads.setType(Number.class);
+        options.addOption(threads);
+        Option output = new Option("o", "output", true, "output file path (standard output if not set), output directory in neo4jcsv");
+        output.setRequired(false);
+        options.addOption(output);
+        Option buffer = new Option("b", "buffer", true, "output buffer size in KiB (default 1024)");
+        buffer.setRequired(false);
+        buffer.setType(Number.class);
+        options.addOption(buffer);
+        Option gzip = new Option("z", "gzip", false, "compress output to blocked gzip using all threads (enabled if output file name ends with .gz)");
+        gzip.setRequired(false);
+        options.addOption(gzip);
+        Option batchSize = new Option(null, "batch-size", true, "molecules in one UNWIND statement of cypher-batch (default " + CypherBatch.DEFAULT_BATCH_SIZE + ")");
+        batchSize.setRequired(false);
+        batchSize.setType(Number.class);
+        options.addOption(batchSize);
+        Option commitSize = new Option(null, "commit-size", true, "molecules in one transaction of cypher-batch (default " + CypherBatch.DEFAULT_COMMIT_SIZE + ")");
+        commitSize.setRequired(false);
+        commitSize.setType(Number.class);
+        options.addOption(commitSize);
+        Option mapping = new Option("m", "mapping", true, "JSON file with output names of molecule properties, added to the built-in mapping");
+        mapping.setRequired(false);
+        options.addOption(mapping);
+        Option ids = new Option("d", "ids", true, "molecule identifier strategy (random, sequential, hash; default random)");
+        ids.setRequired(false);
+        options.addOption(ids);
+        Option statsarg = new Option(null, "stats", false, "print progress and run statistics to standard error, expose them through JMX");
+        statsarg.setRequired(false);
+        options.addOption(statsarg);
+        Option rejectsarg = new Option(null, "rejects", true, "file of rejected broken records (record number, byte offset, length and reason; standard error if not set)");
+        rejectsarg.setRequired(false);
+        options.addOption(rejectsarg);
+        Option maxErrors = new Option(null, "max-errors", true, "stop after this number of rejected records (default no limit)");
+        maxErrors.setRequired(false);
+        maxErrors.setType(Number.class);
+        options.addOption(maxErrors);
+        Option indexarg = new Option(null, "index", true, "record index file (default input file path with .idx)");
+        indexarg.setRequired(false);
+        options.addOption(indexarg);
+        Option indexKeys = new Option(null, "index-keys", true, "comma separated names of properties written to the record index (default " + String.join(",", RecordIndex.DEFAULT_KEYS) + ")");
+        indexKeys.setRequired(false);
+        options.addOption(indexKeys);
+        Option records = new Option(null, "records", true, "convert only these records from the index, comma separated numbers and ranges (e.g. 1-10,25)");
+        records.setRequired(false);
+        options.addOption(records);
+        Option keys = new Option(null, "keys", true, "convert only records from the index with these comma separated key property values (e.g. CHEBI:90,DB00006)");
+        keys.setRequired(false);
+        options.addOption(keys);
+        Option filterarg = new Option(null, "filter", true, "convert only records matching the expression over properties and atom and bond counts (e.g. \"Mass > 300 AND has(InChIKey)\")");
+        filterarg.setRequired(false);
+        options.addOption(filterarg);
+        Option dedupBy = new Option(null, "dedup-by", true, "drop records with the same first value of this property (e.g. InChIKey) or, with " + Duplicates.CONTENT_HASH + ", the same record bytes");
+        dedupBy.setRequired(false);
+        options.addOption(dedupBy);
+        Option dedupOffHeap = new Option(null, "dedup-off-heap", false, "keep hashes of --dedup-by keys outside the Java heap");
+        dedupOffHeap.setRequired(false);
+        options.addOption(dedupOffHeap);
+        Option perInput = new Option(null, "per-input", false, "write every input file to its own file in the output directory (-o, current directory if not set)");
+        perInput.setRequired(false);
+        options.addOption(perInput);
+        Option shardsarg = new Option(null, "shards", true, "split the output (-o) into this number of complete files, e.g. out-1.ttl, out-2.ttl");
+        shardsarg.setRequired(false);
+        shardsarg.setType(Number.class);
+        options.addOption(shardsarg);
+        Option shardBy = new Option(null, "shard-by", true, "routing of records to shards: round-robin, records:N, size:N[K|M|G] of input or key:property (default round-robin)");
+        shardBy.setRequired(false);
+        options.addOption(shardBy);
+        Option checkpointarg = new Option(null, "checkpoint", true, "file to which the progress of the conversion is saved periodically, so it can be resumed");
+        checkpointarg.setRequired(false);
+        options.addOption(checkpointarg);
+        Option checkpointInterval = new Option(null, "checkpoint-interval", true, "seconds between checkpoints (default " + Checkpoint.DEFAULT_INTERVAL + ")");
+        checkpointInterval.setRequired(false);
+        checkpointInterval.setType(Number.class);
+        options.addOption(checkpointInterval);
+        Option resume = new Option(null, "resume", false, "continue the conversion from its --checkpoint file, truncating the output to the checkpointed length");
+        resume.setRequired(false);
+        options.addOption(resume);
+        Option manifest = new Option(null, "manifest", true, "file to which the key and content hash of every converted record are written");
+        manifest.setRequired(false);
+        options.addOption(manifest);
+        Option deltaarg = new Option(null, "delta", true, "manifest of a previous run: only new and changed records are converted, delete statements of changed and deleted records are written to --deletes (cypher, cypher-batch and RDF formats)");
+        deltaarg.setRequired(false);
+        options.addOption(deltaarg);
+        Option deltaKey = new Option(null, "delta-key", true, "property identifying molecules in --manifest and --delta (e.g. \"ChEBI ID\")");
+        deltaKey.setRequired(false);
+        options.addOption(deltaKey);
+        Option deletes = new Option(null, "deletes", true, "file of delete statements of --delta, Cypher or SPARQL Update (default output file path with .deletes.cypher or .deletes.ru)");
+        deletes.setRequired(false);
+        options.addOption(deletes);
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
         try {
             cmd = parser.parse(options, args);
             String fileparam = cmd.getOptionValue("input");
-            File file = new File(fileparam);
-            if (cmd.hasOption("format")) {
-                String format = cmd.getOptionValue("format");
-                if (format.equalsIgnoreCase("cypher")) {
-                    if (cmd.hasOption("urls") && cmd.hasOption("periodic")) {
-                        loadPeriodicTableData();
-                        file.parse(molecule, 'c', true, true);
-                    } else if (!cmd.hasOption("urls") && cmd.hasOption("periodic")) {
-                        loadPeriodicTableData();
-                        file.parse(molecule, 'c', false, true);
-                    } else if (cmd.hasOption("urls") && !cmd.hasOption("periodic")) {
-                        file.parse(molecule, 'c', true, false);
-                    } else if (!cmd.hasOption("urls") && !cmd.hasOption("periodic")) {
-                        file.parse(molecule, 'c', false, false);
+            int threadsparam = cmd.hasOption("threads") ? ((Number) cmd.getParsedOptionValue("threads")).intValue() : 1;
+            if (threadsparam < 1) {
+                throw new ParseException("Number of threads must be at least 1");
+            }
+            int bufferparam = cmd.hasOption("buffer") ? ((Number) cmd.getParsedOptionValue("buffer")).intValue() * 1024 : OutputSink.DEFAULT_BUFFER_SIZE;
+            if (bufferparam < 1) {
+                throw new ParseException("Output buffer size must be at least 1 KiB");
+            }
+            int batchsizeparam = cmd.hasOption("batch-size") ? ((Number) cmd.getParsedOptionValue("batch-size")).intValue() : CypherBatch.DEFAULT_BATCH_SIZE;
+            int commitsizeparam = cmd.hasOption("commit-size") ? ((Number) cmd.getParsedOptionValue("commit-size")).intValue() : CypherBatch.DEFAULT_COMMIT_SIZE;
+            if (batchsizeparam < 1 || commitsizeparam < 1) {
+                throw new ParseException("Batch and commit sizes must be at least 1");
+            }
+            long maxerrorsparam = cmd.hasOption("max-errors") ? ((Number) cmd.getParsedOptionValue("max-errors")).longValue() : -1;
+            if (cmd.hasOption("max-errors") && maxerrorsparam < 0) {
+                throw new ParseException("Maximum number of errors must not be negative");
+            }
+            MoleculeId.Strategy idsparam;
+            try {
+                idsparam = MoleculeId.Strategy.of(cmd.getOptionValue("ids", "random"));
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("Unknown molecule identifier strategy: " + cmd.getOptionValue("ids"));
+            }
+            if (cmd.hasOption("filter")) {
+                try {
+                    filter = RecordFilter.compile(cmd.getOptionValue("filter"));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            if (cmd.hasOption("dedup-by")) {
+                duplicates = new Duplicates(cmd.getOptionValue("dedup-by").trim(), cmd.hasOption("dedup-off-heap"));
+            }
+            if (cmd.hasOption("shards")) {
+                if (!cmd.hasOption("output") || cmd.hasOption("per-input")) {
+                    throw new ParseException("Shards need a single output file (-o)");
+                }
+                if ("neo4jcsv".equalsIgnoreCase(cmd.getOptionValue("format"))) {
+                    throw new ParseException("neo4jcsv output can not be sharded");
+                }
+                try {
+                    shards = Shards.of(((Number) cmd.getParsedOptionValue("shards")).intValue(), cmd.getOptionValue("shard-by", "round-robin"));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            if ("index".equalsIgnoreCase(cmd.getOptionValue("format"))) {
+                String indexparam = cmd.getOptionValue("output", fileparam + RecordIndex.EXTENSION);
+                List<String> keysparam = cmd.hasOption("index-keys") ? Arrays.asList(cmd.getOptionValue("index-keys").split(",")) : RecordIndex.DEFAULT_KEYS;
+                try {
+                    long indexed = RecordIndex.build(fileparam, indexparam, keysparam);
+                    System.out.println("Indexed " + indexed + " records to " + indexparam);
+                } catch (IOException e) {
+                    System.err.println("Error while writing index: " + e.toString());
+                }
+                return;
+            }
+            try {
+                propertyMapping = PropertyMapping.load(cmd.getOptionValue("mapping"));
+            } catch (IOException e) {
+                System.err.println("Error while reading property mapping: " + e.toString());
+                return;
+            }
+            if (cmd.hasOption("stats")) {
+                stats = new RunStats();
+            }
+            try {
+                rejects = Rejects.open(cmd.getOptionValue("rejects"), maxerrorsparam);
+            } catch (IOException e) {
+                System.err.println("Error while opening reject file: " + e.toString());
+                return;
+            }
+            char formatparam = Conversion.format(cmd.getOptionValue("format"));
+            if (formatparam == 0) {
+                throw new ParseException("Unknown output format: " + cmd.getOptionValue("format"));
+            }
+            List<String> inputs;
+            try {
+                inputs = InputFiles.expand(fileparam);
+            } catch (IOException e) {
+                System.err.println("Error while reading input: " + e.toString());
+                return;
+            }
+            RecordIndex index = null;
+            long[] selected = null;
+            if (cmd.hasOption("records") || cmd.hasOption("keys")) {
+                if (inputs.size() > 1 || cmd.hasOption("per-input")) {
+                    throw new ParseException("Records can be selected only in a single input file");
+                }
+                String indexparam = cmd.getOptionValue("index", fileparam + RecordIndex.EXTENSION);
+                try {
+                    index = RecordIndex.open(indexparam, fileparam);
+                    selected = index.select(cmd.getOptionValue("records"), cmd.getOptionValue("keys"), fileparam);
+                } catch (IOException e) {
+                    System.err.println("Error while reading index: " + e.toString());
+                    return;
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException(e.getMessage());
+                }
+            }
+            if (cmd.hasOption("manifest") || cmd.hasOption("delta")) {
+                String keyparam = cmd.getOptionValue("delta-key");
+                if (keyparam == null) {
+                    throw new ParseException("Manifest needs its key property (--delta-key)");
+                }
+                String deletesparam = null;
+                if (cmd.hasOption("delta")) {
+                    boolean cypher = Delta.CYPHER_FORMATS.indexOf(formatparam) >= 0;
+                    if (!cypher && Delta.RDF_FORMATS.indexOf(formatparam) < 0) {
+                        throw new ParseException("Delta conversion is supported in cypher, cypher-batch and RDF formats");
+                    }
+                    if (!cypher && propertyMapping.get(keyparam).schema == null) {
+                        throw new ParseException("Delta key property has no schema.org mapping: " + keyparam);
+                    }
+                    String outputparam = cmd.getOptionValue("output");
+                    deletesparam = cmd.getOptionValue("deletes", outputparam != null ? outputparam + (cypher ? ".deletes.cypher" : ".deletes.ru") : null);
+                    if (deletesparam == null) {
+                        throw new ParseException("Delta conversion needs an output file (-o) or --deletes");
                     }
-                } else if (format.equalsIgnoreCase("cvme")) {
-                    file.parse(molecule, 'r', true, false);
-                } else if (format.equalsIgnoreCase("smiles")) {
-                    file.parse(molecule, 's', false, false);
-                } else if (format.equalsIgnoreCase("inchi")) {
-                    file.parse(molecule, 'i', false, false);
-                } else if (format.equalsIgnoreCase("turtle")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 't', false, false);
-                } else if (format.equalsIgnoreCase("ntriples")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 'n', false, false);
-                } else if (format.equalsIgnoreCase("jsonldhtml")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 'd', false, false);
-                } else if (format.equalsIgnoreCase("jsonld")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 'j', false, false);
-                } else if (format.equalsIgnoreCase("rdfxml")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 'x', false, false);
-                } else if (format.equalsIgnoreCase("rdfthrift")) {
-                    initializeJenaModel();
-                    file.parse(molecule, 'h', false, false);
-                } else if (format.equalsIgnoreCase("rdfa")) {
-                    file.parse(molecule, 'a', false, false);
-                } else if (format.equalsIgnoreCase("microdata")) {
-                    file.parse(molecule, 'm', false, false);
                 }
-
+                try {
+                    delta = Delta.open(keyparam, cmd.getOptionValue("manifest"), cmd.getOptionValue("delta"), deletesparam, formatparam);
+                } catch (IOException e) {
+                    System.err.println("Error while opening manifest: " + e.toString());
+                    return;
+                }
+            }
+            if (cmd.hasOption("resume") && !cmd.hasOption("checkpoint")) {
+                throw new ParseException("Resumed conversion needs its --checkpoint file");
+            }
+            if (cmd.hasOption("checkpoint")) {
+                // formats without state kept between records, written to a single output
+                if ("crsiam".indexOf(formatparam) < 0) {
+                    throw new ParseException("Checkpoints are supported in cypher, cvme, smiles, inchi, rdfa and microdata");
+                }
+                if (!cmd.hasOption("output") || inputs.size() > 1 || cmd.hasOption("per-input") || shards != null
+                        || index != null || duplicates != null || delta != null) {
+                    throw new ParseException("Checkpoints need a single input and output file, without --shards, --records, --keys, --dedup-by and --manifest");
+                }
+                int intervalparam = cmd.hasOption("checkpoint-interval") ? ((Number) cmd.getParsedOptionValue("checkpoint-interval")).intValue() : Checkpoint.DEFAULT_INTERVAL;
+                if (intervalparam < 1) {
+                    throw new ParseException("Checkpoint interval must be at least 1 second");
+                }
+                if (cmd.hasOption("resume")) {
+                    try {
+                        checkpoint = Checkpoint.resume(cmd.getOptionValue("checkpoint"), inputs.get(0), formatparam, intervalparam);
+                    } catch (IOException e) {
+                        System.err.println("Error while reading checkpoint: " + e.toString());
+                        return;
+                    }
+                } else {
+                    checkpoint = Checkpoint.start(cmd.getOptionValue("checkpoint"), inputs.get(0), formatparam, intervalparam);
+                }
+            }
+            // URLs and periodic table data are options of the graph formats, cvme always uses URLs
+            boolean graph = formatparam == 'c' || formatparam == 'q' || formatparam == 'b';
+            boolean periodicparam = graph && cmd.hasOption("periodic");
+            if (periodicparam) {
+                loadPeriodicTableData();
+            }
+            Conversion conversion = new Conversion(formatparam, formatparam == 'r' || graph && cmd.hasOption("urls"), periodicparam,
+                    idsparam, bufferparam, cmd.hasOption("gzip"), batchsizeparam, commitsizeparam);
+            try {
+                try {
+                    if (cmd.hasOption("per-input")) {
+                        conversion.runPerInput(inputs, cmd.getOptionValue("output", "."), threadsparam);
+                    } else {
+                        conversion.run(inputs, cmd.getOptionValue("output"), threadsparam, index, selected);
+                    }
+                } finally {
+                    // reject file, manifest and delete statements are complete only when closed
+                    try {
+                        rejects.close();
+                    } finally {
+                        if (delta != null) {
+                            delta.close();
+                        }
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error while writing output: " + e.toString());
+            }
+            // after closing the output, so its last bytes are counted
+            if (stats != null) {
+                stats.finish(System.err);
+            } else {
+                if (rejects.count() > 0) {
+                    System.err.println("Rejected records: " + rejects.count());
+                }
+                if (duplicates != null) {
+                    System.err.println("Duplicate records: " + duplicates.count());
+                }
+            }
+            if (delta != null && !delta.summary().isEmpty()) {
+                System.err.println(delta.summary());
+            }
+            if (rejects.failed()) {
+                // output is complete up to the failure, but the run did not finish
+                System.exit(1);
             }
         } catch (ParseException e) {
             System.out.println(e.getMessage());
@@ -0,0 +1,197 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Routing of records to the output shards of the --shards option. Every
+ * shard is a complete file of the format, with its own header and footer,
+ * so shards can be loaded in parallel. Routing depends only on the record,
+ * never on timing, so every run with the same input gives the same shards
+ */
+class Shards {
+
+    /**
+     * Ways of choosing the shard of a record
+     */
+    enum Routing {
+        /**
+         * Records in turn
+         */
+        ROUND_ROBIN,
+        /**
+         * Runs of a given number of records in turn
+         */
+        RECORDS,
+        /**
+         * Runs of records from a given number of input bytes in turn
+         */
+        SIZE,
+        /**
+         * Hash of the first value of a key property, records without the key
+         * in turn
+         */
+        KEY
+    }
+
+    /**
+     * Number of shards
+     */
+    final int count;
+
+    final Routing routing;
+
+    /**
+     * Records or input bytes in one run of RECORDS and SIZE routing
+     */
+    private final long budget;
+
+    /**
+     * Key property name of KEY routing, null for other routings
+     */
+    final String property;
+
+    private Shards(int count, Routing routing, long budget, String property) {
+        this.count = count;
+        this.routing = routing;
+        this.budget = budget;
+        this.property = property;
+    }
+
+    /**
+     * Creates routing from its description
+     *
+     * @param count   number of shards
+     * @param routing round-robin, records:N, size:N with optional K, M or G
+     *                suffix, or key:property name
+     * @return shard routing
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    static Shards of(int count, String routing) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Number of shards must be at least 1");
+        }
+        int colon = routing.indexOf(':');
+        String name = (colon < 0 ? routing : routing.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+        String value = colon < 0 ? "" : routing.substring(colon + 1).trim();
+        switch (name) {
+            case "round-robin":
+                return new Shards(count, Routing.ROUND_ROBIN, 1, null);
+            case "records":
+                return new Shards(count, Routing.RECORDS, budget(value, false), null);
+            case "size":
+                return new Shards(count, Routing.SIZE, budget(value, true), null);
+            case "key":
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("Missing key property of shard routing");
+                }
+                return new Shards(count, Routing.KEY, 1, value);
+            default:
+                throw new IllegalArgumentException("Unknown shard routing: " + routing);
+        }
+    }
+
+    private static long budget(String value, boolean size) {
+        long unit = 1;
+        if (size && !value.isEmpty()) {
+            switch (Character.toUpperCase(value.charAt(value.length() - 1))) {
+                case 'K':
+                    unit = 1L << 10;
+                    break;
+                case 'M':
+                    unit = 1L << 20;
+                    break;
+                case 'G':
+                    unit = 1L << 30;
+                    break;
+                default:
+                    break;
+            }
+            if (unit > 1) {
+                value = value.substring(0, value.length() - 1);
+            }
+        }
+        try {
+            long budget = Long.parseLong(value) * unit;
+            if (budget < 1) {
+                throw new IllegalArgumentException("Shard budget must be at least 1");
+            }
+            return budget;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shard budget: " + value);
+        }
+    }
+
+    /**
+     * Chooses shard of the record
+     *
+     * @param record   record number, starting from 1
+     * @param offset   input byte offset of the record
+     * @param keyFound true if the record has the key property
+     * @param key      hash of the key property value
+     * @return shard number, starting from 0
+     */
+    int shard(long record, long offset, boolean keyFound, long key) {
+        switch (routing) {
+            case RECORDS:
+                return (int) ((record - 1) / budget % count);
+            case SIZE:
+                return (int) (offset / budget % count);
+            case KEY:
+                if (keyFound) {
+                    return (int) Long.remainderUnsigned(key, count);
+                }
+                return (int) ((record - 1) % count);
+            default:
+                return (int) ((record - 1) % count);
+        }
+    }
+
+    /**
+     * File names of the shards: output file name with the shard number
+     * before its extension (e.g. out.ttl.gz to out-01.ttl.gz)
+     *
+     * @param output output file path
+     * @return shard file paths
+     */
+    List<String> names(String output) {
+        Path path = Paths.get(output);
+        String name = path.getFileName().toString();
+        int dot = name.indexOf('.', 1);
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot);
+        String number = "%0" + String.valueOf(count).length() + "d";
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            names.add(path.resolveSibling(base + "-" + String.format(Locale.ROOT, number, i) + extension).toString());
+        }
+        return names;
+    }
+}
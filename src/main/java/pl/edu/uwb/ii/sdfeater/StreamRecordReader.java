@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads SDF records from a stream, used for compressed input. Bytes are read
+ * into one heap buffer that is compacted and reused, so each batch is copied
+ * out of it and can be parsed by other threads while the next ones are read
+ */
+class StreamRecordReader extends RecordReader {
+
+    /**
+     * Initial buffer size, the buffer grows only for records that do not fit
+     */
+    static final int FILL = 4 << 20;
+
+    private final InputStream in;
+
+    /**
+     * Channel of the input file, used to report progress
+     */
+    private final FileChannel channel;
+
+    private byte[] buffer = new byte[FILL];
+
+    /**
+     * Start of bytes not returned yet
+     */
+    private int start;
+
+    /**
+     * End of bytes read into the buffer
+     */
+    private int end;
+
+    private boolean eof;
+
+    private IOException error;
+
+    /**
+     * StreamRecordReader class constructor
+     *
+     * @param in      decompressed input
+     * @param channel channel of input file
+     */
+    StreamRecordReader(InputStream in, FileChannel channel) {
+        this.in = in;
+        this.channel = channel;
+    }
+
+    @Override
+    ByteBuffer nextBatch(int records) throws IOException {
+        while (true) {
+            fill();
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            // after a read error the last incomplete record is not returned
+            int batchEnd = start == end ? -1 : findBatchEnd(wrapped, start, end, eof && error == null, records);
+            if (batchEnd >= 0) {
+                byte[] bytes = Arrays.copyOfRange(buffer, start, batchEnd);
+                start = batchEnd;
+                return batch(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            if (error != null) {
+                throw error;
+            }
+            if (eof) {
+                return null;
+            }
+            // no complete record buffered
+            if (start > 0) {
+                compact();
+            } else {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+    }
+
+    /**
+     * Reads input into the free end of the buffer, until it is full or the
+     * input ends. Bytes not returned yet are moved to the buffer start first
+     * when they take at most half of it, so each byte is moved at most once
+     * on average. Read error ends the input and is thrown when records read
+     * before it are returned
+     */
+    private void fill() {
+        if (eof) {
+            return;
+        }
+        if (start > 0 && end - start <= buffer.length / 2) {
+            compact();
+        }
+        try {
+            while (end < buffer.length) {
+                int n = in.read(buffer, end, buffer.length - end);
+                if (n < 0) {
+                    eof = true;
+                    return;
+                }
+                end += n;
+            }
+        } catch (IOException e) {
+            error = e;
+            eof = true;
+        }
+    }
+
+    /**
+     * Moves bytes not returned yet to the buffer start
+     */
+    private void compact() {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+    }
+
+    @Override
+    long position() {
+        try {
+            return channel.position();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    void skipInput(long bytes) throws IOException {
+        long left = bytes;
+        while (left > 0) {
+            long skipped = in.skip(left);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Input file is shorter than " + bytes + " bytes");
+                }
+                skipped = 1;
+            }
+            left -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockGzipTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Text and random bytes, so there are compressed and stored blocks
+     */
+    private static byte[] data() {
+        byte[] data = new byte[5 * BlockGzip.BLOCK_DATA_SIZE + 1234];
+        byte[] text = "CHEBI:15377\tH2O\t18.01530\n".getBytes();
+        for (int i = 0; i < 3 * BlockGzip.BLOCK_DATA_SIZE; i++) {
+            data[i] = text[i % text.length];
+        }
+        byte[] random = new byte[data.length - 3 * BlockGzip.BLOCK_DATA_SIZE];
+        new Random(42).nextBytes(random);
+        System.arraycopy(random, 0, data, 3 * BlockGzip.BLOCK_DATA_SIZE, random.length);
+        return data;
+    }
+
+    @Test
+    public void decompressesCompressedBlocks() throws IOException {
+        byte[] data = data();
+        byte[] compressed = BlockGzip.compress(data, 6);
+        assertTrue(BlockGzip.isBlockGzip(ByteBuffer.wrap(compressed)));
+        assertArrayEquals(data, BlockGzip.decompress(compressed, 0, compressed.length));
+    }
+
+    @Test
+    public void writesFilesReadableByGzip() throws IOException {
+        byte[] data = data();
+        byte[] compressed = BlockGzip.compress(data, 6);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            assertArrayEquals(data, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void readsFileWithManyThreads() throws IOException {
+        byte[] data = data();
+        Path file = folder.newFile("data.gz").toPath();
+        try (OutputSink out = new BlockGzipOutputSink(ChannelOutputSink.open(file.toString(), 1 << 16), 1 << 16, 3)) {
+            out.write(data, 0, data.length);
+        }
+        try (InputStream in = new BlockGzipInputStream(FileChannel.open(file, StandardOpenOption.READ), 3)) {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            in.transferTo(read);
+            assertArrayEquals(data, read.toByteArray());
+        }
+        byte[] raw = Files.readAllBytes(file);
+        assertArrayEquals(data, BlockGzip.decompress(raw, 0, raw.length));
+    }
+
+    @Test
+    public void rejectsBlockSizeOverLimit() {
+        byte[] compressed = BlockGzip.compress(data(), 6);
+        int size = BlockGzip.blockSize(ByteBuffer.wrap(compressed), 0, compressed.length);
+        // ISIZE of the first block, little endian
+        compressed[size - 1] = 0x7f;
+        try {
+            BlockGzip.decompress(compressed, 0, compressed.length);
+            fail("Block with ISIZE over 64 KiB decompressed");
+        } catch (ZipException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid block size"));
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void rejectsBlockSizeNotMatchingData() throws ZipException {
+        byte[] compressed = BlockGzip.compress(data(), 6);
+        int size = BlockGzip.blockSize(ByteBuffer.wrap(compressed), 0, compressed.length);
+        compressed[size - 4]--;
+        BlockGzip.decompress(compressed, 0, compressed.length);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumesFromSavedCheckpoint() throws IOException {
+        String checkpointFile = folder.getRoot().toPath().resolve("run.checkpoint").toString();
+        Path output = folder.getRoot().toPath().resolve("out.cypher");
+        Checkpoint checkpoint = Checkpoint.start(checkpointFile, "chebi.sdf", 'c', 0);
+        assertFalse(checkpoint.resumed);
+        assertTrue(checkpoint.isDue());
+        byte[] written = "CREATE (c:Molecule);\n".getBytes(StandardCharsets.UTF_8);
+        try (OutputSink out = ChannelOutputSink.open(output.toString(), 1 << 10)) {
+            out.write(written, 0, written.length);
+            checkpoint.save(1234, 5, out);
+        }
+        assertFalse(Files.exists(Path.of(checkpointFile + ".tmp")));
+
+        Checkpoint resumed = Checkpoint.resume(checkpointFile, "chebi.sdf", 'c', 60);
+        assertTrue(resumed.resumed);
+        assertEquals(1234, resumed.offset);
+        assertEquals(5, resumed.records);
+        assertEquals(written.length, resumed.length);
+        assertEquals(Molecule.nextID(), resumed.ids);
+        assertFalse(resumed.isDue());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCheckpointOfAnotherInput() throws IOException {
+        String checkpointFile = folder.getRoot().toPath().resolve("run.checkpoint").toString();
+        try (OutputSink out = ChannelOutputSink.open(folder.getRoot().toPath().resolve("out.cypher").toString(), 1 << 10)) {
+            Checkpoint.start(checkpointFile, "chebi.sdf", 'c', 0).save(0, 0, out);
+        }
+        Checkpoint.resume(checkpointFile, "drugbank.sdf", 'c', 60);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCheckpointOfAnotherFormat() throws IOException {
+        String checkpointFile = folder.getRoot().toPath().resolve("run.checkpoint").toString();
+        try (OutputSink out = ChannelOutputSink.open(folder.getRoot().toPath().resolve("out.cypher").toString(), 1 << 10)) {
+            Checkpoint.start(checkpointFile, "chebi.sdf", 'c', 0).save(0, 0, out);
+        }
+        Checkpoint.resume(checkpointFile, "chebi.sdf", 't', 60);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBrokenCheckpoint() throws IOException {
+        Path checkpointFile = folder.newFile("run.checkpoint").toPath();
+        Files.write(checkpointFile, "input=chebi.sdf\nformat=c\noffset=x\n".getBytes(StandardCharsets.UTF_8));
+        Checkpoint.resume(checkpointFile.toString(), "chebi.sdf", 'c', 60);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Output of many threads must be the same as the output of a single thread
+ */
+public class ConversionTest {
+
+    private static final List<String> EXAMPLES = Arrays.asList("examples/chebi_test.sdf",
+            "examples/chebi_special_char_test.sdf", "examples/drugbank_test.sdf", "examples/drugbank_test2.sdf");
+
+    /**
+     * Formats converted by the record pipeline
+     */
+    private static final String PARALLEL_FORMATS = "crsitnh";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Examples repeated over many batches, every seventh record with a
+     * broken counts line, and its gzip compressed copy
+     */
+    private String records;
+    private String compressed;
+
+    @BeforeClass
+    public static void loadPropertyMapping() throws IOException {
+        if (SDFEater.propertyMapping == null) {
+            SDFEater.propertyMapping = PropertyMapping.load(null);
+        }
+    }
+
+    @Before
+    public void writeRecords() throws IOException {
+        StringBuilder examples = new StringBuilder();
+        for (String example : EXAMPLES) {
+            examples.append(new String(Files.readAllBytes(Paths.get(example)), StandardCharsets.UTF_8));
+        }
+        String[] split = examples.toString().split("(?<=\\$\\$\\$\\$\n)");
+        StringBuilder text = new StringBuilder();
+        int number = 0;
+        for (int copy = 0; copy < 100; copy++) {
+            for (String record : split) {
+                if (number++ % 7 == 3) {
+                    record = record.replaceFirst("(?m)^.{3}(.*V2000)$", "abc$1");
+                }
+                text.append(record);
+            }
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        Path path = folder.getRoot().toPath().resolve("records.sdf");
+        Files.write(path, bytes);
+        records = path.toString();
+        Path gzip = folder.getRoot().toPath().resolve("records.sdf.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write(bytes);
+        }
+        compressed = gzip.toString();
+    }
+
+    @After
+    public void clearOptions() {
+        SDFEater.rejects = new Rejects(null, -1);
+        SDFEater.duplicates = null;
+        SDFEater.filter = null;
+    }
+
+    /**
+     * Converts input files, rejected records are written next to the output
+     * with .rejects added
+     */
+    private Path convert(char format, int threads, List<String> inputs) throws IOException {
+        Path output = folder.getRoot().toPath().resolve(format + "-" + threads + "-" + inputs.size());
+        SDFEater.rejects = Rejects.open(output + ".rejects", -1);
+        try {
+            new Conversion(format, format == 'r', false, MoleculeId.Strategy.SEQUENTIAL, 1 << 16, false, 1000, 10000)
+                    .run(inputs, output.toString(), threads, null, null);
+        } finally {
+            SDFEater.rejects.close();
+        }
+        return output;
+    }
+
+    private Path assertSameOutput(char format, List<String> inputs) throws IOException {
+        Path single = convert(format, 1, inputs);
+        Path parallel = convert(format, 4, inputs);
+        String message = "format " + format + " of " + inputs;
+        assertTrue(message, Files.size(single) > 0);
+        assertArrayEquals(message, Files.readAllBytes(single), Files.readAllBytes(parallel));
+        assertArrayEquals(message, Files.readAllBytes(Paths.get(single + ".rejects")),
+                Files.readAllBytes(Paths.get(parallel + ".rejects")));
+        return single;
+    }
+
+    @Test
+    public void convertsFileInInputOrder() throws IOException {
+        for (char format : PARALLEL_FORMATS.toCharArray()) {
+            Path output = assertSameOutput(format, List.of(records));
+            // header and the broken records
+            assertEquals(1 + 100, Files.readAllLines(Paths.get(output + ".rejects")).size());
+        }
+    }
+
+    @Test
+    public void convertsCompressedFileInInputOrder() throws IOException {
+        for (char format : PARALLEL_FORMATS.toCharArray()) {
+            assertSameOutput(format, List.of(compressed));
+        }
+    }
+
+    @Test
+    public void convertsManyFilesInInputOrder() throws IOException {
+        List<String> inputs = new ArrayList<>(EXAMPLES);
+        inputs.add(compressed);
+        inputs.add(records);
+        for (char format : PARALLEL_FORMATS.toCharArray()) {
+            assertSameOutput(format, inputs);
+        }
+    }
+
+    @Test
+    public void keepsFirstDuplicates() throws IOException {
+        SDFEater.duplicates = new Duplicates("InChIKey", false);
+        Path single = convert('c', 1, List.of(records));
+        SDFEater.duplicates = new Duplicates("InChIKey", false);
+        Path parallel = convert('c', 4, List.of(records));
+        assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(parallel));
+    }
+
+    @Test
+    public void filtersRecords() throws IOException {
+        SDFEater.filter = RecordFilter.compile("atoms > 10 AND has(InChIKey)");
+        assertSameOutput('c', List.of(records));
+    }
+}
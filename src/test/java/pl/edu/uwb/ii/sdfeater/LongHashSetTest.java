@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongHashSetTest {
+
+    @Test
+    public void addsEveryHashOnce() {
+        LongHashSet set = new LongHashSet(false);
+        assertTrue(set.add(42));
+        assertFalse(set.add(42));
+        assertTrue(set.add(-42));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void keepsZero() {
+        LongHashSet set = new LongHashSet(false);
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void growsOnHeap() {
+        checkAgainstHashSet(new LongHashSet(false));
+    }
+
+    @Test
+    public void growsOffHeap() {
+        checkAgainstHashSet(new LongHashSet(true));
+    }
+
+    /**
+     * Adds more hashes than the initial capacity of all segments, with
+     * repeats, and compares the results with HashSet
+     */
+    private static void checkAgainstHashSet(LongHashSet set) {
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long hash = random.nextInt(4) == 0 && i > 0 ? (random.nextInt(i) + 1) * 0x2545f4914f6cdd1dL : random.nextLong();
+            assertEquals(expected.add(hash), set.add(hash));
+        }
+        assertEquals(expected.size(), set.size());
+        for (long hash : expected) {
+            assertFalse(set.add(hash));
+        }
+    }
+}
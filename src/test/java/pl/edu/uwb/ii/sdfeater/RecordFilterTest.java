@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017-2019 Łukasz Szeremeta.
+ * Copyright 2018-2019 Dominik Tomaszuk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package pl.edu.uwb.ii.sdfeater;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordFilterTest {
+
+    private static final String RECORD = "water\n  test\n\n"
+            + "  3  2  0  0  0  0  0  0  0  0999 V2000\n"
+            + "    0.0000    0.0000    0.0000 O   0  0  0  0  0  0  0  0  0  0  0  0\n"
+            + "    0.0000    0.0000    0.0000 H   0  0  0  0  0  0  0  0  0  0  0  0\n"
+            + "    0.0000    0.0000    0.0000 H   0  0  0  0  0  0  0  0  0  0  0  0\n"
+            + "  1  2  1  0  0  0  0\n"
+            + "  1  3  1  0  0  0  0\n"
+            + "M  END\n"
+            + "> <ChEBI ID>\nCHEBI:15377\n\n"
+            + "> <Formulae>\nH2O\n\n"
+            + "> <Mass>\n18.01530\n\n"
+            + "> <Synonyms>\noxidane\nhydrogen oxide\n\n"
+            + "$$$$\n";
+
+    private static boolean matches(String expression, String records) {
+        RecordFilter.Matcher matcher = RecordFilter.compile(expression).matcher();
+        ByteBuffer buf = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+        matcher.scan(buf, 0, buf.limit());
+        return matcher.matches();
+    }
+
+    @Test
+    public void comparesNumbers() {
+        assertTrue(matches("Mass < 20", RECORD));
+        assertTrue(matches("Mass >= 18.0153", RECORD));
+        assertFalse(matches("Mass > 300", RECORD));
+        assertFalse(matches("Mass != 18.0153", RECORD));
+    }
+
+    @Test
+    public void comparesText() {
+        assertTrue(matches("\"ChEBI ID\" = 'CHEBI:15377'", RECORD));
+        assertFalse(matches("\"ChEBI ID\" = 'CHEBI:15'", RECORD));
+        assertTrue(matches("Formulae contains 'H2'", RECORD));
+        assertTrue(matches("Formulae matches '^H\\d'", RECORD));
+    }
+
+    @Test
+    public void checksEveryValue() {
+        assertTrue(matches("Synonyms = 'hydrogen oxide'", RECORD));
+    }
+
+    @Test
+    public void checksPresenceOfProperties() {
+        assertTrue(matches("has(Mass)", RECORD));
+        assertFalse(matches("has(InChIKey)", RECORD));
+        assertTrue(matches("NOT has(InChIKey)", RECORD));
+    }
+
+    @Test
+    public void readsCountsLine() {
+        assertTrue(matches("atoms = 3 AND bonds = 2", RECORD));
+        assertFalse(matches("atoms >= 50", RECORD));
+    }
+
+    @Test
+    public void joinsConditions() {
+        assertTrue(matches("Mass > 300 OR (has(Formulae) AND atoms < 5)", RECORD));
+        assertFalse(matches("Mass > 300 OR NOT has(Formulae)", RECORD));
+    }
+
+    @Test
+    public void findsRecordEnd() {
+        RecordFilter.Matcher matcher = RecordFilter.compile("has(Mass)").matcher();
+        ByteBuffer buf = ByteBuffer.wrap((RECORD + RECORD).getBytes(StandardCharsets.UTF_8));
+        int next = matcher.scan(buf, 0, buf.limit());
+        assertTrue(matcher.ended());
+        assertEquals(RECORD.length(), next);
+        assertEquals(buf.limit(), matcher.scan(buf, next, buf.limit()));
+        assertTrue(matcher.matches());
+    }
+
+    @Test
+    public void readsRecordWithoutEnd() {
+        RecordFilter.Matcher matcher = RecordFilter.compile("has(Mass)").matcher();
+        String record = RECORD.substring(0, RECORD.indexOf("$$$$"));
+        ByteBuffer buf = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        assertEquals(buf.limit(), matcher.scan(buf, 0, buf.limit()));
+        assertFalse(matcher.ended());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidExpression() {
+        RecordFilter.compile("Mass >");
+    }
+}